@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates synthetic course trees for the benchmarks. The trees have the
+ * layout the ILIAS and mail fetchers produce:
+ * 
+ * <pre>
+ * root/student&lt;i&gt;@uni-konstanz.de/exercise/...
+ * </pre>
+ * 
+ * Every student either turned in plain source files or a zip archive, which
+ * may contain further zip archives.
+ */
+public final class CourseTree {
+
+    /** Name of the exercise folder of every student. */
+    public static final String EXERCISE = "exercise";
+
+    /* kept so the level set by quietLogging() isn't lost with the logger */
+    private static final Logger SYSTEM_LOG = Logger.getLogger("systemlog");
+
+    /**
+     * This class only has static methods.
+     */
+    private CourseTree() {
+    }
+
+    /**
+     * Gets the submission structure matching the generated trees.
+     * 
+     * @return the structure list
+     */
+    public static List<String> getStructure() {
+        return Arrays.asList("TOPLEVEL", ".*@.*", EXERCISE, "SUBMISSION");
+    }
+
+    /**
+     * Turns off the informational messages of the system log, so writing
+     * them doesn't show up in the measurements.
+     */
+    public static void quietLogging() {
+        SYSTEM_LOG.setLevel(Level.WARNING);
+    }
+
+    /**
+     * Creates a course tree.
+     * 
+     * @param root
+     *            the folder to create the tree in
+     * @param students
+     *            the number of students
+     * @param files
+     *            the number of source files per student
+     * @param nesting
+     *            0 for plain source files, otherwise the number of zip
+     *            archives nested into each other
+     * @return the root folder
+     * @throws IOException
+     *             if the tree can't be written
+     */
+    public static Path create(Path root, int students, int files,
+            int nesting) throws IOException {
+        for (int i = 0; i < students; i++) {
+            Path exercise =
+                    root.resolve("student" + i + "@uni-konstanz.de").resolve(
+                            EXERCISE);
+            Files.createDirectories(exercise);
+            if (nesting == 0) {
+                writeSources(exercise, files);
+            } else {
+                createNestedZip(exercise.resolve("solution.zip"), files,
+                        nesting);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Writes java source files of a few kilobytes each.
+     * 
+     * @param folder
+     *            the folder to write into
+     * @param files
+     *            the number of files
+     * @throws IOException
+     *             if a file can't be written
+     */
+    public static void writeSources(Path folder, int files) throws IOException {
+        Files.createDirectories(folder);
+        for (int i = 0; i < files; i++) {
+            Files.write(folder.resolve("Class" + i + ".java"), source(i));
+        }
+    }
+
+    /**
+     * Writes a zip archive with source files. Every level but the innermost
+     * contains half of the files and the archive of the next level.
+     * 
+     * @param zipFile
+     *            the archive to write
+     * @param files
+     *            the number of source files on all levels together
+     * @param nesting
+     *            the number of archive levels, at least one
+     * @throws IOException
+     *             if the archive can't be written
+     */
+    public static void createNestedZip(Path zipFile, int files, int nesting)
+            throws IOException {
+        int filesHere = (nesting > 1) ? (files / 2) : files;
+        try (ZipOutputStream zip =
+                new ZipOutputStream(Files.newOutputStream(zipFile))) {
+            for (int i = 0; i < filesHere; i++) {
+                zip.putNextEntry(new ZipEntry("src/Class" + i + ".java"));
+                zip.write(source(i));
+                zip.closeEntry();
+            }
+            if (nesting > 1) {
+                Path inner =
+                        Files.createTempFile(zipFile.getParent(), "inner",
+                                ".zip");
+                try {
+                    createNestedZip(inner, files - filesHere, nesting - 1);
+                    zip.putNextEntry(new ZipEntry("lib/level" + nesting
+                            + ".zip"));
+                    Files.copy(inner, zip);
+                    zip.closeEntry();
+                } finally {
+                    Files.delete(inner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes a tree.
+     * 
+     * @param root
+     *            the root folder, may be null
+     */
+    public static void delete(Path root) {
+        if (root != null) {
+            FileUtils.deleteQuietly(root.toFile());
+        }
+    }
+
+    /**
+     * Generates a java class with a few methods.
+     * 
+     * @param number
+     *            the number of the class
+     * @return the source code
+     */
+    private static byte[] source(int number) {
+        StringBuilder source = new StringBuilder();
+        source.append("public class Class").append(number).append(" {\n");
+        for (int method = 0; method < 40; method++) {
+            source.append("    public int method").append(method)
+                    .append("(int value) {\n")
+                    .append("        return value * ").append(method)
+                    .append(" + ").append(number).append(";\n")
+                    .append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.checking.compile;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.teamgrit.grit.checking.CompilerOutput;
+
+/**
+ * Splits synthetic javac and gcc output into errors, warnings and infos, as
+ * done after every compile run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompilerOutputBenchmark {
+
+    /* parameters are public and named for the jmh command line (-p) */
+    @Param({ "10", "100" })
+    public int messages;
+
+    private JavaCompileChecker m_javaChecker;
+    private GccCompileChecker m_gccChecker;
+    private List<String> m_javacOutput;
+    private List<String> m_gccOutput;
+
+    /**
+     * Generates the compiler output.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        m_javaChecker = new JavaCompileChecker(Paths.get("tests"), false);
+        m_gccChecker = new GccCompileChecker();
+
+        m_javacOutput = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            m_javacOutput.add("src/Class" + i + ".java:" + (i + 3)
+                    + ": error: cannot find symbol");
+            m_javacOutput.add("        return value * missing" + i + ";");
+            m_javacOutput.add("                       ^");
+            m_javacOutput.add("  symbol:   variable missing" + i);
+            m_javacOutput.add("  location: class Class" + i);
+        }
+        m_javacOutput.add("Note: src/Class0.java uses unchecked or unsafe "
+                + "operations.");
+        m_javacOutput.add(messages + " errors");
+
+        m_gccOutput = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            m_gccOutput.add("main" + i + ".c: In function 'main':");
+            m_gccOutput.add("main" + i + ".c:" + (i + 3)
+                    + ":5: warning: unused variable 'x' [-Wunused-variable]");
+            m_gccOutput.add("     int x;");
+            m_gccOutput.add("     ^");
+            m_gccOutput.add("main" + i + ".c:" + (i + 4)
+                    + ":5: error: 'y' undeclared (first use in this "
+                    + "function)");
+            m_gccOutput.add("     y = 1;");
+            m_gccOutput.add("     ^");
+            m_gccOutput.add("main" + i + ".c:" + (i + 4)
+                    + ":5: note: each undeclared identifier is reported "
+                    + "only once for each function it appears in.");
+        }
+    }
+
+    /**
+     * Splits the javac output.
+     * 
+     * @return the split output
+     * @throws BadFlagException
+     *             never, the output contains no flag errors
+     */
+    @Benchmark
+    public CompilerOutput splitJavacOutput() throws BadFlagException {
+        return m_javaChecker.splitCompilerOutput(m_javacOutput,
+                new CompilerOutput());
+    }
+
+    /**
+     * Splits the gcc output.
+     * 
+     * @return the split output
+     * @throws BadFlagException
+     *             never, the output contains no flag errors
+     */
+    @Benchmark
+    public CompilerOutput splitGccOutput() throws BadFlagException {
+        return m_gccChecker.splitCompilerOutput(m_gccOutput,
+                new CompilerOutput());
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+import de.teamgrit.grit.entities.Controller;
+import de.teamgrit.grit.entities.Course;
+import de.teamgrit.grit.entities.Exercise;
+import de.teamgrit.grit.entities.ExerciseMetadata;
+import de.teamgrit.grit.entities.LanguageType;
+import de.teamgrit.grit.entities.State;
+import de.teamgrit.grit.preprocess.Connection;
+import de.teamgrit.grit.preprocess.ConnectionType;
+import de.teamgrit.grit.util.config.Configuration;
+import de.teamgrit.grit.util.metrics.LatencyHistogram;
+import de.teamgrit.grit.util.metrics.Metrics;
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
+
+/**
+ * Simulates the deadline of a large course from end to end. A synthetic
+ * course with hundreds of students is imported into a local SVN repository,
+ * connected through the {@link Controller} like any other data source and
+ * processed right away, since its deadline has already passed. When the
+ * exercise is done, the wall time, the throughput of every processing stage
+ * and the peak heap usage are printed.
+ *
+ * <p>
+ * The submissions are a mix of clean ones, ones that don't compile and ones
+ * whose methods never return, so the compile errors and the test timeouts
+ * show up in the numbers as they do after a real deadline. Options are given
+ * as <code>key=value</code> arguments:
+ * </p>
+ *
+ * <pre>
+ * students=300 broken=0.1 looping=0.05 seed=1 timeout=3600 home=&lt;dir&gt;
+ * </pre>
+ *
+ * <p>
+ * The simulation runs in the working directory, which gets its own config,
+ * state, log and wdir and must therefore not be the GRIT installation given
+ * by <code>home</code>; the JUnit jar and the report templates are linked
+ * from there. <code>svn</code> and <code>svnadmin</code> need to be
+ * installed.
+ * </p>
+ */
+public final class DeadlineSimulator {
+
+    /** The stages recorded by {@link Metrics}, in processing order. */
+    private static final List<String> STAGES = Arrays.asList("fetch",
+            "tokenize", "extract", "hash", "plausibility", "compile", "test",
+            "report", "concat");
+
+    private static final long POLL_INTERVAL = 1000;
+
+    private static final String CLEAN_SOLUTION = "public class Calc {\n"
+            + "    public static int add(int a, int b) {\n"
+            + "        return a + b;\n" + "    }\n" + "}\n";
+
+    private static final String BROKEN_SOLUTION = "public class Calc {\n"
+            + "    public static int add(int a, int b) {\n"
+            + "        return a + b\n" + "    }\n" + "}\n";
+
+    private static final String LOOPING_SOLUTION = "public class Calc {\n"
+            + "    public static int add(int a, int b) {\n"
+            + "        while (a == a) {\n" + "            b++;\n"
+            + "        }\n" + "        return a + b;\n" + "    }\n" + "}\n";
+
+    private static final String TEST = "import static org.junit.Assert.*;\n"
+            + "import org.junit.Test;\n\n" + "public class CalcTest {\n"
+            + "    @Test\n" + "    public void testAdd() {\n"
+            + "        assertEquals(5, Calc.add(2, 3));\n" + "    }\n"
+            + "}\n";
+
+    /**
+     * This class only has a main method.
+     */
+    private DeadlineSimulator() {
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @param args
+     *            the options as <code>key=value</code> pairs
+     * @throws Exception
+     *             if the simulation can't be set up
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                System.err.println("Ignoring argument " + arg
+                        + ", expected key=value.");
+                continue;
+            }
+            options.put(option[0], option[1]);
+        }
+        int students = Integer.parseInt(option(options, "students", "300"));
+        double broken = Double.parseDouble(option(options, "broken", "0.1"));
+        double looping =
+                Double.parseDouble(option(options, "looping", "0.05"));
+        long seed = Long.parseLong(option(options, "seed", "1"));
+        long timeout = Long.parseLong(option(options, "timeout", "3600"));
+        Path home = Paths.get(option(options, "home", "..")).toAbsolutePath()
+                .normalize();
+        Path work = Paths.get("").toAbsolutePath();
+
+        if (home.equals(work)) {
+            System.err.println("The simulation would overwrite the state of "
+                    + home + ", run it in another directory.");
+            System.exit(1);
+        }
+
+        prepareWorkingDirectory(home, work);
+        Path repository = work.resolve("repository");
+        createRepository(work.resolve("import"), repository, students,
+                broken, looping, new Random(seed));
+
+        Controller controller = Controller.getController();
+        Path state = Paths.get("config", "state.xml");
+        BootHelpers.createNewStateFile(state);
+        controller.restoreState(new State(state.toFile()));
+
+        Course course =
+                controller.addCourse("simulation-"
+                        + System.currentTimeMillis());
+        Connection connection =
+                controller.addConnection("simulation", ConnectionType.SVN,
+                        repository.toUri().toString(), "", "", "", "",
+                        Arrays.asList("TOPLEVEL", "stud\\d+", "SUBMISSION"));
+
+        /* the exercise starts right away, so the tests have to be there */
+        Path tests =
+                Paths.get("wdir", "course-" + course.getId(), "exercise-"
+                        + course.getExercises().size(), "tests");
+        Files.createDirectories(tests);
+        Files.write(tests.resolve("CalcTest.java"),
+                TEST.getBytes(StandardCharsets.UTF_8));
+
+        resetPeakHeap();
+        long now = System.currentTimeMillis();
+        long start = System.nanoTime();
+        Exercise exercise =
+                controller.addExercise(course.getId(), connection.getId(),
+                        new ExerciseMetadata("deadline", LanguageType.JAVA,
+                                new Date(now - TimeUnit.HOURS.toMillis(2)),
+                                new Date(now - TimeUnit.MINUTES.toMillis(1)),
+                                TimeUnit.MINUTES.toMillis(5), Collections
+                                        .<String> emptyList()));
+
+        long limit = start + TimeUnit.SECONDS.toNanos(timeout);
+        String status = exercise.getStatus();
+        while (!(status.startsWith("ready") || status.startsWith("error"))) {
+            if (System.nanoTime() > limit) {
+                System.err.println("Gave up after " + timeout
+                        + " s, the exercise is still " + status + ".");
+                break;
+            }
+            Thread.sleep(POLL_INTERVAL);
+            status = exercise.getStatus();
+        }
+        double wallTime = (System.nanoTime() - start) / 1e9;
+
+        printReport(students, broken, looping, status, wallTime);
+        controller.getScheduler().shutdown();
+        controller.getTestWorkerPool().shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * Gets an option or its default.
+     *
+     * @param options
+     *            the given options
+     * @param key
+     *            the name of the option
+     * @param defaultValue
+     *            the value if the option wasn't given
+     * @return the value of the option
+     */
+    private static String option(Map<String, String> options, String key,
+            String defaultValue) {
+        String value = options.get(key);
+        return (value == null) ? defaultValue : value;
+    }
+
+    /**
+     * Writes the default config and links the resources the checkers and the
+     * report generator load relative to the working directory. The web
+     * resources aren't linked, since the reports are written below them.
+     *
+     * @param home
+     *            the GRIT installation
+     * @param work
+     *            the working directory of the simulation
+     * @throws IOException
+     *             if the directory can't be prepared
+     */
+    private static void prepareWorkingDirectory(Path home, Path work)
+            throws IOException {
+        Path config = work.resolve("config").resolve("config.xml");
+        if (!Files.exists(config)) {
+            BootHelpers.createNewDefaultConfig(config);
+        }
+        Files.deleteIfExists(work.resolve("config").resolve("state.xml"));
+        for (String resource : Arrays.asList("javac", "javalib", "tex")) {
+            Path target = home.resolve("res").resolve(resource);
+            Path link = work.resolve("res").resolve(resource);
+            if (Files.exists(target) && !Files.exists(link)) {
+                Files.createDirectories(link.getParent());
+                Files.createSymbolicLink(link, target);
+            }
+        }
+    }
+
+    /**
+     * Generates the course and imports it into a new SVN repository. Every
+     * student gets a directory with a single solution and a line in
+     * <code>students.txt</code>.
+     *
+     * @param source
+     *            the directory the course is generated in
+     * @param repository
+     *            the directory of the repository
+     * @param students
+     *            the number of students
+     * @param broken
+     *            the share of solutions that don't compile
+     * @param looping
+     *            the share of solutions that never return
+     * @param random
+     *            decides which student turns in which solution
+     * @throws IOException
+     *             if the course can't be written or imported
+     * @throws InterruptedException
+     *             if interrupted while waiting for svn
+     */
+    private static void createRepository(Path source, Path repository,
+            int students, double broken, double looping, Random random)
+            throws IOException, InterruptedException {
+        deleteIfExists(source);
+        deleteIfExists(repository);
+        Files.createDirectories(source);
+
+        List<String> mapping = new ArrayList<>();
+        for (int i = 0; i < students; i++) {
+            /* padded, students are matched by a substring of their path */
+            String acronym = String.format("stud%04d", i);
+            mapping.add(acronym + " = student" + i + "@uni-konstanz.de");
+
+            double kind = random.nextDouble();
+            String solution = CLEAN_SOLUTION;
+            if (kind < broken) {
+                solution = BROKEN_SOLUTION;
+            } else if (kind < broken + looping) {
+                solution = LOOPING_SOLUTION;
+            }
+            Path directory = source.resolve(acronym);
+            Files.createDirectories(directory);
+            Files.write(directory.resolve("Calc.java"),
+                    solution.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(source.resolve("students.txt"), mapping,
+                StandardCharsets.UTF_8);
+
+        run("svnadmin", "create", repository.toString());
+        run("svn", "import", "-q", "-m", "deadline simulation",
+                source.toString(), repository.toUri().toString());
+    }
+
+    /**
+     * Runs a command and waits for it.
+     *
+     * @param command
+     *            the command and its arguments
+     * @throws IOException
+     *             if the command can't be run or fails
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private static void run(String... command) throws IOException,
+            InterruptedException {
+        ProcessResult result;
+        try {
+            result =
+                    new ProcessRunner(Arrays.asList(command))
+                            .redirectErrorStream(true).run();
+        } catch (IOException e) {
+            throw new IOException(command[0]
+                    + " is needed to set up the repository", e);
+        }
+        if (result.getExitValue() != 0) {
+            for (String line : result.getOutputLines()) {
+                System.err.println(line);
+            }
+            throw new IOException(command[0] + " failed with exit code "
+                    + result.getExitValue());
+        }
+    }
+
+    /**
+     * Deletes a directory left over by a previous simulation.
+     *
+     * @param directory
+     *            the directory
+     * @throws IOException
+     *             if it can't be deleted
+     */
+    private static void deleteIfExists(Path directory) throws IOException {
+        File file = directory.toFile();
+        if (file.exists()) {
+            FileUtils.deleteDirectory(file);
+        }
+    }
+
+    /**
+     * Resets the peak usage of the heap pools, so the peaks of the
+     * simulation aren't mixed up with the setup.
+     */
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory
+                .getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sums the peak usage of the heap pools. The pools peak at different
+     * times, so this is an upper bound of the real peak.
+     *
+     * @return the peak usage in bytes
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory
+                .getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Prints the results of the simulation.
+     *
+     * @param students
+     *            the number of students
+     * @param broken
+     *            the share of broken solutions
+     * @param looping
+     *            the share of looping solutions
+     * @param status
+     *            the final status of the exercise
+     * @param wallTime
+     *            the time from creating the exercise until it was done, in
+     *            seconds
+     */
+    private static void printReport(int students, double broken,
+            double looping, String status, double wallTime) {
+        System.out.println(String.format("%d students, %.0f%% broken, "
+                + "%.0f%% looping: %s", students, broken * 100,
+                looping * 100, status));
+        System.out.println(String.format("wall time %.1f s, peak heap "
+                + "%d MB (tests run in separate JVMs)", wallTime,
+                getPeakHeap() >> 20));
+        System.out.println(String.format("%-14s %7s %7s %10s %10s %9s",
+                "stage", "items", "failed", "mean [ms]", "p95 [ms]",
+                "items/s"));
+        for (String stage : STAGES) {
+            LatencyHistogram latencies = Metrics.getStageLatencies(stage);
+            long count = (latencies == null) ? 0 : latencies.getCount();
+            if (count == 0) {
+                continue;
+            }
+            System.out.println(String.format(
+                    "%-14s %7d %7d %10.1f %10.0f %9.1f", stage, count,
+                    Metrics.getStageFailures(stage), latencies.getSum()
+                            * 1000 / count,
+                    latencies.getQuantile(0.95) * 1000, count / wallTime));
+        }
+    }
+}
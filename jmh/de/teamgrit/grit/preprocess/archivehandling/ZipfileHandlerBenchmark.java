@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.preprocess.archivehandling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import de.teamgrit.grit.benchmarks.CourseTree;
+import de.teamgrit.grit.util.config.NoProperParameterException;
+
+/**
+ * Unpacks a single, possibly nested, submission archive with the
+ * {@link ZipfileHandler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZipfileHandlerBenchmark {
+
+    /* parameters are public and named for the jmh command line (-p) */
+    @Param({ "20", "200" })
+    public int files;
+
+    @Param({ "1", "3" })
+    public int nesting;
+
+    private Path m_root;
+    private File m_archive;
+    private File m_target;
+    private File m_temp;
+
+    /**
+     * Writes the archive.
+     * 
+     * @throws IOException
+     *             if the archive can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CourseTree.quietLogging();
+        m_root = Files.createTempDirectory("grit-bench-zip");
+        Path archive = m_root.resolve("solution.zip");
+        CourseTree.createNestedZip(archive, files, nesting);
+        m_archive = archive.toFile();
+        m_target = m_root.resolve("solution").toFile();
+        m_temp = Files.createDirectories(m_root.resolve("temp")).toFile();
+    }
+
+    /**
+     * Removes the folder unpacked by the previous invocation.
+     */
+    @Setup(Level.Invocation)
+    public void removeUnpacked() {
+        CourseTree.delete(m_target.toPath());
+    }
+
+    /**
+     * Deletes the archive.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CourseTree.delete(m_root);
+    }
+
+    /**
+     * Unpacks the archive and all nested archives.
+     * 
+     * @return the unpacked folder
+     * @throws ZipException
+     *             if the archive is broken
+     * @throws IOException
+     *             if the archive can't be read
+     * @throws NoProperParameterException
+     *             never, the parameters are fixed
+     */
+    @Benchmark
+    public File extractZip() throws ZipException, IOException,
+            NoProperParameterException {
+        new ZipfileHandler(5, m_temp).extractZip(m_archive, m_target);
+        return m_target;
+    }
+}
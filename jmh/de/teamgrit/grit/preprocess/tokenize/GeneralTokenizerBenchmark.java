@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.preprocess.tokenize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import de.teamgrit.grit.benchmarks.CourseTree;
+
+/**
+ * Collects the submissions of a synthetic course with the
+ * {@link GeneralTokenizer}, with and without unpacking the archives.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeneralTokenizerBenchmark {
+
+    /* parameters are public and named for the jmh command line (-p) */
+    @Param({ "100" })
+    public int students;
+
+    @Param({ "20" })
+    public int files;
+
+    @Param({ "0", "2" })
+    public int nesting;
+
+    private Path m_root;
+    private SubmissionStructure m_structure;
+
+    /**
+     * Creates the course tree.
+     * 
+     * @throws IOException
+     *             if the tree can't be written
+     * @throws InvalidStructureException
+     *             never, the structure is fixed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InvalidStructureException {
+        CourseTree.quietLogging();
+        m_root = Files.createTempDirectory("grit-bench-tokenize");
+        CourseTree.create(m_root, students, files, nesting);
+        m_structure = new SubmissionStructure(CourseTree.getStructure());
+    }
+
+    /**
+     * Removes the folders unpacked by the previous invocation.
+     * 
+     * @throws IOException
+     *             if the tree can't be read
+     */
+    @Setup(Level.Invocation)
+    public void removeUnpacked() throws IOException {
+        if (nesting > 0) {
+            for (int i = 0; i < students; i++) {
+                CourseTree.delete(m_root
+                        .resolve("student" + i + "@uni-konstanz.de")
+                        .resolve(CourseTree.EXERCISE).resolve("solution"));
+            }
+        }
+    }
+
+    /**
+     * Deletes the course tree.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CourseTree.delete(m_root);
+    }
+
+    /**
+     * Walks the tree and creates the submissions, archives are only
+     * recorded.
+     * 
+     * @return the submissions
+     * @throws MaximumDirectoryDepthExceededException
+     *             never, the tree is flat
+     */
+    @Benchmark
+    public List<Submission> explore()
+            throws MaximumDirectoryDepthExceededException {
+        return new GeneralTokenizer(".+\\.java", ".+\\.zip")
+                .exploreSubmissionDirectory(m_structure, m_root);
+    }
+
+    /**
+     * Walks the tree, unpacks the archives and lists the files of every
+     * submission.
+     * 
+     * @return the submissions
+     * @throws MaximumDirectoryDepthExceededException
+     *             never, the tree is flat
+     * @throws IOException
+     *             if an archive can't be unpacked
+     */
+    @Benchmark
+    public List<Submission> exploreAndExtract()
+            throws MaximumDirectoryDepthExceededException, IOException {
+        List<Submission> submissions = explore();
+        for (Submission submission : submissions) {
+            submission.extract();
+        }
+        return submissions;
+    }
+
+    /**
+     * Walks the tree and unpacks the archives of the students in parallel,
+     * one worker per processor, like the extract stage of an exercise does.
+     * 
+     * @return the submissions
+     * @throws Exception
+     *             if an archive can't be unpacked
+     */
+    @Benchmark
+    public List<Submission> exploreAndExtractParallel() throws Exception {
+        List<Submission> submissions = explore();
+        ExecutorService workers =
+                Executors.newFixedThreadPool(Runtime.getRuntime()
+                        .availableProcessors());
+        try {
+            List<Future<Void>> extractions = new ArrayList<>();
+            for (final Submission submission : submissions) {
+                extractions.add(workers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        submission.extract();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> extraction : extractions) {
+                extraction.get();
+            }
+        } finally {
+            workers.shutdown();
+        }
+        return submissions;
+    }
+}
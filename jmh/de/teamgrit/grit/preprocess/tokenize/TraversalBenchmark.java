@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.preprocess.tokenize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import de.teamgrit.grit.benchmarks.CourseTree;
+
+/**
+ * Compares the traversal of the {@link GeneralTokenizer} with the way it used
+ * to walk a course: listing every directory up to three times, matching the
+ * structure with {@link String#matches(String)} and building a log message
+ * for every file. The course has plain source files only, so no archive is
+ * involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TraversalBenchmark {
+
+    private static final String SOURCE_REGEX = ".+\\.java";
+    private static final String ARCHIVE_REGEX = ".+\\.zip";
+
+    /* parameters are public and named for the jmh command line (-p) */
+    @Param({ "1000" })
+    public int students;
+
+    @Param({ "10" })
+    public int files;
+
+    private Path m_root;
+    private SubmissionStructure m_structure;
+
+    /* like the system log with informational messages turned off */
+    private final Logger m_log = Logger.getLogger("systemlog");
+
+    /**
+     * Creates the course tree.
+     * 
+     * @throws IOException
+     *             if the tree can't be written
+     * @throws InvalidStructureException
+     *             never, the structure is fixed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InvalidStructureException {
+        CourseTree.quietLogging();
+        m_root = Files.createTempDirectory("grit-bench-traverse");
+        CourseTree.create(m_root, students, files, 0);
+        m_structure = new SubmissionStructure(CourseTree.getStructure());
+    }
+
+    /**
+     * Deletes the course tree.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CourseTree.delete(m_root);
+    }
+
+    /**
+     * Walks the course with the tokenizer.
+     * 
+     * @return the submissions
+     * @throws MaximumDirectoryDepthExceededException
+     *             never, the tree is flat
+     */
+    @Benchmark
+    public List<Submission> tokenizer()
+            throws MaximumDirectoryDepthExceededException {
+        return new GeneralTokenizer(SOURCE_REGEX, ARCHIVE_REGEX)
+                .exploreSubmissionDirectory(m_structure, m_root);
+    }
+
+    /**
+     * Walks the course the way the tokenizer used to.
+     * 
+     * @return the submission folders
+     */
+    @Benchmark
+    public List<Path> baseline() {
+        return traverse(m_structure.getStructure(), 1, m_root.toFile());
+    }
+
+    /**
+     * The former traversal of the tokenizer.
+     * 
+     * @param structure
+     *            the structure regexes
+     * @param level
+     *            the current level
+     * @param location
+     *            the folder to walk
+     * @return the submission folders
+     */
+    private List<Path> traverse(List<String> structure, int level,
+            File location) {
+        m_log.info("traverse: " + location.toString());
+        List<Path> found = new LinkedList<>();
+        if ("SUBMISSION".equals(structure.get(level))) {
+            for (File file : location.listFiles()) {
+                if (file.toString().matches(ARCHIVE_REGEX)) {
+                    found.add(file.toPath());
+                } else if (file.toString().matches(SOURCE_REGEX)) {
+                    m_log.info("Found: " + file.toString());
+                    if (!found.contains(location.toPath())) {
+                        found.add(location.toPath());
+                    }
+                } else {
+                    m_log.info("found invalid file: " + file.toString());
+                }
+            }
+            return found;
+        }
+        if ((location.listFiles() == null)
+                || (location.listFiles().length == 0)) {
+            return found;
+        }
+        for (File file : location.listFiles()) {
+            m_log.info("looking at " + file.toString());
+            if (file.isDirectory()
+                    && file.getName().matches(structure.get(level))) {
+                found.addAll(traverse(structure, level + 1, file));
+            }
+        }
+        return found;
+    }
+}
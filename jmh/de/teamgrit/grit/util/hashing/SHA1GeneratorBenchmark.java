@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.hashing;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.teamgrit.grit.benchmarks.CourseTree;
+
+/**
+ * Hashes all submissions of a synthetic course, once from scratch and once
+ * with a warm {@link FileHashCache} as on every poll after the first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SHA1GeneratorBenchmark {
+
+    /* parameters are public and named for the jmh command line (-p) */
+    @Param({ "50" })
+    public int students;
+
+    @Param({ "20" })
+    public int files;
+
+    private Path m_root;
+    private List<Path> m_submissions;
+    private FileHashCache m_warmCache;
+
+    /**
+     * Creates the course tree and fills the hash cache.
+     * 
+     * @throws IOException
+     *             if the tree can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        m_root = Files.createTempDirectory("grit-bench-hash");
+        CourseTree.create(m_root, students, files, 0);
+        m_submissions = new ArrayList<>();
+        for (int i = 0; i < students; i++) {
+            m_submissions.add(m_root.resolve("student" + i
+                    + "@uni-konstanz.de").resolve(CourseTree.EXERCISE));
+        }
+        // files modified within the last two seconds aren't cached
+        long old = System.currentTimeMillis() - 60000;
+        for (Path submission : m_submissions) {
+            try (DirectoryStream<Path> stream =
+                    Files.newDirectoryStream(submission)) {
+                for (Path file : stream) {
+                    file.toFile().setLastModified(old);
+                }
+            }
+        }
+        m_warmCache = new FileHashCache(m_root.resolve("hashes.json"));
+        for (Path submission : m_submissions) {
+            SHA1Generator.calculateSHA1Hash(submission, null, m_warmCache);
+        }
+    }
+
+    /**
+     * Deletes the course tree.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CourseTree.delete(m_root);
+    }
+
+    /**
+     * Reads and hashes every file.
+     * 
+     * @param blackhole
+     *            consumes the hashes
+     * @throws IOException
+     *             if a file can't be read
+     */
+    @Benchmark
+    public void hashCold(Blackhole blackhole) throws IOException {
+        for (Path submission : m_submissions) {
+            blackhole.consume(SHA1Generator.calculateSHA1Hash(submission));
+        }
+    }
+
+    /**
+     * Hashes the submissions with all file hashes taken from the cache.
+     * 
+     * @param blackhole
+     *            consumes the hashes
+     * @throws IOException
+     *             if a folder can't be read
+     */
+    @Benchmark
+    public void hashWarm(Blackhole blackhole) throws IOException {
+        for (Path submission : m_submissions) {
+            blackhole.consume(SHA1Generator.calculateSHA1Hash(submission,
+                    null, m_warmCache));
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.nio.file.Path;
 import java.util.List;
 
 import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
 
 /**
  * Interface which a compile checker must provide. A compile checker determines
@@ -67,6 +68,34 @@ public interface CompileChecker {
             throws FileNotFoundException, BadCompilerSpecifiedException,
             BadFlagException, CompilerOutputFolderExistsException;
 
+    /**
+     * Compiles a submission whose files are already listed in a manifest, so
+     * the compile checker doesn't need to search the source folder again.
+     *
+     * @param manifest
+     *            the files of the submission, the source folder is
+     *            {@link SubmissionManifest#getRoot()}
+     * @param outputFolder
+     *            See other method.
+     * @param compilerName
+     *            See other method.
+     * @param compilerFlags
+     *            See other method.
+     * @return See other method.
+     * @throws FileNotFoundException
+     *             See other method.
+     * @throws BadCompilerSpecifiedException
+     *             See other method.
+     * @throws BadFlagException
+     *             See other method.
+     * @throws CompilerOutputFolderExistsException
+     *             See other method.
+     */
+    CompilerOutput checkProgram(SubmissionManifest manifest,
+            Path outputFolder, String compilerName, List<String> compilerFlags)
+            throws FileNotFoundException, BadCompilerSpecifiedException,
+            BadFlagException, CompilerOutputFolderExistsException;
+
     /**
      * Convenience Method to call without specifying an output folder. .class
      * files are placed in sourceFolder.
@@ -89,4 +118,30 @@ public interface CompileChecker {
             List<String> compilerFlags) throws FileNotFoundException,
             BadCompilerSpecifiedException, BadFlagException;
 
+    /**
+     * Returns a hash of everything besides the submission that is compiled
+     * by {@link #checkProgram(Path, Path, String, List)}, e.g. unit tests
+     * built against the submission. Used to key cached scorecards.
+     *
+     * @return the hash, an empty string if nothing but the submission is
+     *         compiled or null if it can't be determined
+     */
+    String getTestSuiteHash();
+
+    /**
+     * Makes sure the test suite is compiled against a submission whose
+     * binaries were not produced by this checker, e.g. because they were
+     * restored from a cache.
+     *
+     * @param submissionOutput
+     *            the compiler output of the submission
+     * @param outputFolder
+     *            where the binaries of the submission are located
+     * @throws BadFlagException
+     *             When javac doesn't recognize a flag, this exception is
+     *             thrown.
+     */
+    void prepareTestSuite(CompilerOutput submissionOutput, Path outputFolder)
+            throws BadFlagException;
+
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.checking.compile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.util.hashing.SHA1Generator;
+
+/**
+ * An on-disk cache for the results of compile runs. Entries are addressed by
+ * everything that determines the outcome of a compile run: the hash of the
+ * submission, the compiler and its flags. The test suite is compiled on its
+ * own and is not part of it.
+ * Each entry holds the {@link CompilerOutput} and the produced binaries, so a
+ * hit can skip the compiler entirely, even after a restart.
+ */
+public class CompileResultCache {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    private static final String OUTPUT_FILE = "output.json";
+    private static final String BINARIES_FOLDER = "bin";
+
+    private static final Gson GSON = new Gson();
+
+    private final Path m_cacheLocation;
+
+    /**
+     * Creates a cache that stores its entries in the given directory.
+     *
+     * @param cacheLocation
+     *            the directory holding the cache entries, created if needed
+     */
+    public CompileResultCache(Path cacheLocation) {
+        m_cacheLocation = cacheLocation;
+    }
+
+    /**
+     * Combines the inputs of a compile run into a cache key.
+     *
+     * @param submissionHash
+     *            the SHA-1 of the submission's sources
+     * @param compilerName
+     *            the compiler used
+     * @param compilerFlags
+     *            the flags passed to the compiler, may be null
+     * @return the key or null if the submission has no hash
+     */
+    public static String createKey(String submissionHash,
+            String compilerName, List<String> compilerFlags) {
+        if (submissionHash == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(submissionHash).append('\n');
+        key.append(compilerName).append('\n');
+        if (compilerFlags != null) {
+            for (String flag : compilerFlags) {
+                key.append(flag).append('\u0000');
+            }
+        }
+        return SHA1Generator.calculateSHA1Hash(key.toString());
+    }
+
+    /**
+     * Looks up a compile run. On a hit, the cached binaries are copied into
+     * the output folder.
+     *
+     * @param key
+     *            the key created by
+     *            {@link #createKey(String, String, List)}
+     * @param outputFolder
+     *            where the binaries are restored to
+     * @return the cached compiler output or null if there is no usable entry
+     */
+    public CompilerOutput load(String key, Path outputFolder) {
+        Path entry = m_cacheLocation.resolve(key);
+        Path outputFile = entry.resolve(OUTPUT_FILE);
+        if (!Files.isRegularFile(outputFile)) {
+            return null;
+        }
+        try {
+            CompilerOutput output =
+                    GSON.fromJson(FileUtils.readFileToString(
+                            outputFile.toFile(), "UTF-8"),
+                            CompilerOutput.class);
+            if (output == null) {
+                return null;
+            }
+            Path binaries = entry.resolve(BINARIES_FOLDER);
+            if (Files.isDirectory(binaries)) {
+                FileUtils.copyDirectory(binaries.toFile(),
+                        outputFolder.toFile());
+            }
+            return output;
+        } catch (IOException | JsonParseException e) {
+            LOGGER.warning("Ignoring unreadable compile cache entry " + entry
+                    + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the result of a compile run. The entry is assembled in a
+     * temporary directory and moved into place, so concurrent readers never
+     * see half written entries.
+     *
+     * @param key
+     *            the key created by
+     *            {@link #createKey(String, String, List)}
+     * @param output
+     *            the output of the compile run
+     * @param outputFolder
+     *            the folder holding the produced binaries
+     */
+    public void store(String key, CompilerOutput output, Path outputFolder) {
+        Path entry = m_cacheLocation.resolve(key);
+        if (Files.exists(entry)) {
+            return;
+        }
+        Path temp =
+                m_cacheLocation.resolve(".tmp-" + UUID.randomUUID().toString());
+        try {
+            Files.createDirectories(temp);
+            if ((outputFolder != null) && Files.isDirectory(outputFolder)) {
+                FileUtils.copyDirectory(outputFolder.toFile(),
+                        temp.resolve(BINARIES_FOLDER).toFile());
+            }
+            FileUtils.writeStringToFile(temp.resolve(OUTPUT_FILE).toFile(),
+                    GSON.toJson(output), "UTF-8");
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry);
+            }
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            // another worker stored the same result in the meantime
+            LOGGER.fine("Compile cache entry " + key + " already exists.");
+        } catch (IOException e) {
+            LOGGER.warning("Could not store compile cache entry " + key
+                    + ": " + e.getMessage());
+        } finally {
+            FileUtils.deleteQuietly(temp.toFile());
+        }
+    }
+
+    /**
+     * Deletes all entries that don't belong to the given keys, they were
+     * compiled from submissions or with flags that have changed since. Must
+     * not run while results are stored.
+     *
+     * @param keys
+     *            the keys of the entries to keep
+     */
+    public void retainOnly(Set<String> keys) {
+        File[] entries = m_cacheLocation.toFile().listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (!keys.contains(entry.getName())
+                    && !FileUtils.deleteQuietly(entry)) {
+                LOGGER.warning("Could not delete outdated compile cache entry "
+                        + entry);
+            }
+        }
+    }
+}
@@ -17,12 +17,9 @@
 
 package de.teamgrit.grit.checking.compile;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
@@ -37,6 +34,9 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 
 import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
 
 /**
  * This Compiler verifies whether a given file written in c-code is valid or
@@ -75,19 +75,18 @@ public class GccCompileChecker implements CompileChecker {
                 pathToProgramFile, compilerName, compilerFlags);
         // Now we build a launchable process from the given parameters and set
         // the working directory.
-        Process compilerProcess = null;
+        ProcessRunner compilerRunner = new ProcessRunner(compilerInvocation);
+        // make sure the compiler stays in its directory.
+        if (Files.isDirectory(pathToProgramFile)) {
+            compilerRunner.directory(pathToProgramFile);
+        } else {
+            compilerRunner.directory(pathToProgramFile.getParent());
+        }
 
+        CompilerOutput compilerOutput = new CompilerOutput();
+        ProcessResult compilerResult;
         try {
-            ProcessBuilder compilerProcessBuilder = new ProcessBuilder(
-                    compilerInvocation);
-            // make sure the compiler stays in its directory.
-            if (Files.isDirectory(pathToProgramFile)) {
-                compilerProcessBuilder.directory(pathToProgramFile.toFile());
-            } else {
-                compilerProcessBuilder.directory(pathToProgramFile.getParent()
-                        .toFile());
-            }
-            compilerProcess = compilerProcessBuilder.start();
+            compilerResult = compilerRunner.run();
         } catch (IOException e) {
             // If we cannot call the compiler we return a CompilerOutput
             // initialized with false, false, indicating
@@ -98,39 +97,28 @@ public class GccCompileChecker implements CompileChecker {
             compilerInvokeError.setCompilerInvoked(false);
             LOGGER.severe("Couldn't launch GCC. Check whether it's in the system's PATH");
             return compilerInvokeError;
+        } catch (InterruptedException e) {
+            LOGGER.severe("Interrupted while waiting for the compiler.");
+            Thread.currentThread().interrupt();
+            compilerOutput.setCompilerInvoked(true);
+            compilerOutput.setClean(false);
+            compilerOutput.setCompileStreamBroken(true);
+            return compilerOutput;
         }
 
-        // Now we read compiler output. If everything is ok gcc reports
-        // nothing at all.
-        InputStream compilerOutputStream = compilerProcess.getErrorStream();
-        InputStreamReader compilerStreamReader = new InputStreamReader(
-                compilerOutputStream);
-        BufferedReader compilerOutputBuffer = new BufferedReader(
-                compilerStreamReader);
-        String line;
-
-        CompilerOutput compilerOutput = new CompilerOutput();
         compilerOutput.setCompilerInvoked(true);
-
-        List<String> compilerOutputLines = new LinkedList<>();
-
-        try {
-            while ((line = compilerOutputBuffer.readLine()) != null) {
-                compilerOutputLines.add(line);
-            }
-
-            compilerOutputStream.close();
-            compilerStreamReader.close();
-            compilerOutputBuffer.close();
-            compilerProcess.destroy();
-        } catch (IOException e) {
-            // Reading might go wrong here if gcc should unexpectedly terminate
-            LOGGER.severe("Error while reading from compiler stream.");
+        if (compilerResult.isTimedOut()) {
+            // gcc was killed, its output is incomplete
             compilerOutput.setClean(false);
             compilerOutput.setCompileStreamBroken(true);
             return compilerOutput;
         }
 
+        // Now we read compiler output. If everything is ok gcc reports
+        // nothing at all.
+        List<String> compilerOutputLines =
+                new LinkedList<>(compilerResult.getErrorLines());
+
         if (compilerOutputLines.size() == 0) {
             compilerOutput.setClean(true);
         }
@@ -218,11 +206,13 @@ public class GccCompileChecker implements CompileChecker {
 
         // If compiler flags are passed, append them after the compiler name.
         // If we didn't get any we append nothing.
+        // The flags belong to the exercise and are shared between parallel
+        // compile runs, so we must not modify them.
         if ((compilerFlags != null) && !(compilerFlags.isEmpty())) {
+            compilerInvocation.addAll(compilerFlags);
             if (!compilerFlags.contains("-c")) {
-                compilerFlags.add("-c");
+                compilerInvocation.add("-c");
             }
-            compilerInvocation.addAll(compilerFlags);
         }
 
         // Check for the existance of the program file we are trying to
@@ -262,7 +252,8 @@ public class GccCompileChecker implements CompileChecker {
     /**
      * splitCompilerOutput splits the compiler output into errors, warnings and
      * infos, stores that data into the {@link CompilerOutput} and sets
-     * appropriate flags (clean compile etc.).
+     * appropriate flags (clean compile etc.). Package private so the
+     * benchmarks can call it directly.
      * 
      * @param lines
      *            Is the raw compiler output, one line per string in a list
@@ -274,7 +265,7 @@ public class GccCompileChecker implements CompileChecker {
      *             When javac has found a bad flag this can only be found after
      *             it has run, hence we throw it here.
      */
-    private CompilerOutput splitCompilerOutput(List<String> lines,
+    CompilerOutput splitCompilerOutput(List<String> lines,
             CompilerOutput compilerOutput) throws BadFlagException {
         // We aggregate lines into the string builder until we can recognize
         // them as a warning or as an
@@ -337,6 +328,19 @@ public class GccCompileChecker implements CompileChecker {
         return compilerOutput;
     }
 
+    /**
+     * gcc is invoked on the top level files of the submission, so the
+     * manifest isn't used and the source folder is searched as usual.
+     */
+    @Override
+    public CompilerOutput checkProgram(SubmissionManifest manifest,
+            Path outputFolder, String compilerName, List<String> compilerFlags)
+            throws FileNotFoundException, BadCompilerSpecifiedException,
+            BadFlagException {
+        return checkProgram(manifest.getRoot(), outputFolder, compilerName,
+                compilerFlags);
+    }
+
     @Override
     public CompilerOutput checkProgram(Path pathToProgramFile,
             String compilerName, List<String> compilerFlags)
@@ -347,4 +351,28 @@ public class GccCompileChecker implements CompileChecker {
 
     }
 
+    /**
+     * No tests are compiled alongside the submission.
+     *
+     * @return an empty string
+     */
+    @Override
+    public String getTestSuiteHash() {
+        return "";
+    }
+
+    /**
+     * No tests are compiled alongside the submission, so there is nothing to
+     * prepare.
+     *
+     * @param submissionOutput
+     *            ignored
+     * @param outputFolder
+     *            ignored
+     */
+    @Override
+    public void prepareTestSuite(CompilerOutput submissionOutput,
+            Path outputFolder) {
+    }
+
 }
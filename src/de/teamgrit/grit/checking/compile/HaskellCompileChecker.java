@@ -15,12 +15,9 @@
 
 package de.teamgrit.grit.checking.compile;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
@@ -32,6 +29,9 @@ import java.util.logging.Logger;
 import org.apache.commons.io.FilenameUtils;
 
 import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
 
 /**
  * This class provides the means to check submissions in Haskell for correct
@@ -86,21 +86,17 @@ public class HaskellCompileChecker implements CompileChecker {
             throws FileNotFoundException, BadCompilerSpecifiedException,
             BadFlagException {
 
-        Process compilerProcess = null;
+        ProcessResult compilerResult;
+        CompilerOutput compilerOutput = new CompilerOutput();
 
         try {
             // create compiler invocation.
             List<String> compilerInvocation = createCompilerInvocation(
                     pathToProgramFile, compilerName, compilerFlags);
 
-            ProcessBuilder compilerProcessBuilder = new ProcessBuilder(
-                    compilerInvocation);
-
             // make sure the compiler stays in its directory.
-            compilerProcessBuilder.directory(pathToProgramFile.getParent()
-                    .toFile());
-
-            compilerProcess = compilerProcessBuilder.start();
+            compilerResult = new ProcessRunner(compilerInvocation).directory(
+                    pathToProgramFile.getParent()).run();
             // this will never happen because createCompilerInvocation never
             // throws this Exception. Throw declaration needs to be in method
             // declaration because of the implemented Interface although we
@@ -108,6 +104,9 @@ public class HaskellCompileChecker implements CompileChecker {
         } catch (CompilerOutputFolderExistsException e) {
             LOGGER.severe("A problem while compiling, which never should happen, occured"
                     + e.getMessage());
+            compilerOutput.setClean(false);
+            compilerOutput.setCompilerInvoked(false);
+            return compilerOutput;
         } catch (BadCompilerSpecifiedException e) {
             throw new BadCompilerSpecifiedException(e.getMessage());
         } catch (IOException e) {
@@ -120,50 +119,36 @@ public class HaskellCompileChecker implements CompileChecker {
             compilerInvokeError.setClean(false);
             compilerInvokeError.setCompilerInvoked(false);
             return compilerInvokeError;
+        } catch (InterruptedException e) {
+            LOGGER.severe("Interrupted while waiting for the compiler.");
+            Thread.currentThread().interrupt();
+            compilerOutput.setCompilerInvoked(true);
+            compilerOutput.setClean(false);
+            compilerOutput.setCompileStreamBroken(true);
+            return compilerOutput;
         }
 
-        // Now we read compiler output. If everything is ok ghc reports
-        // nothing in the errorStream.
-        InputStream compilerOutputStream = compilerProcess.getErrorStream();
-        InputStreamReader compilerStreamReader = new InputStreamReader(
-                compilerOutputStream);
-        BufferedReader compilerOutputBuffer = new BufferedReader(
-                compilerStreamReader);
-        String line;
-
-        CompilerOutput compilerOutput = new CompilerOutput();
         compilerOutput.setCompilerInvoked(true);
-
-        List<String> compilerOutputLines = new LinkedList<>();
-
-        try {
-            while ((line = compilerOutputBuffer.readLine()) != null) {
-                compilerOutputLines.add(line);
-            }
-            // Errors are separated via an empty line (""). But after the
-            // the last error the OutputBuffer has nothing more to write.
-            // In order to recognize the last error we insert an empty String
-            // at the end of the list.
-            // Only needs to be done when there are errors.
-            if (compilerOutputLines.size() != 0) {
-                line = "";
-                compilerOutputLines.add(line);
-            }
-
-            compilerOutputStream.close();
-            compilerStreamReader.close();
-            compilerOutputBuffer.close();
-            compilerProcess.destroy();
-
-        } catch (IOException e) {
-
-            // Reading might go wrong here if ghc should unexpectedly die
-            LOGGER.severe("Error while reading from compiler stream.");
+        if (compilerResult.isTimedOut()) {
+            // ghc was killed, its output is incomplete
             compilerOutput.setClean(false);
             compilerOutput.setCompileStreamBroken(true);
             return compilerOutput;
         }
 
+        // Now we read compiler output. If everything is ok ghc reports
+        // nothing in the errorStream.
+        List<String> compilerOutputLines =
+                new LinkedList<>(compilerResult.getErrorLines());
+        // Errors are separated via an empty line (""). But after the
+        // the last error the OutputBuffer has nothing more to write.
+        // In order to recognize the last error we insert an empty String
+        // at the end of the list.
+        // Only needs to be done when there are errors.
+        if (compilerOutputLines.size() != 0) {
+            compilerOutputLines.add("");
+        }
+
         // ghc -c generates a .o(object) and a .hi(haskell interface) file.
         // But we don't need those files so they can be deleted.
         // The generated files have the same name like our input file so we
@@ -363,4 +348,41 @@ public class HaskellCompileChecker implements CompileChecker {
         return checkProgram(pathToProgramFile, compilerName, compilerFlags);
     }
 
+    /**
+     * ghc resolves the modules of the submission itself, so the manifest
+     * isn't used and the source folder is searched as usual.
+     */
+    @Override
+    public CompilerOutput checkProgram(SubmissionManifest manifest,
+            Path outputFolder, String compilerName, List<String> compilerFlags)
+            throws FileNotFoundException, BadCompilerSpecifiedException,
+            BadFlagException, CompilerOutputFolderExistsException {
+        return checkProgram(manifest.getRoot(), outputFolder, compilerName,
+                compilerFlags);
+    }
+
+    /**
+     * No tests are compiled alongside the submission.
+     *
+     * @return an empty string
+     */
+    @Override
+    public String getTestSuiteHash() {
+        return "";
+    }
+
+    /**
+     * No tests are compiled alongside the submission, so there is nothing to
+     * prepare.
+     *
+     * @param submissionOutput
+     *            ignored
+     * @param outputFolder
+     *            ignored
+     */
+    @Override
+    public void prepareTestSuite(CompilerOutput submissionOutput,
+            Path outputFolder) {
+    }
+
 }
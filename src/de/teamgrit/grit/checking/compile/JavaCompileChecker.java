@@ -17,23 +17,42 @@
 
 package de.teamgrit.grit.checking.compile;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
 import org.apache.commons.io.FileUtils;
 
 import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
+import de.teamgrit.grit.util.hashing.SHA1Generator;
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
 
 /**
  * This class provides the means to check submissions in java for correct
@@ -57,9 +76,32 @@ public class JavaCompileChecker implements CompileChecker {
     
     private Path m_junitTestFilesLocation = null;
 
+    // the compiler of the running JVM, null if we run on a plain JRE
+    private static final JavaCompiler s_javaCompiler = ToolProvider
+            .getSystemJavaCompiler();
+
+    // file managers are expensive to set up and keep the opened jars cached,
+    // so they are reused between compile runs.
+    private static final Queue<StandardJavaFileManager> s_fileManagers =
+            new ConcurrentLinkedQueue<>();
+
+    // file in the test folder holding the hash of the test suite the
+    // compiled test classes next to it were built from
+    private static final String TEST_SUITE_MARKER = ".testsuite";
+
+    private static final String JAVA_SOURCE_REGEX = ".+\\.[Jj][Aa][Vv][Aa]";
+
+    private final boolean m_inProcess;
+
+    // guards compiling the test suite into the shared test folder, testers
+    // hold the read lock while they load the compiled tests
+    private final ReadWriteLock m_testSuiteLock =
+            new ReentrantReadWriteLock();
+
     /**
      * The constructor for the compileChecker only checks if javac can be found
-     * in PATH on windows systems.
+     * in PATH on windows systems. Compiles in-process if the running JVM
+     * provides a compiler.
      *
      * @param pathToJunitTests
      *            points to the location of the provided JUnit test files. If
@@ -67,7 +109,27 @@ public class JavaCompileChecker implements CompileChecker {
      *
      */
     public JavaCompileChecker(Path pathToJunitTests) {
+        this(pathToJunitTests, true);
+    }
+
+    /**
+     * Creates a compileChecker that either runs javac inside the running JVM
+     * or launches it as separate process.
+     *
+     * @param pathToJunitTests
+     *            points to the location of the provided JUnit test files. If
+     *            none are given this parameter must be null.
+     * @param inProcess
+     *            whether javac should be run inside this JVM. Falls back to
+     *            launching javac if the JVM doesn't provide a compiler.
+     */
+    public JavaCompileChecker(Path pathToJunitTests, boolean inProcess) {
         m_junitTestFilesLocation = pathToJunitTests.toAbsolutePath();
+        if (inProcess && (s_javaCompiler == null)) {
+            LOGGER.warning("No system java compiler available, "
+                    + "falling back to launching javac.");
+        }
+        m_inProcess = inProcess && (s_javaCompiler != null);
     }
 
     /**
@@ -101,49 +163,487 @@ public class JavaCompileChecker implements CompileChecker {
             List<String> compilerFlags)
             throws FileNotFoundException, BadCompilerSpecifiedException,
             BadFlagException, CompilerOutputFolderExistsException {
+        List<Path> sourceFiles = null;
+        if ((pathToSourceFolder != null)
+                && Files.isDirectory(pathToSourceFolder,
+                        LinkOption.NOFOLLOW_LINKS)) {
+            sourceFiles = exploreDirectory(pathToSourceFolder);
+        }
+        return checkProgram(pathToSourceFolder, sourceFiles, outputFolder,
+                compilerName, compilerFlags);
+    }
+
+    @Override
+    public CompilerOutput checkProgram(SubmissionManifest manifest,
+            Path outputFolder, String compilerName, List<String> compilerFlags)
+            throws FileNotFoundException, BadCompilerSpecifiedException,
+            BadFlagException, CompilerOutputFolderExistsException {
+        return checkProgram(manifest.getRoot(),
+                manifest.getFiles(JAVA_SOURCE_REGEX), outputFolder,
+                compilerName, compilerFlags);
+    }
+
+    /**
+     * Invokes the compiler on the given source files and reports the output.
+     *
+     * @param pathToSourceFolder
+     *            Specifies the folder where source files are located.
+     * @param sourceFiles
+     *            the java files within the source folder
+     * @param outputFolder
+     *            Directory where the resulting binaries are placed
+     * @param compilerName
+     *            The compiler to be used (usually javac).
+     * @param compilerFlags
+     *            Additional flags to be passed to the compiler.
+     * @return See {@link #checkProgram(Path, Path, String, List)}.
+     * @throws FileNotFoundException
+     *             See {@link #checkProgram(Path, Path, String, List)}.
+     * @throws BadCompilerSpecifiedException
+     *             See {@link #checkProgram(Path, Path, String, List)}.
+     * @throws BadFlagException
+     *             See {@link #checkProgram(Path, Path, String, List)}.
+     * @throws CompilerOutputFolderExistsException
+     *             See {@link #checkProgram(Path, Path, String, List)}.
+     */
+    private CompilerOutput checkProgram(Path pathToSourceFolder,
+            List<Path> sourceFiles, Path outputFolder, String compilerName,
+            List<String> compilerFlags)
+            throws FileNotFoundException, BadCompilerSpecifiedException,
+            BadFlagException, CompilerOutputFolderExistsException {
 
         // First we build the command to invoke the compiler. This consists of
         // the compiler executable, the path of the
         // file to compile and compiler flags.
 
         List<String> compilerInvocation =
-                createCompilerInvocation(pathToSourceFolder, outputFolder,
-                        compilerName, compilerFlags);
+                createCompilerInvocation(pathToSourceFolder, sourceFiles,
+                        outputFolder, compilerName, compilerFlags);
+
+        if (m_inProcess) {
+            return checkProgramInProcess(pathToSourceFolder, sourceFiles,
+                    outputFolder, compilerFlags);
+        }
+
         // Now we build a launchable process from the given parameters and set
         // the working directory.
         CompilerOutput result =
                 runJavacProcess(compilerInvocation, pathToSourceFolder, false);
 
-        compilerInvocation.clear();
+        prepareTestSuite(result, outputFolder);
+        return result;
 
-        compilerInvocation.add("javac");
-        compilerInvocation.add("-cp");
-        // Add testDependencies to classpath
-        String cp = ".:" + m_junitLocation + ":" + outputFolder.toAbsolutePath();        
-        // Add all additional .jar files contained in javalib directory to the classpath
-        if (!m_libLocation.toFile().exists()){
-        	m_libLocation.toFile().mkdir();
-        } else {
-        	for(File f : FileUtils.listFiles(m_libLocation.toFile(), new String[]{"jar"}, false)){
-        		cp = cp + ":" + f.getAbsolutePath(); 		
-        	}
+    }
+
+    /**
+     * Makes sure the JUnit tests are compiled into the test folder. The tests
+     * only change when a new test file is uploaded, so they are compiled once
+     * and only rebuilt when the hash of the test sources and the javalib jars
+     * differs from the one recorded with the compiled classes.
+     *
+     * @param submissionOutput
+     *            the compiler output of the submission the tests would be
+     *            compiled against
+     * @param outputFolder
+     *            where the binaries of the submission are located
+     * @throws BadFlagException
+     *             if a flag is not known to javac
+     */
+    @Override
+    public void prepareTestSuite(CompilerOutput submissionOutput,
+            Path outputFolder) throws BadFlagException {
+        // the tests can only be compiled against a compiling submission
+        if (!submissionOutput.compilerInvoked()
+                || !submissionOutput.getCompilerErrors().isEmpty()) {
+            return;
         }
-        compilerInvocation.add(cp);
-        
-        //make sure java uses utf8 for encoding
-        compilerInvocation.add("-encoding");
-        compilerInvocation.add("UTF-8");
 
-        compilerInvocation.add("-d");
-        compilerInvocation.add(m_junitTestFilesLocation.toAbsolutePath()
-                .toString());
-        List<Path> foundUnitTests = exploreDirectory(m_junitTestFilesLocation);
-        for (Path path : foundUnitTests) {
-            compilerInvocation.add(path.toAbsolutePath().toString());
+        String testSuiteHash = getTestSuiteHash();
+        Path marker = m_junitTestFilesLocation.resolve(TEST_SUITE_MARKER);
+        m_testSuiteLock.readLock().lock();
+        try {
+            if (isTestSuiteCompiled(testSuiteHash, marker)) {
+                return;
+            }
+        } finally {
+            m_testSuiteLock.readLock().unlock();
         }
-        runJavacProcess(compilerInvocation, m_junitTestFilesLocation, true);
+
+        // the classes are replaced in place, so no tester may load them
+        // until the rebuild is done
+        m_testSuiteLock.writeLock().lock();
+        try {
+            if (isTestSuiteCompiled(testSuiteHash, marker)) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(marker);
+                // drop the classes of an older test suite
+                for (File classFile : FileUtils.listFiles(
+                        m_junitTestFilesLocation.toFile(),
+                        new String[] { "class" }, true)) {
+                    Files.delete(classFile.toPath());
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Could not reset compiled tests in "
+                        + m_junitTestFilesLocation + ": " + e.getMessage());
+            }
+
+            LOGGER.info("Compiling tests in " + m_junitTestFilesLocation);
+            List<Path> foundUnitTests =
+                    exploreDirectory(m_junitTestFilesLocation);
+            CompilerOutput testOutput;
+            if (m_inProcess) {
+                List<File> classpath = new LinkedList<>();
+                classpath.add(m_junitTestFilesLocation.toFile());
+                classpath.add(m_junitLocation.toFile());
+                classpath.add(outputFolder.toFile());
+                classpath.addAll(findLibraries());
+                testOutput =
+                        runJavacInProcess(new LinkedList<String>(), classpath,
+                                foundUnitTests, m_junitTestFilesLocation);
+            } else {
+                List<String> compilerInvocation = new LinkedList<>();
+                compilerInvocation.add("javac");
+                compilerInvocation.add("-cp");
+                // Add testDependencies to classpath
+                String cp =
+                        ".:" + m_junitLocation + ":"
+                                + outputFolder.toAbsolutePath();
+                // Add all additional .jar files contained in javalib
+                // directory to the classpath
+                for (File f : findLibraries()) {
+                    cp = cp + ":" + f.getAbsolutePath();
+                }
+                compilerInvocation.add(cp);
+
+                // make sure java uses utf8 for encoding
+                compilerInvocation.add("-encoding");
+                compilerInvocation.add("UTF-8");
+
+                compilerInvocation.add("-d");
+                compilerInvocation.add(m_junitTestFilesLocation
+                        .toAbsolutePath().toString());
+                for (Path path : foundUnitTests) {
+                    compilerInvocation.add(path.toAbsolutePath().toString());
+                }
+                testOutput =
+                        runJavacProcess(compilerInvocation,
+                                m_junitTestFilesLocation, true);
+            }
+
+            // Tests that don't compile against this submission may well
+            // compile against the next one, so only a successful build is
+            // recorded.
+            if ((testSuiteHash != null) && testOutput.compilerInvoked()
+                    && !testOutput.compilerStreamBroken()
+                    && testOutput.getCompilerErrors().isEmpty()) {
+                try {
+                    FileUtils.writeStringToFile(marker.toFile(),
+                            testSuiteHash, "UTF-8");
+                } catch (IOException e) {
+                    LOGGER.warning("Could not record test suite hash: "
+                            + e.getMessage());
+                }
+            }
+        } finally {
+            m_testSuiteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether the compiled tests in the test folder were built from
+     * the test suite with the given hash.
+     *
+     * @param testSuiteHash
+     *            the current hash of the test suite, may be null
+     * @param marker
+     *            the file recording the hash of the compiled tests
+     * @return true if the compiled tests are up to date
+     */
+    private boolean isTestSuiteCompiled(String testSuiteHash, Path marker) {
+        try {
+            return (testSuiteHash != null)
+                    && Files.exists(marker)
+                    && testSuiteHash.equals(FileUtils.readFileToString(
+                            marker.toFile(), "UTF-8"));
+        } catch (IOException e) {
+            LOGGER.warning("Could not read test suite hash: "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the lock guarding the compiled tests. A {@link
+     * de.teamgrit.grit.checking.testing.Tester} has to hold its read lock
+     * while it runs the tests, as they may be rebuilt at any time.
+     *
+     * @return the lock of the test suite
+     */
+    public ReadWriteLock getTestSuiteLock() {
+        return m_testSuiteLock;
+    }
+
+    /**
+     * Calculates a hash over the JUnit test sources and the jars in the
+     * javalib directory. The compiled tests have to be rebuilt whenever it
+     * changes.
+     *
+     * @return the hash or null if the test sources can't be read
+     */
+    @Override
+    public String getTestSuiteHash() {
+        StringBuilder fingerprint = new StringBuilder();
+        try {
+            List<Path> testSources =
+                    new ArrayList<>(exploreDirectory(m_junitTestFilesLocation));
+            Collections.sort(testSources);
+            for (Path testSource : testSources) {
+                String sourceHash =
+                        SHA1Generator.calculateSHA1HashOfFile(testSource);
+                fingerprint
+                        .append(m_junitTestFilesLocation.relativize(testSource))
+                        .append(':').append(sourceHash).append('\n');
+            }
+            List<File> libraries = findLibraries();
+            Collections.sort(libraries);
+            for (File library : libraries) {
+                fingerprint.append(library.getName()).append(':')
+                        .append(library.length()).append(':')
+                        .append(library.lastModified()).append('\n');
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Could not hash test suite in "
+                    + m_junitTestFilesLocation + ": " + e.getMessage());
+            return null;
+        }
+        return SHA1Generator.calculateSHA1Hash(fingerprint.toString());
+    }
+
+    /**
+     * Compiles the submission with the compiler of the running JVM. The
+     * arguments have already been validated by
+     * {@link #createCompilerInvocation(Path, List, Path, String, List)}.
+     *
+     * @param pathToSourceFolder
+     *            the folder containing the submission's sources
+     * @param sourceFiles
+     *            the java files within the source folder
+     * @param outputFolder
+     *            where the class files are placed
+     * @param compilerFlags
+     *            additional flags for the compiler
+     * @return the {@link CompilerOutput} of the submission's compile run
+     * @throws BadFlagException
+     *             if a flag is not known to javac
+     */
+    private CompilerOutput checkProgramInProcess(Path pathToSourceFolder,
+            List<Path> sourceFiles, Path outputFolder,
+            List<String> compilerFlags)
+            throws BadFlagException {
+        List<String> options = new LinkedList<>();
+        if (compilerFlags != null) {
+            for (String flag : compilerFlags) {
+                if ((flag != null) && !"".equals(flag)) {
+                    options.add(flag);
+                }
+            }
+        }
+
+        List<File> classpath = new LinkedList<>();
+        classpath.add(pathToSourceFolder.toFile());
+        classpath.add(m_junitLocation.toFile());
+        classpath.addAll(findLibraries());
+        CompilerOutput result =
+                runJavacInProcess(options, classpath, sourceFiles,
+                        outputFolder);
+        prepareTestSuite(result, outputFolder);
         return result;
+    }
 
+    /**
+     * Runs the compiler of the running JVM on the given files and turns the
+     * reported diagnostics into a {@link CompilerOutput}.
+     *
+     * @param options
+     *            the options passed to the compiler
+     * @param classpath
+     *            the classpath to compile against
+     * @param sourceFiles
+     *            the files to compile
+     * @param outputFolder
+     *            where the class files are placed
+     * @return CompilerOutput with fields initialized according to the
+     *         diagnostics of the compile run
+     * @throws BadFlagException
+     *             if a flag is not known to javac
+     */
+    private CompilerOutput runJavacInProcess(List<String> options,
+            List<File> classpath, List<Path> sourceFiles, Path outputFolder)
+            throws BadFlagException {
+        CompilerOutput compilerOutput = new CompilerOutput();
+        StandardJavaFileManager fileManager = s_fileManagers.poll();
+        if (fileManager == null) {
+            fileManager =
+                    s_javaCompiler.getStandardFileManager(null, null,
+                            StandardCharsets.UTF_8);
+        }
+
+        // flags that reconfigure the file manager would leak into later
+        // compile runs, so such a file manager is not reused.
+        boolean reusable = true;
+        for (String option : options) {
+            if (fileManager.isSupportedOption(option) >= 0) {
+                reusable = false;
+            }
+        }
+
+        try {
+            List<File> files = new LinkedList<>();
+            for (Path sourceFile : sourceFiles) {
+                files.add(sourceFile.toFile());
+            }
+            fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT,
+                    Collections.singletonList(outputFolder.toFile()));
+
+            DiagnosticCollector<JavaFileObject> diagnostics =
+                    new DiagnosticCollector<>();
+            StringWriter otherOutput = new StringWriter();
+            CompilationTask task =
+                    s_javaCompiler.getTask(otherOutput, fileManager,
+                            diagnostics, options, null,
+                            fileManager.getJavaFileObjectsFromFiles(files));
+            compilerOutput.setCompilerInvoked(true);
+            boolean success = task.call();
+
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+                    .getDiagnostics()) {
+                switch (diagnostic.getKind()) {
+                case ERROR:
+                    compilerOutput.addError(formatDiagnostic(diagnostic,
+                            "error"));
+                    break;
+                case WARNING:
+                case MANDATORY_WARNING:
+                    compilerOutput.addWarning(formatDiagnostic(diagnostic,
+                            "warning"));
+                    break;
+                case NOTE:
+                    // Notes are actually warnings from javac, like
+                    // deprecation warnings.
+                    compilerOutput.addWarning("Note: "
+                            + diagnostic.getMessage(Locale.ENGLISH));
+                    break;
+                default:
+                    compilerOutput.addInfo(diagnostic
+                            .getMessage(Locale.ENGLISH));
+                    break;
+                }
+            }
+            if (!otherOutput.toString().trim().isEmpty()) {
+                compilerOutput.addInfo(otherOutput.toString());
+            }
+
+            // as with the external javac, only a silent run is a clean one
+            compilerOutput.setClean(success
+                    && diagnostics.getDiagnostics().isEmpty()
+                    && otherOutput.toString().trim().isEmpty());
+        } catch (IllegalArgumentException e) {
+            reusable = false;
+            throw new BadFlagException("Flag not supported. "
+                    + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            // the compiler crashed or couldn't access the files.
+            reusable = false;
+            LOGGER.severe("In-process compile failed: " + e.getMessage());
+            compilerOutput.setClean(false);
+            compilerOutput.setCompileStreamBroken(true);
+        } finally {
+            if (reusable) {
+                s_fileManagers.offer(fileManager);
+            } else {
+                try {
+                    fileManager.close();
+                } catch (IOException e) {
+                    LOGGER.warning("Could not close file manager: "
+                            + e.getMessage());
+                }
+            }
+        }
+        return compilerOutput;
+    }
+
+    /**
+     * Formats a diagnostic the way javac prints it: location, kind and
+     * message followed by the offending source line.
+     *
+     * @param diagnostic
+     *            the diagnostic reported by the compiler
+     * @param kind
+     *            how the diagnostic is labeled, e.g. "error"
+     * @return the formatted diagnostic
+     */
+    private String formatDiagnostic(
+            Diagnostic<? extends JavaFileObject> diagnostic, String kind) {
+        StringBuilder formatted = new StringBuilder();
+        if (diagnostic.getSource() != null) {
+            formatted.append(diagnostic.getSource().getName()).append(':')
+                    .append(diagnostic.getLineNumber()).append(": ");
+        }
+        formatted.append(kind).append(": ")
+                .append(diagnostic.getMessage(Locale.ENGLISH)).append('\n');
+        String sourceLine = getSourceLine(diagnostic);
+        if (sourceLine != null) {
+            formatted.append(sourceLine).append('\n');
+        }
+        return formatted.toString();
+    }
+
+    /**
+     * Looks up the source line a diagnostic refers to.
+     *
+     * @param diagnostic
+     *            the diagnostic reported by the compiler
+     * @return the line or null if it can't be determined
+     */
+    private String getSourceLine(
+            Diagnostic<? extends JavaFileObject> diagnostic) {
+        if ((diagnostic.getSource() == null)
+                || (diagnostic.getLineNumber() == Diagnostic.NOPOS)) {
+            return null;
+        }
+        try {
+            String[] lines =
+                    diagnostic.getSource().getCharContent(true).toString()
+                            .split("\\r?\\n", -1);
+            int index = (int) diagnostic.getLineNumber() - 1;
+            if ((index >= 0) && (index < lines.length)) {
+                return lines[index];
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Could not read source of diagnostic: "
+                    + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Finds the additional .jar files in the javalib directory, creating the
+     * directory if it doesn't exist yet.
+     *
+     * @return the jar files to put on the classpath
+     */
+    private List<File> findLibraries() {
+        List<File> libraries = new LinkedList<>();
+        if (!m_libLocation.toFile().exists()) {
+            m_libLocation.toFile().mkdir();
+        } else {
+            libraries.addAll(FileUtils.listFiles(m_libLocation.toFile(),
+                    new String[] { "jar" }, false));
+        }
+        return libraries;
     }
 
     /**
@@ -161,19 +661,18 @@ public class JavaCompileChecker implements CompileChecker {
     private CompilerOutput runJavacProcess(
             List<String> compilerInvocation, Path pathToSourceFolder,
             boolean junit) throws BadFlagException {
-        Process compilerProcess = null;
+        ProcessRunner compilerRunner = new ProcessRunner(compilerInvocation);
+        // make sure the compiler stays in its directory.
+        if (Files.isDirectory(pathToSourceFolder, LinkOption.NOFOLLOW_LINKS)) {
+            compilerRunner.directory(pathToSourceFolder);
+        } else {
+            compilerRunner.directory(pathToSourceFolder.getParent());
+        }
+
+        CompilerOutput compilerOutput = new CompilerOutput();
+        ProcessResult compilerResult;
         try {
-            ProcessBuilder compilerProcessBuilder =
-                    new ProcessBuilder(compilerInvocation);
-            // make sure the compiler stays in its directory.
-            if (Files.isDirectory(pathToSourceFolder,
-                    LinkOption.NOFOLLOW_LINKS)) {
-                compilerProcessBuilder.directory(pathToSourceFolder.toFile());
-            } else {
-                compilerProcessBuilder.directory(pathToSourceFolder
-                        .getParent().toFile());
-            }
-            compilerProcess = compilerProcessBuilder.start();
+            compilerResult = compilerRunner.run();
         } catch (IOException e) {
             // If we cannot call the compiler we return a CompilerOutput
             // which is
@@ -184,43 +683,31 @@ public class JavaCompileChecker implements CompileChecker {
             compilerInvokeError.setClean(false);
             compilerInvokeError.setCompilerInvoked(false);
             return compilerInvokeError;
+        } catch (InterruptedException e) {
+            LOGGER.severe("Interrupted while compiling "
+                    + pathToSourceFolder.toString());
+            Thread.currentThread().interrupt();
+            compilerOutput.setCompilerInvoked(true);
+            compilerOutput.setClean(false);
+            compilerOutput.setCompileStreamBroken(true);
+            return compilerOutput;
         }
 
-        // Now we read compiler output. If everything is ok javac reports
-        // nothing at all.
-        InputStream compilerOutputStream = compilerProcess.getErrorStream();
-        InputStreamReader compilerStreamReader =
-                new InputStreamReader(compilerOutputStream);
-        BufferedReader compilerOutputBuffer =
-                new BufferedReader(compilerStreamReader);
-        String line;
-
-        CompilerOutput compilerOutput = new CompilerOutput();
         compilerOutput.setCompilerInvoked(true);
-
-        List<String> compilerOutputLines = new LinkedList<>();
-
-        try {
-            while ((line = compilerOutputBuffer.readLine()) != null) {
-                compilerOutputLines.add(line);
-            }
-
-            compilerOutputStream.close();
-            compilerStreamReader.close();
-            compilerOutputBuffer.close();
-            compilerProcess.destroy();
-        } catch (IOException e) {
-            // Reading might go wrong here if javac should unexpectedly
-            // terminate
-            LOGGER.severe("Could not read compiler ourput from its output stream."
-                    + " Aborting compile of: "
-                    + pathToSourceFolder.toString()
-                    + " Got message: " + e.getMessage());
+        if (compilerResult.isTimedOut()) {
+            // javac was killed, its output is incomplete
+            LOGGER.severe("javac didn't finish in time. Aborting compile of: "
+                    + pathToSourceFolder.toString());
             compilerOutput.setClean(false);
             compilerOutput.setCompileStreamBroken(true);
             return compilerOutput;
         }
 
+        // Now we read compiler output. If everything is ok javac reports
+        // nothing at all.
+        List<String> compilerOutputLines =
+                new LinkedList<>(compilerResult.getErrorLines());
+
         splitCompilerOutput(compilerOutputLines, compilerOutput);
 
         if (compilerOutputLines.size() == 0) {
@@ -236,6 +723,8 @@ public class JavaCompileChecker implements CompileChecker {
      *
      * @param pathToSourceFolder
      *            Where to look for the source files that will be compiled.
+     * @param sourceFiles
+     *            The java files within the source folder.
      * @param outputFolder
      *            Where .class files will be placed
      * @param compilerName
@@ -252,8 +741,8 @@ public class JavaCompileChecker implements CompileChecker {
      * @return List of string with the command for the process builder.
      */
     private List<String> createCompilerInvocation(
-            Path pathToSourceFolder, Path outputFolder, String compilerName,
-            List<String> compilerFlags)
+            Path pathToSourceFolder, List<Path> sourceFiles,
+            Path outputFolder, String compilerName, List<String> compilerFlags)
             throws BadCompilerSpecifiedException, FileNotFoundException,
             CompilerOutputFolderExistsException {
 
@@ -284,12 +773,8 @@ public class JavaCompileChecker implements CompileChecker {
         compilerInvocation.add("-cp");   
         String cp = ".:" + m_junitLocation.toAbsolutePath().toString();
         // Add all additional .jar files contained in javalib directory to the classpath
-        if (!m_libLocation.toFile().exists()){
-        	m_libLocation.toFile().mkdir();
-        } else {
-        	for(File f : FileUtils.listFiles(m_libLocation.toFile(), new String[]{"jar"}, false)){
-        		cp = cp + ":" + f.getAbsolutePath(); 		
-        	}
+        for (File f : findLibraries()) {
+            cp = cp + ":" + f.getAbsolutePath();
         }
         compilerInvocation.add(cp);
         
@@ -305,10 +790,9 @@ public class JavaCompileChecker implements CompileChecker {
         } else {
             if (Files.isDirectory(pathToSourceFolder,
                     LinkOption.NOFOLLOW_LINKS)) {
-                // we are supposed to compile a folder. Hence we'll scan for
-                // java files and pass them to the compiler.
-                List<Path> foundFiles = exploreDirectory(pathToSourceFolder);
-                for (Path matchedFile : foundFiles) {
+                // we are supposed to compile a folder. Hence we pass the
+                // java files found in it to the compiler.
+                for (Path matchedFile : sourceFiles) {
                     compilerInvocation.add(matchedFile.toFile()
                             .getAbsolutePath());
                 }
@@ -337,7 +821,7 @@ public class JavaCompileChecker implements CompileChecker {
      */
     private List<Path> exploreDirectory(Path pathToSourceFolder) {
         RegexDirectoryWalker dirWalker =
-                new RegexDirectoryWalker(".+\\.[Jj][Aa][Vv][Aa]");
+                new RegexDirectoryWalker(JAVA_SOURCE_REGEX);
         try {
             Files.walkFileTree(pathToSourceFolder, dirWalker);
         } catch (IOException e) {
@@ -352,6 +836,7 @@ public class JavaCompileChecker implements CompileChecker {
      * Populates the compiler output with the compiler output split into
      * errors, warnings and infos, stores that data into the
      * {@link CompilerOutput} and sets appropriate flags (clean compile etc.).
+     * Package private so the benchmarks can call it directly.
      *
      * @param lines
      *            Is the raw compiler output, one line per string in a list
@@ -363,7 +848,7 @@ public class JavaCompileChecker implements CompileChecker {
      *             When javac has found a bad flag this can only be found after
      *             it has run, hence we throw it here.
      */
-    private CompilerOutput splitCompilerOutput(
+    CompilerOutput splitCompilerOutput(
             List<String> lines, CompilerOutput compilerOutput)
             throws BadFlagException {
 
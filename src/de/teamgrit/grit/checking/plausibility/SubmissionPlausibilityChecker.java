@@ -23,6 +23,7 @@ import java.nio.file.Path;
 import java.util.logging.Logger;
 
 import de.teamgrit.grit.entities.LanguageType;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
 
 /**
  * Provides the static function.
@@ -72,6 +73,34 @@ public class SubmissionPlausibilityChecker {
      */
     public static boolean checkLocation(Path sourceLocation,
             LanguageType languageType) {
+        return checkLocation(sourceLocation, getRegex(languageType));
+    }
+
+    /**
+     * Checks whether files of the specified language type are listed in the
+     * manifest of a submission. Unlike
+     * {@link #checkLocation(Path, LanguageType)} this doesn't touch the file
+     * system.
+     * 
+     * @param manifest
+     *            the files of the submission
+     * @param languageType
+     *            the language type that is being looked for
+     * @return true, if there is a file, false if there is none
+     */
+    public static boolean checkManifest(SubmissionManifest manifest,
+            LanguageType languageType) {
+        return !manifest.getFiles(getRegex(languageType)).isEmpty();
+    }
+
+    /**
+     * Gets the regex matching the source files of a language.
+     * 
+     * @param languageType
+     *            the language
+     * @return the regex
+     */
+    private static String getRegex(LanguageType languageType) {
         String regex;
         switch (languageType) {
         case JAVA:
@@ -91,6 +120,6 @@ public class SubmissionPlausibilityChecker {
                     "Language Type is not supported!");
 
         }
-        return checkLocation(sourceLocation, regex);
+        return regex;
     }
 }
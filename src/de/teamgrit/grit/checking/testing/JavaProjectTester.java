@@ -24,6 +24,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FileUtils;
@@ -50,6 +52,8 @@ public class JavaProjectTester implements Tester {
     Logger LOGGER = Logger.getLogger("systemlog");
     private Path testLocation;
     private List<String> tests;
+    private TestWorkerPool workerPool;
+    private ReadWriteLock testSuiteLock;
 
     /**
      * Constructor, creates a {@link Tester} from a path to a directory where
@@ -61,7 +65,43 @@ public class JavaProjectTester implements Tester {
      *            directory ({@link URLClassLoader} wants it that way)
      */
     public JavaProjectTester(Path tests) {
+        this(tests, null);
+    }
+
+    /**
+     * Constructor, creates a {@link Tester} that runs the tests in separate
+     * JVMs instead of the running one.
+     *
+     * @param tests
+     *            Directory to the tests, see
+     *            {@link #JavaProjectTester(Path)}
+     * @param pool
+     *            the workers running the tests, null to run them in the
+     *            running JVM
+     */
+    public JavaProjectTester(Path tests, TestWorkerPool pool) {
+        this(tests, pool, null);
+    }
+
+    /**
+     * Constructor, creates a {@link Tester} whose compiled tests may be
+     * rebuilt while it runs.
+     *
+     * @param tests
+     *            Directory to the tests, see
+     *            {@link #JavaProjectTester(Path)}
+     * @param pool
+     *            the workers running the tests, null to run them in the
+     *            running JVM
+     * @param lock
+     *            the lock guarding the compiled tests, its read lock is held
+     *            while the tests run. May be null.
+     */
+    public JavaProjectTester(Path tests, TestWorkerPool pool,
+            ReadWriteLock lock) {
         testLocation = tests;
+        workerPool = pool;
+        testSuiteLock = lock;
     }
 
     /**
@@ -85,6 +125,44 @@ public class JavaProjectTester implements Tester {
         // if there are no tests create and empty TestOutput with didTest false
         if ((testLocation == null) || testLocation.toString().isEmpty()) {
             return new TestOutput(null, false);
+        }
+        if (testSuiteLock == null) {
+            return runTests(submissionBinariesLocation);
+        }
+        Lock lock = testSuiteLock.readLock();
+        lock.lock();
+        try {
+            return runTests(submissionBinariesLocation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the tests in testLocation on the given binaries.
+     *
+     * @param submissionBinariesLocation
+     *            The path to the compiled binaries of the submission.
+     * @return the {@link TestOutput} containing the test results.
+     * @throws ClassNotFoundException
+     *             Throws if the loaded Classes are not found
+     * @throws IOException
+     *             Throws if the sourceCodeLocation is malformed or the
+     *             {@link URLClassLoader} can't be closed.
+     */
+    private TestOutput runTests(Path submissionBinariesLocation)
+            throws ClassNotFoundException, IOException {
+        if (workerPool != null) {
+            List<String> testClassNames = new LinkedList<>();
+            Path testLoc = testLocation.toAbsolutePath();
+            for (Path path : exploreDirectory(testLoc,
+                    ExplorationType.SOURCEFILES)) {
+                testClassNames.add(getQuallifiedNameFromSource(path));
+            }
+            List<Result> results =
+                    workerPool.runTests(testLoc, submissionBinariesLocation,
+                            testClassNames);
+            return new TestOutput(results, true);
         } else {
 
             List<Result> results = new LinkedList<>();
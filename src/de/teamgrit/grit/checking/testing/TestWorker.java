@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.checking.testing;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.runner.Description;
+import org.junit.runner.Request;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+/**
+ * Runs JUnit tests inside a separate JVM on behalf of the
+ * {@link TestWorkerPool}. Jobs are read line by line from stdin, results are
+ * written to stdout. Output of the tested code is discarded, so it can't
+ * interfere with the protocol.
+ *
+ * <p>
+ * A job is a single line of tab separated fields: <code>RUN</code>, the
+ * test timeout in ms, the test folder, the binary folder and the names of
+ * the test classes. For each test class the worker answers with a
+ * <code>CLASS</code> line, one <code>PASS</code>, <code>FAIL</code> or
+ * <code>IGNORE</code> line per test carrying the method name, the failure
+ * message and the class name of the thrown exception, and an <code>END</code>
+ * line, or with a single <code>ERROR</code>
+ * line if the class can't be loaded. The job is finished by a <code>DONE</code>
+ * line. A worker with a test that didn't stop in time answers
+ * <code>DONE POISONED</code> and exits, since the runaway thread can't be
+ * reclaimed safely.
+ * </p>
+ */
+public final class TestWorker {
+
+    static final String RUN = "RUN";
+    static final String CLASS = "CLASS";
+    static final String PASS = "PASS";
+    static final String FAIL = "FAIL";
+    static final String IGNORE = "IGNORE";
+    static final String END = "END";
+    static final String ERROR = "ERROR";
+    static final String DONE = "DONE";
+    static final String POISONED = "POISONED";
+    static final String SEPARATOR = "\t";
+
+    private static final long POLL_INTERVAL = 50;
+    private static final long STOP_GRACE_PERIOD = 500;
+
+    private final PrintStream m_protocol;
+
+    private volatile boolean m_poisoned = false;
+
+    /**
+     * Creates a worker answering on the given stream.
+     *
+     * @param protocol
+     *            the stream the results are written to
+     */
+    private TestWorker(PrintStream protocol) {
+        m_protocol = protocol;
+    }
+
+    /**
+     * Entry point of a worker JVM.
+     *
+     * @param args
+     *            ignored
+     * @throws IOException
+     *             if the job stream breaks
+     */
+    public static void main(String[] args) throws IOException {
+        PrintStream protocol =
+                new PrintStream(new FileOutputStream(FileDescriptor.out),
+                        true, "UTF-8");
+        PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        System.setOut(discard);
+        System.setErr(discard);
+
+        TestWorker worker = new TestWorker(protocol);
+        BufferedReader jobs =
+                new BufferedReader(new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8));
+        String line;
+        while ((line = jobs.readLine()) != null) {
+            String[] fields = line.split(SEPARATOR, -1);
+            if (!RUN.equals(fields[0]) || (fields.length < 4)) {
+                continue;
+            }
+            worker.runJob(fields);
+            if (worker.m_poisoned) {
+                protocol.println(DONE + SEPARATOR + POISONED);
+                protocol.flush();
+                Runtime.getRuntime().halt(1);
+            }
+            protocol.println(DONE);
+        }
+        Runtime.getRuntime().halt(0);
+    }
+
+    /**
+     * Runs all test classes of a job.
+     *
+     * @param fields
+     *            the fields of the job line
+     */
+    private void runJob(String[] fields) {
+        long testTimeout = Long.parseLong(fields[1]);
+        URLClassLoader loader = null;
+        try {
+            URL testsURL =
+                    Paths.get(unescape(fields[2])).toUri().toURL();
+            URL submissionURL =
+                    Paths.get(unescape(fields[3])).toUri().toURL();
+            loader =
+                    new URLClassLoader(new URL[] { testsURL, submissionURL },
+                            TestWorker.class.getClassLoader());
+            for (int i = 4; (i < fields.length) && !m_poisoned; i++) {
+                runTestClass(loader, unescape(fields[i]), testTimeout);
+            }
+        } catch (IOException e) {
+            m_protocol.println(ERROR + SEPARATOR + "" + SEPARATOR
+                    + escape(e.toString()));
+        } finally {
+            if (loader != null) {
+                try {
+                    loader.close();
+                } catch (IOException e) {
+                    // the worker is recycled anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the tests of a single class, giving every test the specified time
+     * to finish.
+     *
+     * @param loader
+     *            the loader for the tests and the submission
+     * @param className
+     *            the test class
+     * @param testTimeout
+     *            the time a single test may take in milliseconds
+     */
+    private void runTestClass(ClassLoader loader, String className,
+            long testTimeout) {
+        final Runner runner;
+        try {
+            Class<?> testClass = loader.loadClass(className);
+            runner = Request.aClass(testClass).getRunner();
+        } catch (Throwable e) {
+            m_protocol.println(ERROR + SEPARATOR + escape(className)
+                    + SEPARATOR + escape(e.toString()));
+            return;
+        }
+
+        final RecordingListener listener = new RecordingListener();
+        final RunNotifier notifier = new RunNotifier();
+        notifier.addListener(listener);
+        Thread testThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runner.run(notifier);
+            }
+        }, "test-" + className);
+        testThread.setDaemon(true);
+        testThread.start();
+
+        Description timedOut = null;
+        try {
+            while (testThread.isAlive()) {
+                testThread.join(POLL_INTERVAL);
+                timedOut = listener.getTestRunningLongerThan(testTimeout);
+                if (timedOut != null) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<Description, String> outcomes = listener.close();
+        Map<Description, String> messages = listener.getMessages();
+        Map<Description, String> exceptions = listener.getExceptions();
+        if (timedOut != null) {
+            outcomes.put(timedOut, FAIL);
+            messages.put(timedOut, "test timed out after " + testTimeout
+                    + " ms");
+            // the remaining tests of this class can't run anymore
+            for (Description test : collectTests(runner.getDescription())) {
+                if (!outcomes.containsKey(test)) {
+                    outcomes.put(test, FAIL);
+                    messages.put(test, "not run, an earlier test timed out");
+                }
+            }
+            stop(testThread);
+        }
+
+        m_protocol.println(CLASS + SEPARATOR + escape(className));
+        for (Map.Entry<Description, String> outcome : outcomes.entrySet()) {
+            String methodName = outcome.getKey().getMethodName();
+            StringBuilder line = new StringBuilder(outcome.getValue());
+            line.append(SEPARATOR).append(
+                    escape((methodName == null) ? "" : methodName));
+            if (messages.containsKey(outcome.getKey())) {
+                line.append(SEPARATOR).append(
+                        escape(messages.get(outcome.getKey())));
+                if (exceptions.containsKey(outcome.getKey())) {
+                    line.append(SEPARATOR).append(
+                            escape(exceptions.get(outcome.getKey())));
+                }
+            }
+            m_protocol.println(line);
+        }
+        m_protocol.println(END);
+    }
+
+    /**
+     * Tries to stop a test thread that didn't finish in time. If it keeps
+     * running the worker is poisoned.
+     *
+     * @param testThread
+     *            the thread running the tests
+     */
+    @SuppressWarnings("deprecation")
+    private void stop(Thread testThread) {
+        testThread.interrupt();
+        try {
+            testThread.join(STOP_GRACE_PERIOD);
+            if (testThread.isAlive()) {
+                testThread.stop();
+                testThread.join(STOP_GRACE_PERIOD);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (UnsupportedOperationException e) {
+            // newer JVMs can't stop threads at all
+        }
+        m_poisoned |= testThread.isAlive();
+    }
+
+    /**
+     * Collects the single tests below a description.
+     *
+     * @param description
+     *            the description of a suite or a test
+     * @return the tests
+     */
+    private static List<Description> collectTests(Description description) {
+        List<Description> tests = new ArrayList<>();
+        if (description.isTest()) {
+            tests.add(description);
+        }
+        for (Description child : description.getChildren()) {
+            tests.addAll(collectTests(child));
+        }
+        return tests;
+    }
+
+    /**
+     * Escapes a field so it can't contain separators or line breaks.
+     *
+     * @param field
+     *            the raw field
+     * @return the escaped field
+     */
+    static String escape(String field) {
+        return field.replace("\\", "\\\\").replace("\t", "\\t")
+                .replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * Reverts {@link #escape(String)}.
+     *
+     * @param field
+     *            the escaped field
+     * @return the raw field
+     */
+    static String unescape(String field) {
+        StringBuilder raw = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if ((c == '\\') && (i + 1 < field.length())) {
+                char next = field.charAt(++i);
+                switch (next) {
+                case 't':
+                    raw.append('\t');
+                    break;
+                case 'n':
+                    raw.append('\n');
+                    break;
+                case 'r':
+                    raw.append('\r');
+                    break;
+                default:
+                    raw.append(next);
+                    break;
+                }
+            } else {
+                raw.append(c);
+            }
+        }
+        return raw.toString();
+    }
+
+    /**
+     * Records the outcome of every test and which test is currently running.
+     * Events arriving after {@link #close()} are ignored.
+     */
+    private final class RecordingListener extends RunListener {
+
+        private final Map<Description, String> m_outcomes =
+                new LinkedHashMap<>();
+        private final Map<Description, String> m_messages = new HashMap<>();
+        private final Map<Description, String> m_exceptions =
+                new HashMap<>();
+        private Description m_running = null;
+        private long m_runningSince = 0;
+        private boolean m_closed = false;
+
+        @Override
+        public synchronized void testStarted(Description description) {
+            if (!m_closed) {
+                m_running = description;
+                m_runningSince = System.currentTimeMillis();
+            }
+        }
+
+        @Override
+        public synchronized void testFinished(Description description) {
+            if (!m_closed) {
+                if (!m_outcomes.containsKey(description)) {
+                    m_outcomes.put(description, PASS);
+                }
+                m_running = null;
+            }
+        }
+
+        @Override
+        public synchronized void testFailure(Failure failure) {
+            if (!m_closed) {
+                String message = failure.getMessage();
+                if (message == null) {
+                    message = String.valueOf(failure.getException());
+                }
+                if (failure.getException() instanceof OutOfMemoryError) {
+                    // the heap of this worker can't be trusted anymore
+                    m_poisoned = true;
+                }
+                m_outcomes.put(failure.getDescription(), FAIL);
+                m_messages.put(failure.getDescription(), message);
+                if (failure.getException() != null) {
+                    m_exceptions.put(failure.getDescription(), failure
+                            .getException().getClass().getName());
+                }
+            }
+        }
+
+        @Override
+        public synchronized void testAssumptionFailure(Failure failure) {
+            testFailure(failure);
+        }
+
+        @Override
+        public synchronized void testIgnored(Description description) {
+            if (!m_closed) {
+                m_outcomes.put(description, IGNORE);
+            }
+        }
+
+        /**
+         * Checks whether the running test exceeded its time.
+         *
+         * @param timeout
+         *            the time a single test may take in milliseconds
+         * @return the running test if it exceeded the time, null otherwise
+         */
+        synchronized Description getTestRunningLongerThan(long timeout) {
+            long runningFor = System.currentTimeMillis() - m_runningSince;
+            if ((m_running != null) && (runningFor > timeout)) {
+                return m_running;
+            }
+            return null;
+        }
+
+        /**
+         * Stops recording and returns the recorded outcomes.
+         *
+         * @return the outcomes by test
+         */
+        synchronized Map<Description, String> close() {
+            m_closed = true;
+            return new LinkedHashMap<>(m_outcomes);
+        }
+
+        /**
+         * Returns the failure messages of the recorded tests.
+         *
+         * @return the messages by test
+         */
+        synchronized Map<Description, String> getMessages() {
+            return new HashMap<>(m_messages);
+        }
+
+        /**
+         * Returns the class names of the exceptions the recorded tests failed
+         * with.
+         *
+         * @return the class names by test
+         */
+        synchronized Map<Description, String> getExceptions() {
+            return new HashMap<>(m_exceptions);
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.checking.testing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import de.teamgrit.grit.util.process.ProcessRunner;
+
+/**
+ * A pool of pre-started JVMs running {@link TestWorker}s. Student code runs
+ * in these JVMs only, so endless loops or runaway allocations can't harm the
+ * server. Every test has a time limit enforced by the worker, every
+ * submission has a time limit enforced by the pool, and the heap of the
+ * workers is capped. Workers are replaced after a fixed number of jobs and
+ * whenever a job could not finish cleanly.
+ */
+public class TestWorkerPool {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    private static final Path WORKER_LOG = Paths.get("log", "testworker.log");
+
+    private final int m_jobsPerWorker;
+    private final int m_maxHeap;
+    private final long m_testTimeout;
+    private final long m_submissionTimeout;
+
+    private final BlockingQueue<WorkerProcess> m_idleWorkers;
+    private final ScheduledExecutorService m_watchdog;
+
+    private volatile boolean m_shutdown = false;
+
+    /**
+     * Creates the pool and starts its workers.
+     *
+     * @param workers
+     *            the number of worker JVMs
+     * @param jobsPerWorker
+     *            the number of submissions a worker tests before it is
+     *            replaced
+     * @param maxHeap
+     *            the maximum heap of a worker in megabytes
+     * @param testTimeout
+     *            the time a single test may take in milliseconds
+     * @param submissionTimeout
+     *            the time all tests of a submission may take in milliseconds
+     */
+    public TestWorkerPool(int workers, int jobsPerWorker, int maxHeap,
+            long testTimeout, long submissionTimeout) {
+        m_jobsPerWorker = jobsPerWorker;
+        m_maxHeap = maxHeap;
+        m_testTimeout = testTimeout;
+        m_submissionTimeout = submissionTimeout;
+        m_idleWorkers = new LinkedBlockingQueue<>();
+        m_watchdog =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread =
+                                new Thread(runnable, "test-worker-watchdog");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        for (int i = 0; i < workers; i++) {
+            m_idleWorkers.add(new WorkerProcess());
+        }
+    }
+
+    /**
+     * Runs the test classes against a submission in one of the workers. Blocks
+     * until a worker is available.
+     *
+     * @param testLocation
+     *            the folder holding the compiled tests
+     * @param submissionBinariesLocation
+     *            the folder holding the compiled submission
+     * @param testClassNames
+     *            the qualified names of the test classes
+     * @return one {@link Result} per test class that could be loaded
+     * @throws IOException
+     *             if no worker could be started
+     */
+    public List<Result> runTests(Path testLocation,
+            Path submissionBinariesLocation, List<String> testClassNames)
+            throws IOException {
+        if (m_shutdown) {
+            throw new IOException("The test worker pool was shut down.");
+        }
+        WorkerProcess worker;
+        try {
+            worker = m_idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a worker.");
+        }
+
+        boolean reusable = false;
+        try {
+            worker.start();
+            StringBuilder job = new StringBuilder(TestWorker.RUN);
+            job.append(TestWorker.SEPARATOR).append(m_testTimeout);
+            job.append(TestWorker.SEPARATOR).append(
+                    TestWorker.escape(testLocation.toAbsolutePath()
+                            .toString()));
+            job.append(TestWorker.SEPARATOR).append(
+                    TestWorker.escape(submissionBinariesLocation
+                            .toAbsolutePath().toString()));
+            for (String className : testClassNames) {
+                job.append(TestWorker.SEPARATOR).append(
+                        TestWorker.escape(className));
+            }
+
+            final WorkerProcess watched = worker;
+            ScheduledFuture<?> watchdog = m_watchdog.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    watched.kill();
+                }
+            }, m_submissionTimeout, TimeUnit.MILLISECONDS);
+
+            JobReader reader = new JobReader(testClassNames);
+            try {
+                worker.send(job.toString());
+                reusable = reader.read(worker);
+            } finally {
+                watchdog.cancel(false);
+            }
+            worker.m_jobs++;
+            return reader.getResults(worker.m_killed);
+        } finally {
+            if (m_shutdown) {
+                worker.kill();
+            } else if (!reusable || (worker.m_jobs >= m_jobsPerWorker)) {
+                worker.kill();
+                m_idleWorkers.add(new WorkerProcess());
+            } else {
+                m_idleWorkers.add(worker);
+            }
+        }
+    }
+
+    /**
+     * Stops all idle workers. Busy workers are stopped once their job is
+     * done.
+     */
+    public void shutdown() {
+        m_shutdown = true;
+        List<WorkerProcess> idle = new ArrayList<>();
+        m_idleWorkers.drainTo(idle);
+        for (WorkerProcess worker : idle) {
+            worker.kill();
+        }
+        m_watchdog.shutdownNow();
+    }
+
+    /**
+     * Builds JUnit {@link Result}s from the answers of a worker.
+     */
+    private final class JobReader {
+
+        private final Set<String> m_pendingClasses;
+        private final List<Result> m_results = new ArrayList<>();
+
+        private Result m_current = null;
+        private RunListener m_listener = null;
+        private String m_currentClass = null;
+        private boolean m_poisoned = false;
+
+        /**
+         * Creates a reader for a job.
+         *
+         * @param testClassNames
+         *            the test classes sent to the worker
+         */
+        JobReader(List<String> testClassNames) {
+            m_pendingClasses = new LinkedHashSet<>(testClassNames);
+        }
+
+        /**
+         * Reads the answers of a worker until the job is done.
+         *
+         * @param worker
+         *            the worker running the job
+         * @return true if the worker can take further jobs
+         * @throws IOException
+         *             if the worker's output can't be read
+         */
+        boolean read(WorkerProcess worker) throws IOException {
+            String line;
+            while ((line = worker.m_output.readLine()) != null) {
+                String[] fields = line.split(TestWorker.SEPARATOR, -1);
+                switch (fields[0]) {
+                case TestWorker.CLASS:
+                    startClass(TestWorker.unescape(fields[1]));
+                    break;
+                case TestWorker.PASS:
+                case TestWorker.FAIL:
+                case TestWorker.IGNORE:
+                    recordTest(fields);
+                    break;
+                case TestWorker.END:
+                    finishClass();
+                    break;
+                case TestWorker.ERROR:
+                    String className = TestWorker.unescape(fields[1]);
+                    m_pendingClasses.remove(className);
+                    LOGGER.severe("can't load class: " + className);
+                    LOGGER.severe(TestWorker.unescape(fields[2]));
+                    break;
+                case TestWorker.DONE:
+                    m_poisoned = fields.length > 1;
+                    return !m_poisoned;
+                default:
+                    LOGGER.warning("Unexpected test worker output: " + line);
+                    break;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets the results of the job. Classes without an answer are reported
+         * as failed.
+         *
+         * @param killed
+         *            whether the worker was killed for exceeding the
+         *            submission time limit
+         * @return the results
+         */
+        List<Result> getResults(boolean killed) {
+            String reason;
+            if (killed) {
+                reason = "tests exceeded the time limit of "
+                        + m_submissionTimeout + " ms";
+            } else if (m_poisoned) {
+                reason = "not run, an earlier test could not be stopped";
+            } else {
+                reason = "test worker exited unexpectedly";
+            }
+            if (m_currentClass != null) {
+                failClass(m_currentClass, reason);
+                finishClass();
+            }
+            for (String className : new ArrayList<>(m_pendingClasses)) {
+                startClass(className);
+                failClass(className, reason);
+                finishClass();
+            }
+            m_pendingClasses.clear();
+            return m_results;
+        }
+
+        /**
+         * Starts collecting the results of a test class.
+         *
+         * @param className
+         *            the test class
+         */
+        private void startClass(String className) {
+            m_currentClass = className;
+            m_pendingClasses.remove(className);
+            m_current = new Result();
+            m_listener = m_current.createListener();
+            try {
+                m_listener.testRunStarted(
+                        Description.createSuiteDescription(className));
+            } catch (Exception e) {
+                // the listener of a result never throws
+            }
+        }
+
+        /**
+         * Records the outcome of a single test of the current class.
+         *
+         * @param fields
+         *            the fields of a PASS, FAIL or IGNORE line
+         */
+        private void recordTest(String[] fields) {
+            if (m_currentClass == null) {
+                return;
+            }
+            Description test =
+                    Description.createTestDescription(m_currentClass,
+                            TestWorker.unescape(fields[1]));
+            try {
+                if (TestWorker.IGNORE.equals(fields[0])) {
+                    m_listener.testIgnored(test);
+                    return;
+                }
+                m_listener.testStarted(test);
+                if (TestWorker.FAIL.equals(fields[0])) {
+                    String message =
+                            (fields.length > 2) ? TestWorker
+                                    .unescape(fields[2]) : null;
+                    String exceptionClass =
+                            (fields.length > 3) ? TestWorker
+                                    .unescape(fields[3]) : null;
+                    m_listener.testFailure(new Failure(test,
+                            createException(exceptionClass, message)));
+                }
+                m_listener.testFinished(test);
+            } catch (Exception e) {
+                // the listener of a result never throws
+            }
+        }
+
+        /**
+         * Recreates the exception a test failed with in the worker. Classes
+         * that aren't known here, e.g. exceptions of the submission, are
+         * represented by a {@link RemoteTestException}.
+         *
+         * @param className
+         *            the class name of the exception, may be null
+         * @param message
+         *            the message of the exception
+         * @return the exception
+         */
+        private Throwable createException(String className, String message) {
+            if ((className == null) || className.isEmpty()) {
+                return new AssertionError(message);
+            }
+            try {
+                // don't initialize anything that isn't an exception
+                Class<?> exceptionClass =
+                        Class.forName(className, false,
+                                TestWorkerPool.class.getClassLoader());
+                if (Throwable.class.isAssignableFrom(exceptionClass)) {
+                    return (Throwable) exceptionClass.getConstructor(
+                            String.class).newInstance(message);
+                }
+            } catch (ReflectiveOperationException | RuntimeException
+                    | LinkageError e) {
+                // not available or not constructible from a message
+            }
+            return new RemoteTestException(className, message);
+        }
+
+        /**
+         * Marks the current class as failed as a whole.
+         *
+         * @param className
+         *            the test class
+         * @param reason
+         *            why the class failed
+         */
+        private void failClass(String className, String reason) {
+            try {
+                m_listener.testFailure(new Failure(Description
+                        .createSuiteDescription(className),
+                        new AssertionError(reason)));
+            } catch (Exception e) {
+                // the listener of a result never throws
+            }
+        }
+
+        /**
+         * Completes the result of the current class.
+         */
+        private void finishClass() {
+            if (m_current == null) {
+                return;
+            }
+            try {
+                m_listener.testRunFinished(m_current);
+            } catch (Exception e) {
+                // the listener of a result never throws
+            }
+            m_results.add(m_current);
+            m_current = null;
+            m_listener = null;
+            m_currentClass = null;
+        }
+    }
+
+    /**
+     * A single worker JVM and the pipes connecting it.
+     */
+    private final class WorkerProcess {
+
+        private Process m_process = null;
+        private PrintWriter m_input = null;
+        private BufferedReader m_output = null;
+        private int m_jobs = 0;
+        private volatile boolean m_killed = false;
+
+        /**
+         * Creates a worker and starts its JVM right away, so it is warm when
+         * the first job arrives.
+         */
+        WorkerProcess() {
+            try {
+                start();
+            } catch (IOException e) {
+                LOGGER.severe("Could not start test worker: "
+                        + e.getMessage());
+            }
+        }
+
+        /**
+         * Starts the JVM unless it is already running.
+         *
+         * @throws IOException
+         *             if the JVM can't be started
+         */
+        synchronized void start() throws IOException {
+            if ((m_process != null) && isAlive()) {
+                return;
+            }
+            String java =
+                    Paths.get(System.getProperty("java.home"), "bin", "java")
+                            .toString();
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.add("-Xmx" + m_maxHeap + "m");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(TestWorker.class.getName());
+
+            File log = WORKER_LOG.toFile();
+            if (log.getParentFile() != null) {
+                log.getParentFile().mkdirs();
+            }
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(Redirect.appendTo(log));
+            m_process = builder.start();
+            m_input =
+                    new PrintWriter(new OutputStreamWriter(
+                            m_process.getOutputStream(),
+                            StandardCharsets.UTF_8), true);
+            m_output =
+                    new BufferedReader(new InputStreamReader(
+                            m_process.getInputStream(),
+                            StandardCharsets.UTF_8));
+            m_jobs = 0;
+            m_killed = false;
+        }
+
+        /**
+         * Sends a job to the worker.
+         *
+         * @param job
+         *            the job line
+         * @throws IOException
+         *             if the worker doesn't accept input anymore
+         */
+        void send(String job) throws IOException {
+            m_input.println(job);
+            if (m_input.checkError()) {
+                throw new IOException("Test worker does not accept jobs.");
+            }
+        }
+
+        /**
+         * Checks whether the JVM is still running.
+         *
+         * @return true if it is running
+         */
+        private boolean isAlive() {
+            try {
+                m_process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Kills the JVM and everything it started. A plain destroy() may be
+         * ignored by a hanging JVM, so it is killed forcibly, and its pipes
+         * are closed so nothing waits on them anymore.
+         */
+        synchronized void kill() {
+            if (m_process == null) {
+                return;
+            }
+            if (isAlive()) {
+                m_killed = true;
+            }
+            ProcessRunner.killTree(m_process);
+            // close the raw streams, the reader may be blocked on the
+            // buffered one
+            closeQuietly(m_process.getOutputStream());
+            closeQuietly(m_process.getInputStream());
+        }
+
+        /**
+         * Closes a pipe and ignores errors.
+         *
+         * @param stream
+         *            the pipe
+         */
+        private void closeQuietly(Closeable stream) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // the worker is gone anyway
+            }
+        }
+    }
+
+    /**
+     * An exception thrown in a worker whose class isn't available here. It
+     * reads like the original one in reports.
+     */
+    static final class RemoteTestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String m_className;
+
+        /**
+         * Creates the exception.
+         *
+         * @param className
+         *            the class name of the original exception
+         * @param message
+         *            the message of the original exception
+         */
+        RemoteTestException(String className, String message) {
+            super(message);
+            m_className = className;
+        }
+
+        @Override
+        public String toString() {
+            String message = getLocalizedMessage();
+            return (message != null) ? (m_className + ": " + message)
+                    : m_className;
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.util.logging.SimpleFormatter;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.io.FileUtils;
 
+import de.teamgrit.grit.checking.testing.TestWorkerPool;
 import de.teamgrit.grit.main.Boot;
 import de.teamgrit.grit.preprocess.Connection;
 import de.teamgrit.grit.preprocess.ConnectionType;
@@ -88,6 +89,17 @@ public final class Controller {
      */
     private Map<Integer, Connection> m_connections = null;
 
+    /**
+     * The worker JVMs running the tests of java submissions, started on first
+     * use.
+     */
+    private TestWorkerPool m_testWorkerPool = null;
+
+    /**
+     * Runs the periodic tasks of all exercises, started on first use.
+     */
+    private ExerciseScheduler m_scheduler = null;
+
     /**
      * Instantiates a new controller.
      */
@@ -168,6 +180,40 @@ public final class Controller {
         m_config = config;
     }
 
+    /**
+     * Gets the worker JVMs running the tests of java submissions. The
+     * workers are started on the first call.
+     *
+     * @return the pool of test workers
+     */
+    public synchronized TestWorkerPool getTestWorkerPool() {
+        if (m_testWorkerPool == null) {
+            m_testWorkerPool =
+                    new TestWorkerPool(m_config.getTestWorkers(),
+                            m_config.getTestJobsPerWorker(),
+                            m_config.getTestMaxHeap(),
+                            m_config.getTestTimeout(),
+                            m_config.getSubmissionTestTimeout());
+        }
+        return m_testWorkerPool;
+    }
+
+    /**
+     * Gets the scheduler running the periodic tasks of all exercises.
+     *
+     * @return the scheduler
+     */
+    public synchronized ExerciseScheduler getScheduler() {
+        if (m_scheduler == null) {
+            int workers = 1;
+            if (m_config != null) {
+                workers = m_config.getSchedulerWorkers();
+            }
+            m_scheduler = new ExerciseScheduler(workers);
+        }
+        return m_scheduler;
+    }
+
     // --------------------- STATE ---------------------
 
     /**
@@ -514,6 +560,16 @@ public final class Controller {
         for (Course course : m_courses.values()) {
             course.stopAllExercises();
         }
+        synchronized (this) {
+            if (m_scheduler != null) {
+                m_scheduler.shutdown();
+                m_scheduler = null;
+            }
+            if (m_testWorkerPool != null) {
+                m_testWorkerPool.shutdown();
+                m_testWorkerPool = null;
+            }
+        }
         s_instance = null;
         try {
             Boot.reboot();
@@ -23,13 +23,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.mail.MessagingException;
@@ -45,6 +47,7 @@ import de.teamgrit.grit.checking.TestOutput;
 import de.teamgrit.grit.checking.compile.BadCompilerSpecifiedException;
 import de.teamgrit.grit.checking.compile.BadFlagException;
 import de.teamgrit.grit.checking.compile.CompileChecker;
+import de.teamgrit.grit.checking.compile.CompileResultCache;
 import de.teamgrit.grit.checking.compile.CompilerOutputFolderExistsException;
 import de.teamgrit.grit.checking.plausibility.SubmissionPlausibilityChecker;
 import de.teamgrit.grit.checking.testing.Tester;
@@ -52,11 +55,19 @@ import de.teamgrit.grit.preprocess.Connection;
 import de.teamgrit.grit.preprocess.PreprocessingResult;
 import de.teamgrit.grit.preprocess.Preprocessors;
 import de.teamgrit.grit.preprocess.Student;
+import de.teamgrit.grit.preprocess.archivehandling.ExtractionLimits;
 import de.teamgrit.grit.preprocess.fetch.SubmissionFetchingException;
 import de.teamgrit.grit.preprocess.tokenize.Submission;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
 import de.teamgrit.grit.report.ReportGenerator;
+import de.teamgrit.grit.report.ScorecardCache;
+import de.teamgrit.grit.util.config.Configuration;
 import de.teamgrit.grit.util.config.NoProperParameterException;
+import de.teamgrit.grit.util.hashing.FileHashCache;
 import de.teamgrit.grit.util.mailer.SendMailSSL;
+import de.teamgrit.grit.util.metrics.Metrics;
+import de.teamgrit.grit.util.pipeline.Pipeline;
+import de.teamgrit.grit.util.pipeline.Stage;
 
 /**
  * The Class representing an Exercise. Needs to be injected with an
@@ -74,6 +85,17 @@ public class Exercise {
 
     private static final Logger LOGGER = Logger.getLogger("systemlog");
 
+    /**
+     * Number of parallel checking workers used if no configuration is loaded.
+     */
+    private static final int DEFAULT_CHECKING_WORKERS = 1;
+
+    /**
+     * Size of the queues between the pipeline stages used if no
+     * configuration is loaded.
+     */
+    private static final int DEFAULT_PIPELINE_QUEUE_SIZE = 16;
+
     /**
      * Reference to the controller instance.
      */
@@ -94,8 +116,34 @@ public class Exercise {
 
     private Map<Student, Submission> m_submissions = new HashMap<>();
 
-    private final ScheduledExecutorService m_taskPool = Executors
-            .newScheduledThreadPool(1);
+    /* whether the submissions of the last poll were all checked */
+    private boolean m_pollComplete = false;
+
+    /**
+     * Results of earlier compile runs, shared by all processing runs.
+     */
+    private final CompileResultCache m_compileCache;
+
+    /**
+     * Rendered scorecards, reused when an exercise is processed again.
+     */
+    private final ScorecardCache m_scorecardCache;
+
+    /**
+     * Results of the last checks, kept across restarts.
+     */
+    private final SubmissionResultStore m_resultStore;
+
+    /**
+     * Hashes of the fetched files, so unchanged files aren't read on every
+     * poll.
+     */
+    private final FileHashCache m_hashCache;
+
+    /**
+     * The periodic task of this exercise, null if it isn't scheduled.
+     */
+    private ExerciseScheduler.Handle m_schedule = null;
 
     // --------------------------- CONSTRUCTOR ---------------------------
 
@@ -114,6 +162,28 @@ public class Exercise {
      */
     public Exercise(int id, ExerciseContext context)
             throws NoProperParameterException {
+        this(id, context, false);
+    }
+
+    /**
+     * Creates an {@link Exercise} that was possibly restored from the state.
+     * Restored exercises keep the stored results of earlier checks, so
+     * unchanged submissions aren't checked again after a restart.
+     * 
+     * @param id
+     *            the ID of the new exercise (the {@link Course} takes care of
+     *            assigning IDs to exercises)
+     * @param context
+     *            An {@link ExerciseContext} produced by the
+     *            {@link ExerciseContextFactory}
+     * @param restored
+     *            true if the exercise is restored from the state, false if it
+     *            is newly created or changed
+     * @throws NoProperParameterException
+     *             If the context is null.
+     */
+    public Exercise(int id, ExerciseContext context, boolean restored)
+            throws NoProperParameterException {
         m_controller = Controller.getController();
 
         if (context != null) {
@@ -131,6 +201,7 @@ public class Exercise {
             Files.createDirectories(context.getBinPath());
             Files.createDirectories(context.getFetchPath());
             Files.createDirectories(context.getOutputPath());
+            Files.createDirectories(context.getCachePath());
         } catch (IOException e) {
             LOGGER.severe("Couldn't create necessary directories for"
                     + " exercise + " + context.getExerciseName() + ": "
@@ -139,6 +210,18 @@ public class Exercise {
         }
 
         this.id = id;
+        m_compileCache =
+                new CompileResultCache(context.getCachePath().resolve(
+                        "compile"));
+        m_scorecardCache =
+                new ScorecardCache(context.getCachePath().resolve(
+                        "scorecards"));
+        m_resultStore =
+                new SubmissionResultStore(context.getCachePath().resolve(
+                        "results.json"), restored);
+        m_hashCache =
+                new FileHashCache(context.getCachePath().resolve(
+                        "hashes.json"));
 
         if (isDeadlinePassed()) {
             File reportFile =
@@ -158,8 +241,12 @@ public class Exercise {
                     context.getStartTime().getTimeInMillis()
                             - System.currentTimeMillis();
         }
-        m_taskPool.scheduleAtFixedRate(new Task(), initialDelay,
-                context.getPeriod(), TimeUnit.MILLISECONDS);
+        m_schedule =
+                m_controller.getScheduler().schedule(new Task(),
+                        context.getCourseName() + "/"
+                                + context.getExerciseName(),
+                        context.getDeadline().getTimeInMillis(),
+                        initialDelay, context.getPeriod());
     }
 
     /**
@@ -224,45 +311,57 @@ public class Exercise {
                             fileRegex, archiveRegex);
         } catch (SubmissionFetchingException e) {
             context.logError(e.getMessage());
+            Metrics.recordFailure("fetch", courseName, exerciseName);
             status = "error while fetching submissions";
             return;
         }
-        /* Find the submissions that need to be checked */
         Map<Student, Submission> submissions = result.getStudentSubmissions();
-        List<Submission> submissionsToProcess = new ArrayList<>();
-        for (Map.Entry<Student, Submission> entry : submissions.entrySet()) {
-            if (!entry.getValue().equals(m_submissions.get(entry.getKey()))) {
-                submissionsToProcess.add(entry.getValue());
-            }
+        List<Student> studentsWithoutSubmission =
+                result.getStudentsWithoutSubmission();
+
+        /* nothing was committed since the last complete poll */
+        if (result.isUnchanged() && m_pollComplete) {
+            LOGGER.info("No new submissions for exercise " + exerciseName
+                    + ", skipping processing.");
+            status = "sending emails";
+            notifyStudentsWithoutSubmission(studentsWithoutSubmission);
+            status = "waiting";
+            return;
         }
+
+        /*
+         * submissions of an interrupted poll may not have been checked, so
+         * nothing is skipped as unchanged then.
+         */
+        Map<Student, Submission> previousSubmissions =
+                m_pollComplete ? m_submissions
+                        : new HashMap<Student, Submission>();
+        m_pollComplete = false;
         /* store the students that did not turn in */
         m_submissions = submissions;
-        List<Student> studentsWithoutSubmission =
-                result.getStudentsWithoutSubmission();
 
-        /* check plausibility of the submissions. */
+        /*
+         * unpack and hash the submissions, check plausibility and compile
+         * the ones that changed.
+         */
         status = "processing submissions";
+        Path pollBinPath = context.getBinPath().resolve("poll");
+        try {
+            Files.createDirectories(pollBinPath);
+            FileUtils.cleanDirectory(pollBinPath.toFile());
+        } catch (IOException e) {
+            LOGGER.severe("Could not prepare output directory "
+                    + pollBinPath + ": " + e.getMessage());
+        }
+        List<Submission> submissionsToProcess =
+                checkSubmissions(submissions.values(), previousSubmissions,
+                        pollBinPath, false);
+        m_hashCache.save();
         for (Submission submission : submissionsToProcess) {
-            try {
-            	LOGGER.info("checking plausability");
-                checkPlausibility(submission);
-                if (submission.isPlausible()) {                	
-                    /* compile */
-                	LOGGER.info("compiling submissions");
-                    CompilerOutput compileResult =
-                            compileSubmission(submission);
-                    /* create checking result */
-                    submission.setCheckingResult(new CheckingResult(
-                            compileResult, null));
-                }
-
-            } catch (BadCompilerSpecifiedException | BadFlagException
-                    | CompilerOutputFolderExistsException
-                    | FileNotFoundException e) {
-                LOGGER.severe("Error during processing a submission, "
-                        + "it was skipped. " + e.getMessage());
-            }
+            m_resultStore.put(submission);
         }
+        m_resultStore.save();
+        m_pollComplete = !Thread.currentThread().isInterrupted();
 
         if (isDeadlinePassed()) {
             postDeadlineProcessing();
@@ -292,7 +391,6 @@ public class Exercise {
      */
     private void postDeadlineProcessing() {
         /* Local variables for the metadata */
-        Path tempPdfPath = context.getTempPdfPath();
         Path binpath = context.getBinPath();
         Path targetDirectory = context.getFetchPath();
         String courseName = context.getCourseName();
@@ -315,8 +413,9 @@ public class Exercise {
                             fileRegex, archiveRegex);
         } catch (SubmissionFetchingException e) {
             context.logError(e.getMessage());
+            Metrics.recordFailure("fetch", courseName, exerciseName);
             status = "error while fetching submissions";
-            m_taskPool.shutdownNow();
+            stopSchedule();
             return;
         }
         Map<Student, Submission> submissions = result.getStudentSubmissions();
@@ -325,51 +424,32 @@ public class Exercise {
         List<Student> studentsWithoutSubmission =
                 result.getStudentsWithoutSubmission();
 
-        /* check plausibility of the submission. */
+        /* check, compile, test and score the submissions in a pipeline. */
         status = "processing submissions";
-        for (Submission submission : m_submissions.values()) {
-            try {
-                checkPlausibility(submission);
-                if (submission.isPlausible()) {
-                    /* compile */
-                	LOGGER.info("compiling submission");
-                    CompilerOutput compileResult =
-                            compileSubmission(submission);
-                    /* test */
-                    LOGGER.info("testing submission");
-                    TestOutput testResult =
-                            testSubmission(binpath, compileResult);
-                    /* create checking result */                    
-                    submission.setCheckingResult(new CheckingResult(
-                            compileResult, testResult));
-
-                    /* score card creation */
-                    LOGGER.info("generate scorecard");
-                    ReportGenerator.generateReport(submission, tempPdfPath,
-                            courseName, exerciseName, ReportGenerator.ReportType.PDF);
-                    try {
-                        FileUtils.cleanDirectory(binpath.toFile());
-                    } catch (IOException e) {
-                        LOGGER.severe("Could not delete output directory (binpath)");
-                    }
-                }
-
-            } catch (BadCompilerSpecifiedException | BadFlagException
-                    | CompilerOutputFolderExistsException | IOException e) {
-                LOGGER.severe("Error during processing a submission, "
-                        + "it was skipped. " + e.getMessage());
-            }
+        List<Submission> checkedSubmissions =
+                checkSubmissions(m_submissions.values(), null, binpath, true);
+        m_hashCache.save();
+        /* failed submissions aren't recorded, so they are checked again */
+        for (Submission submission : checkedSubmissions) {
+            m_resultStore.put(submission);
         }
+        m_resultStore.save();
 
         /* merge the single scorecard files into a large one. */
+        long concatStart = Metrics.startTimer();
+        Configuration config = m_controller.getConfig();
         try {
             ReportGenerator.concatenatePdfReports(context.getTempPdfPath(),
                     context.getOutputPath(), context.getExerciseName(),
-                    studentsWithoutSubmission);
+                    studentsWithoutSubmission,
+                    (config == null) || config.isNativeMerge());
+            Metrics.recordLatency("concat", courseName, exerciseName,
+                    concatStart);
         } catch (IOException e) {
+            Metrics.recordFailure("concat", courseName, exerciseName);
             context.logError("error while merging scorecards: " + e.getMessage());
             status = "error while generating pdf for printout";
-            m_taskPool.shutdownNow();
+            stopSchedule();
             return;
         }
 
@@ -380,7 +460,315 @@ public class Exercise {
         notifyAdmin();
 
         /* all done! */
-        m_taskPool.shutdownNow();
+        stopSchedule();
+    }
+
+    /**
+     * Checks submissions in a {@link Pipeline}: they are unpacked, hashed,
+     * checked for plausibility and compiled, after the deadline also tested
+     * and scored. Every stage has its own workers and passes a submission on
+     * as soon as it is done with it, so a submission is compiled while the
+     * next one is still being unpacked. Returns when all submissions passed
+     * through.
+     *
+     * <p>
+     * Each submission gets a binary directory of its own below the given bin
+     * path, since it is compiled and tested by different workers. The
+     * directory is deleted once the submission is done with it.
+     * </p>
+     *
+     * <p>
+     * Scorecards are kept in a {@link ScorecardCache}; a scorecard is only
+     * rendered again if the submission, the tests, the template or the
+     * checking result changed since the last run.
+     * </p>
+     *
+     * <p>
+     * A submission only counts as checked once it went through its last
+     * stage. One that a stage failed on is left out, so it isn't recorded
+     * as unchanged and gets checked again on the next poll.
+     * </p>
+     *
+     * @param submissions
+     *            the submissions to check
+     * @param previousSubmissions
+     *            the submissions of the last poll, unchanged ones aren't
+     *            checked again; ignored after the deadline
+     * @param binPath
+     *            the directory the binary directories are created in
+     * @param postDeadline
+     *            true to test and score the submissions as well
+     * @return the submissions that were checked
+     */
+    private List<Submission> checkSubmissions(
+            Collection<Submission> submissions,
+            final Map<Student, Submission> previousSubmissions,
+            final Path binPath, final boolean postDeadline) {
+        int extractWorkers = 1;
+        int compileWorkers = DEFAULT_CHECKING_WORKERS;
+        int testWorkers = DEFAULT_CHECKING_WORKERS;
+        int reportWorkers = 1;
+        int queueSize = DEFAULT_PIPELINE_QUEUE_SIZE;
+        ExtractionLimits limits = ExtractionLimits.DEFAULT;
+        ReportGenerator.ReportType type = ReportGenerator.ReportType.PDF;
+        Configuration config = m_controller.getConfig();
+        if (config != null) {
+            extractWorkers = config.getExtractWorkers();
+            compileWorkers = config.getCheckingWorkers();
+            testWorkers = config.getTestWorkers();
+            reportWorkers = config.getReportWorkers();
+            queueSize = config.getPipelineQueueSize();
+            limits = config.getExtractionLimits();
+            if (config.isDirectPdf()) {
+                type = ReportGenerator.ReportType.PDF_DIRECT;
+            } else if (config.isPrecompiledPreamble()) {
+                type = ReportGenerator.ReportType.PDF_PRECOMPILED;
+            }
+        }
+        final ExtractionLimits extractionLimits = limits;
+        final ReportGenerator.ReportType reportType = type;
+
+        /* scorecards whose inputs didn't change are reused */
+        final String testSuiteHash =
+                postDeadline ? context.getCompileChecker().getTestSuiteHash()
+                        : null;
+        final Set<String> scorecardKeys =
+                Collections.synchronizedSet(new HashSet<String>());
+        /* compile results of submissions that are gone are dropped */
+        final Set<String> compileKeys =
+                Collections.synchronizedSet(new HashSet<String>());
+
+        final List<Submission> checked =
+                Collections.synchronizedList(new ArrayList<Submission>());
+        final AtomicInteger jobNumber = new AtomicInteger();
+
+        Pipeline<CheckingJob> pipeline =
+                new Pipeline<>(context.getExerciseName(), queueSize);
+        addTimedStage(pipeline, "extract", extractWorkers,
+                new Stage<CheckingJob>() {
+                    @Override
+                    public boolean process(CheckingJob job)
+                            throws IOException {
+                        job.m_submission.extract(extractionLimits);
+                        return true;
+                    }
+                });
+        addTimedStage(pipeline, "hash", 1, new Stage<CheckingJob>() {
+            @Override
+            public boolean process(CheckingJob job) throws IOException {
+                Submission submission = job.m_submission;
+                submission.updateSHA1Hash(m_hashCache);
+                String compileKey = createCompileKey(submission);
+                if (compileKey != null) {
+                    compileKeys.add(compileKey);
+                }
+                /* also skip submissions checked before a restart */
+                if (!postDeadline
+                        && (submission.equals(previousSubmissions
+                                .get(submission.getStudent())) || m_resultStore
+                                .isUnchanged(submission.getStudent(),
+                                        submission.getSHA1Hash()))) {
+                    return false;
+                }
+                return true;
+            }
+        });
+        addTimedStage(pipeline, "plausibility", 1, new Stage<CheckingJob>() {
+            @Override
+            public boolean process(CheckingJob job) {
+                checkPlausibility(job.m_submission);
+                /* a rejected archive still gets a report that says why */
+                if (job.m_submission.isPlausible()
+                        || (job.m_submission.getExtractionProblem() != null)) {
+                    return true;
+                }
+                checked.add(job.m_submission);
+                return false;
+            }
+        });
+        addTimedStage(pipeline, "compile", compileWorkers,
+                new Stage<CheckingJob>() {
+                    @Override
+                    public boolean process(CheckingJob job) throws Exception {
+                        if (job.m_submission.getExtractionProblem() != null) {
+                            job.m_compilerOutput = new CompilerOutput();
+                            if (!postDeadline) {
+                                job.m_submission
+                                        .setCheckingResult(new CheckingResult(
+                                                job.m_compilerOutput, null));
+                                checked.add(job.m_submission);
+                            }
+                            return postDeadline;
+                        }
+                        LOGGER.info("compiling submission");
+                        job.m_binPath =
+                                binPath.resolve("job-"
+                                        + jobNumber.getAndIncrement());
+                        boolean passOn = false;
+                        try {
+                            Files.createDirectories(job.m_binPath);
+                            job.m_compilerOutput =
+                                    compileSubmission(job.m_submission,
+                                            job.m_binPath);
+                            if (!postDeadline) {
+                                job.m_submission
+                                        .setCheckingResult(new CheckingResult(
+                                                job.m_compilerOutput, null));
+                                checked.add(job.m_submission);
+                            }
+                            passOn = postDeadline;
+                        } finally {
+                            if (!passOn) {
+                                deleteBinaries(job.m_binPath);
+                            }
+                        }
+                        return passOn;
+                    }
+                });
+        if (postDeadline) {
+            addTimedStage(pipeline, "test", testWorkers,
+                    new Stage<CheckingJob>() {
+                        @Override
+                        public boolean process(CheckingJob job) {
+                            LOGGER.info("testing submission");
+                            try {
+                                TestOutput testResult =
+                                        testSubmission(job.m_binPath,
+                                                job.m_compilerOutput);
+                                job.m_submission
+                                        .setCheckingResult(new CheckingResult(
+                                                job.m_compilerOutput,
+                                                testResult));
+                            } finally {
+                                deleteBinaries(job.m_binPath);
+                            }
+                            return true;
+                        }
+                    });
+            addTimedStage(pipeline, "report", reportWorkers,
+                    new Stage<CheckingJob>() {
+                        @Override
+                        public boolean process(CheckingJob job)
+                                throws IOException {
+                            Submission submission = job.m_submission;
+                            String key =
+                                    ScorecardCache.createKey(submission,
+                                            testSuiteHash,
+                                            context.getCourseName(),
+                                            context.getExerciseName(),
+                                            reportType);
+                            if (key != null) {
+                                scorecardKeys.add(key);
+                                if (m_scorecardCache.load(key, submission,
+                                        context.getTempPdfPath())) {
+                                    LOGGER.info("reusing scorecard");
+                                    checked.add(submission);
+                                    return true;
+                                }
+                            }
+                            LOGGER.info("generate scorecard");
+                            ReportGenerator.generateReport(submission,
+                                    context.getTempPdfPath(),
+                                    context.getCourseName(),
+                                    context.getExerciseName(), reportType);
+                            if (key != null) {
+                                m_scorecardCache.store(key, submission,
+                                        context.getTempPdfPath());
+                            }
+                            checked.add(submission);
+                            return true;
+                        }
+                    });
+        }
+
+        try {
+            for (Submission submission : submissions) {
+                pipeline.submit(new CheckingJob(submission));
+            }
+            pipeline.finish();
+            m_compileCache.retainOnly(compileKeys);
+            if (postDeadline) {
+                m_scorecardCache.retainOnly(scorecardKeys);
+            }
+        } catch (InterruptedException e) {
+            pipeline.abort();
+            LOGGER.warning("Checking of exercise " + context.getExerciseName()
+                    + " was interrupted.");
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>(checked);
+    }
+
+    /**
+     * Adds a stage to the checking pipeline that records its latency and
+     * failures in the {@link Metrics}.
+     *
+     * @param pipeline
+     *            the pipeline
+     * @param name
+     *            the name of the stage
+     * @param workers
+     *            the number of workers of the stage
+     * @param stage
+     *            the stage
+     */
+    private void addTimedStage(Pipeline<CheckingJob> pipeline,
+            final String name, int workers, final Stage<CheckingJob> stage) {
+        pipeline.addStage(name, workers, new Stage<CheckingJob>() {
+            @Override
+            public boolean process(CheckingJob job) throws Exception {
+                long startTime = Metrics.startTimer();
+                try {
+                    return stage.process(job);
+                } catch (Exception e) {
+                    Metrics.recordFailure(name, context.getCourseName(),
+                            context.getExerciseName());
+                    throw e;
+                } finally {
+                    Metrics.recordLatency(name, context.getCourseName(),
+                            context.getExerciseName(), startTime);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes the binary directory of a submission.
+     *
+     * @param jobBinPath
+     *            the directory, may be null
+     */
+    private static void deleteBinaries(Path jobBinPath) {
+        if (jobBinPath == null) {
+            return;
+        }
+        try {
+            FileUtils.deleteDirectory(jobBinPath.toFile());
+        } catch (IOException e) {
+            LOGGER.severe("Could not clean output directory " + jobBinPath
+                    + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A submission on its way through the checking pipeline, together with
+     * the intermediate results that aren't stored in the submission.
+     */
+    private static final class CheckingJob {
+
+        private final Submission m_submission;
+        private Path m_binPath = null;
+        private CompilerOutput m_compilerOutput = null;
+
+        /**
+         * Creates a job.
+         *
+         * @param submission
+         *            the submission to check
+         */
+        CheckingJob(Submission submission) {
+            m_submission = submission;
+        }
     }
 
     /**
@@ -402,6 +790,15 @@ public class Exercise {
         return context.getExerciseName();
     }
 
+    /**
+     * Gets the processing status of the Exercise, as shown on the website.
+     * 
+     * @return the status
+     */
+    public String getStatus() {
+        return status;
+    }
+
     /**
      * Gets the ID of the Exercise.
      * 
@@ -472,8 +869,9 @@ public class Exercise {
                             + "mails to students. " + e.getMessage());
                 }
 
-            } else if (!sub.getCheckingResult().getCompilerOutput()
-                    .isCleanCompile()) {
+            } else if ((sub.getCheckingResult() != null)
+                    && !sub.getCheckingResult().getCompilerOutput()
+                            .isCleanCompile()) {
                 /*
                  * if the submission does not compile we send a warning mail to
                  * the student containing all compiler errors,warnings and
@@ -544,18 +942,41 @@ public class Exercise {
      *            a submission to check the plausibility upon
      */
     private void checkPlausibility(Submission submission) {
-        Path sourceLocation = submission.getSourceCodeLocation();
-        boolean isPlausible =
-                SubmissionPlausibilityChecker.checkLocation(sourceLocation,
-                        context.getLanguageType());
+        SubmissionManifest manifest = submission.getManifest();
+        boolean isPlausible;
+        if (manifest != null) {
+            isPlausible =
+                    SubmissionPlausibilityChecker.checkManifest(manifest,
+                            context.getLanguageType());
+        } else {
+            isPlausible =
+                    SubmissionPlausibilityChecker.checkLocation(
+                            submission.getSourceCodeLocation(),
+                            context.getLanguageType());
+        }
         submission.setPlausible(isPlausible);
     }
 
     /**
-     * Compile-checks a submission.
+     * Creates the key of a submission's entry in the compile cache.
+     *
+     * @param submission
+     *            the hashed submission
+     * @return the key or null if the submission has no hash
+     */
+    private String createCompileKey(Submission submission) {
+        return CompileResultCache.createKey(submission.getSHA1Hash(),
+                context.getCompilerName(), context.getCompilerFlags());
+    }
+
+    /**
+     * Compile-checks a submission. Results of earlier runs on an unchanged
+     * submission are taken from the compile cache.
      * 
      * @param submission
      *            the submission to compile
+     * @param binPath
+     *            the directory the binaries are written to
      * @return the compiler output to use in the {@link CheckingResult}
      * @throws FileNotFoundException
      *             from
@@ -570,16 +991,42 @@ public class Exercise {
      *             from
      *             {@link CompileChecker#checkProgram(Path, Path, String, List)}
      */
-    private CompilerOutput compileSubmission(Submission submission)
-            throws FileNotFoundException, BadCompilerSpecifiedException,
-            BadFlagException, CompilerOutputFolderExistsException {
+    private CompilerOutput compileSubmission(Submission submission,
+            Path binPath) throws FileNotFoundException,
+            BadCompilerSpecifiedException, BadFlagException,
+            CompilerOutputFolderExistsException {
 
         CompileChecker compiler = context.getCompileChecker();
-        Path binPath = context.getBinPath();
         String compilerName = context.getCompilerName();
         List<String> compilerFlags = context.getCompilerFlags();
-        return compiler.checkProgram(submission.getSourceCodeLocation(),
-                binPath, compilerName, compilerFlags);
+
+        /* unchanged submissions were compiled before, reuse the result */
+        String cacheKey = createCompileKey(submission);
+        if (cacheKey != null) {
+            CompilerOutput cachedOutput =
+                    m_compileCache.load(cacheKey, binPath);
+            if (cachedOutput != null) {
+                compiler.prepareTestSuite(cachedOutput, binPath);
+                return cachedOutput;
+            }
+        }
+
+        CompilerOutput compilerOutput;
+        SubmissionManifest manifest = submission.getManifest();
+        if (manifest != null) {
+            compilerOutput =
+                    compiler.checkProgram(manifest, binPath, compilerName,
+                            compilerFlags);
+        } else {
+            compilerOutput =
+                    compiler.checkProgram(submission.getSourceCodeLocation(),
+                            binPath, compilerName, compilerFlags);
+        }
+        if ((cacheKey != null) && compilerOutput.compilerInvoked()
+                && !compilerOutput.compilerStreamBroken()) {
+            m_compileCache.store(cacheKey, compilerOutput, binPath);
+        }
+        return compilerOutput;
     }
 
     /**
@@ -612,10 +1059,21 @@ public class Exercise {
     }
 
     /**
-     * Shuts the taskPool down in order to reboot the system.
+     * Stops the periodic task in order to reboot the system.
      */
     public void terminate() {
-        m_taskPool.shutdownNow();
+        if (m_schedule != null) {
+            m_schedule.cancel(true);
+        }
+    }
+
+    /**
+     * Stops the periodic task from within the task itself.
+     */
+    private void stopSchedule() {
+        if (m_schedule != null) {
+            m_schedule.cancel(false);
+        }
     }
 
 }
@@ -86,6 +86,7 @@ public class ExerciseContext {
     private Path m_tests;
     private Path m_tempPdfPath;
     private Path m_outputPath;
+    private Path m_cachePath;
 
     private String m_archiveRegex;
 
@@ -139,6 +140,16 @@ public class ExerciseContext {
         return m_binPath;
     }
 
+    /**
+     * Gets the path to the cache directory, which keeps data that is reused
+     * between processing runs.
+     *
+     * @return the path to the cache directory
+     */
+    public Path getCachePath() {
+        return m_cachePath;
+    }
+
     /**
      * Gets the compile checker.
      *
@@ -273,6 +284,16 @@ public class ExerciseContext {
         m_binPath = binPath;
     }
 
+    /**
+     * Sets the path to the cache directory.
+     *
+     * @param cachePath
+     *            the new cache path
+     */
+    protected void setCachePath(Path cachePath) {
+        m_cachePath = cachePath;
+    }
+
     /**
      * set the {@link CompileChecker}.
      *
@@ -26,6 +26,8 @@ import de.teamgrit.grit.checking.compile.GccCompileChecker;
 import de.teamgrit.grit.checking.compile.HaskellCompileChecker;
 import de.teamgrit.grit.checking.compile.JavaCompileChecker;
 import de.teamgrit.grit.checking.testing.JavaProjectTester;
+import de.teamgrit.grit.checking.testing.TestWorkerPool;
+import de.teamgrit.grit.util.config.Configuration;
 
 /**
  * A factory for creating ExerciseContext.
@@ -135,6 +137,7 @@ public final class ExerciseContextFactory {
 		context.setBinPath(basePath.resolve("bin"));
 		context.setTempPdfPath(basePath.resolve("tempPdf"));
 		context.setFetchPath(basePath.resolve("fetch"));
+		context.setCachePath(basePath.resolve("cache"));
 		context.setOutputPath(OUTPUT_BASEPATH.resolve(outputPath));
 
 		return context;
@@ -211,9 +214,21 @@ public final class ExerciseContextFactory {
 	 */
 	private static void makeJavaExerciseContext(ExerciseContext context,
 			List<String> compilerFlags, Path testFileLocation) {
-		context.setCompiler(new JavaCompileChecker(testFileLocation));
+		boolean inProcess = true;
+		TestWorkerPool testWorkers = null;
+		Configuration config = Controller.getController().getConfig();
+		if (config != null) {
+			inProcess = config.isInProcessCompile();
+			if (config.isForkedTesting()) {
+				testWorkers = Controller.getController().getTestWorkerPool();
+			}
+		}
+		JavaCompileChecker compiler =
+				new JavaCompileChecker(testFileLocation, inProcess);
+		context.setCompiler(compiler);
 		context.setCompilerName("javac");
 		context.setCompilerFlags(compilerFlags);
-		context.setTester(new JavaProjectTester(testFileLocation));
+		context.setTester(new JavaProjectTester(testFileLocation,
+				testWorkers, compiler.getTestSuiteLock()));
 	}
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.entities;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs the periodic tasks of all {@link Exercise}s on a fixed number of
+ * worker threads. A single timer thread only triggers the tasks; the work is
+ * queued for the workers, exercises with an earlier deadline first. An
+ * exercise never has more than one task queued or running: a trigger that
+ * arrives while the previous run isn't finished yet is dropped, since the
+ * next run picks up everything that happened in between.
+ *
+ * <p>
+ * The limit of one run per exercise is fixed on purpose: runs of the same
+ * exercise share its fetch and bin directories, its caches and its list of
+ * submissions, so they can't overlap. Several exercises run at the same time
+ * if there are enough workers.
+ * </p>
+ *
+ * <p>
+ * The workers only bound the number of exercises processed at once. Each
+ * run checks its submissions in a pipeline with threads of its own, sized
+ * by the extract, checking, test and report worker settings, so up to
+ * that many threads run for each scheduler worker.
+ * </p>
+ */
+public class ExerciseScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    private final ScheduledExecutorService m_timer;
+    private final ThreadPoolExecutor m_workers;
+
+    /* keeps jobs with the same deadline in the order they were triggered */
+    private final AtomicLong m_sequence = new AtomicLong();
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param workers
+     *            the number of exercise tasks that may run at the same time,
+     *            not counting the pipeline threads each of them starts
+     */
+    public ExerciseScheduler(int workers) {
+        m_timer =
+                Executors.newSingleThreadScheduledExecutor(new NamedThreads(
+                        "exercise-timer"));
+        m_workers =
+                new ThreadPoolExecutor(workers, workers, 0,
+                        TimeUnit.MILLISECONDS,
+                        new PriorityBlockingQueue<Runnable>(),
+                        new NamedThreads("exercise-worker"));
+    }
+
+    /**
+     * Schedules a task that is run periodically until its handle is
+     * cancelled.
+     *
+     * @param task
+     *            the task
+     * @param name
+     *            the name of the task, used for logging
+     * @param deadline
+     *            the deadline of the exercise in milliseconds since the
+     *            epoch, tasks with earlier deadlines are run first
+     * @param initialDelay
+     *            the time until the first run in milliseconds
+     * @param period
+     *            the time between two runs in milliseconds
+     * @return the handle to cancel the task with
+     */
+    public Handle schedule(Runnable task, String name, long deadline,
+            long initialDelay, long period) {
+        final Handle handle = new Handle(task, name, deadline);
+        handle.m_trigger = m_timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                handle.trigger();
+            }
+        }, initialDelay, period, TimeUnit.MILLISECONDS);
+        return handle;
+    }
+
+    /**
+     * Stops triggering tasks and interrupts the running ones.
+     */
+    public void shutdown() {
+        m_timer.shutdownNow();
+        m_workers.shutdownNow();
+    }
+
+    /**
+     * Gets the number of tasks waiting for a worker.
+     *
+     * @return the number of queued tasks
+     */
+    public int getQueuedTaskCount() {
+        return m_workers.getQueue().size();
+    }
+
+    /**
+     * The periodic task of an exercise.
+     */
+    public final class Handle {
+
+        private final Runnable m_task;
+        private final String m_name;
+        private final long m_deadline;
+
+        private ScheduledFuture<?> m_trigger = null;
+        private Job m_pending = null;
+        private Thread m_runner = null;
+        private boolean m_cancelled = false;
+
+        /**
+         * Creates a handle.
+         *
+         * @param task
+         *            the task
+         * @param name
+         *            the name of the task
+         * @param deadline
+         *            the deadline of the exercise
+         */
+        private Handle(Runnable task, String name, long deadline) {
+            m_task = task;
+            m_name = name;
+            m_deadline = deadline;
+        }
+
+        /**
+         * Queues a run of the task unless one is queued or running already.
+         */
+        private synchronized void trigger() {
+            if (m_cancelled) {
+                return;
+            }
+            if (m_pending != null) {
+                LOGGER.fine("Skipping run of " + m_name
+                        + ", the previous one isn't finished.");
+                return;
+            }
+            m_pending = new Job(this, m_sequence.getAndIncrement());
+            m_workers.execute(m_pending);
+        }
+
+        /**
+         * Stops the task. A queued run is dropped.
+         *
+         * @param interrupt
+         *            whether a running run is interrupted; must be false
+         *            when the task cancels itself
+         */
+        public synchronized void cancel(boolean interrupt) {
+            m_cancelled = true;
+            if (m_trigger != null) {
+                m_trigger.cancel(false);
+            }
+            if (m_pending != null) {
+                m_workers.remove(m_pending);
+            }
+            if (interrupt && (m_runner != null)) {
+                m_runner.interrupt();
+            }
+        }
+
+        /**
+         * Runs the task on the current worker.
+         */
+        private void run() {
+            synchronized (this) {
+                if (m_cancelled) {
+                    m_pending = null;
+                    return;
+                }
+                m_runner = Thread.currentThread();
+            }
+            try {
+                m_task.run();
+            } catch (RuntimeException e) {
+                LOGGER.severe("Task " + m_name + " failed: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    m_runner = null;
+                    m_pending = null;
+                }
+                // don't let an interrupt leak into the next task
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * A single queued run of a task. Runs are ordered by the deadline of
+     * their exercise.
+     */
+    private static final class Job implements Runnable, Comparable<Job> {
+
+        private final Handle m_handle;
+        private final long m_sequenceNumber;
+
+        /**
+         * Creates a job.
+         *
+         * @param handle
+         *            the task to run
+         * @param sequenceNumber
+         *            the position of the job among jobs with the same
+         *            deadline
+         */
+        Job(Handle handle, long sequenceNumber) {
+            m_handle = handle;
+            m_sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public void run() {
+            m_handle.run();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (m_handle.m_deadline != other.m_handle.m_deadline) {
+                return (m_handle.m_deadline < other.m_handle.m_deadline) ? -1
+                        : 1;
+            }
+            if (m_sequenceNumber != other.m_sequenceNumber) {
+                return (m_sequenceNumber < other.m_sequenceNumber) ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Creates daemon threads with numbered names.
+     */
+    private static final class NamedThreads implements ThreadFactory {
+
+        private final String m_prefix;
+        private final AtomicInteger m_count = new AtomicInteger();
+
+        /**
+         * Creates the factory.
+         *
+         * @param prefix
+         *            the prefix of the thread names
+         */
+        NamedThreads(String prefix) {
+            m_prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread =
+                    new Thread(runnable, m_prefix + "-"
+                            + m_count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
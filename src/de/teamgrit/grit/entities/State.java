@@ -106,7 +106,8 @@ public final class State {
                             .getExerciseContext(exerciseId, connectionId,
                                     metadata, courseId, courseName);
 
-                    Exercise exercise = new Exercise(exerciseId, context);
+                    Exercise exercise =
+                            new Exercise(exerciseId, context, true);
 
                     exerciseMap.put(exerciseId, exercise);
 
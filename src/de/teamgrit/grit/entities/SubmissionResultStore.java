@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.entities;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import de.teamgrit.grit.checking.CheckingResult;
+import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.checking.TestOutput;
+import de.teamgrit.grit.preprocess.Student;
+import de.teamgrit.grit.preprocess.tokenize.Submission;
+
+/**
+ * Durable record of the last checking results of every student of an
+ * {@link Exercise}. It remembers which submission was checked, so that an
+ * exercise restored after a restart doesn't recheck unchanged submissions.
+ * The file is read on first access only.
+ */
+public class SubmissionResultStore {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    private static final Gson GSON = new Gson();
+
+    private static final Type RECORDS_TYPE =
+            new TypeToken<Map<String, Record>>() {
+            }.getType();
+
+    private final Path m_storeFile;
+
+    /* mapping from the students to their records, see keyOf */
+    private Map<String, Record> m_records = null;
+
+    private boolean m_dirty = false;
+
+    /**
+     * The stored result of a single submission.
+     */
+    public static final class Record {
+        private String sha1Hash;
+        private boolean plausible;
+        private boolean compilerInvoked;
+        private boolean cleanCompile;
+        private int compilerErrors;
+        private int compilerWarnings;
+        private int compilerInfos;
+        private boolean tested;
+        private int tests;
+        private int passedTests;
+        private int failedTests;
+
+        /**
+         * Creates a record from a checked submission.
+         *
+         * @param submission
+         *            the submission
+         */
+        private Record(Submission submission) {
+            sha1Hash = submission.getSHA1Hash();
+            plausible = submission.isPlausible();
+            CheckingResult result = submission.getCheckingResult();
+            if (result == null) {
+                return;
+            }
+            CompilerOutput compilerOutput = result.getCompilerOutput();
+            if (compilerOutput != null) {
+                compilerInvoked = compilerOutput.compilerInvoked();
+                cleanCompile = compilerOutput.isCleanCompile();
+                compilerErrors = compilerOutput.getCompilerErrors().size();
+                compilerWarnings = compilerOutput.getCompilerWarnings().size();
+                compilerInfos = compilerOutput.getCompilerInfos().size();
+            }
+            TestOutput testOutput = result.getTestResults();
+            if ((testOutput != null)
+                    && Boolean.TRUE.equals(testOutput.getDidTest())) {
+                tested = true;
+                tests = testOutput.getTestCount();
+                passedTests = testOutput.getPassedTestCount();
+                failedTests = testOutput.getFailedTestCount();
+            }
+        }
+
+        /**
+         * @return the SHA-1 of the checked submission
+         */
+        public String getSHA1Hash() {
+            return sha1Hash;
+        }
+
+        /**
+         * @return whether the submission was plausible
+         */
+        public boolean isPlausible() {
+            return plausible;
+        }
+
+        /**
+         * @return whether the compiler could be invoked
+         */
+        public boolean isCompilerInvoked() {
+            return compilerInvoked;
+        }
+
+        /**
+         * @return whether the submission compiled without any messages
+         */
+        public boolean isCleanCompile() {
+            return cleanCompile;
+        }
+
+        /**
+         * @return the number of compiler errors
+         */
+        public int getCompilerErrors() {
+            return compilerErrors;
+        }
+
+        /**
+         * @return the number of compiler warnings
+         */
+        public int getCompilerWarnings() {
+            return compilerWarnings;
+        }
+
+        /**
+         * @return the number of compiler infos
+         */
+        public int getCompilerInfos() {
+            return compilerInfos;
+        }
+
+        /**
+         * @return whether the submission was tested
+         */
+        public boolean isTested() {
+            return tested;
+        }
+
+        /**
+         * @return the number of tests run
+         */
+        public int getTestCount() {
+            return tests;
+        }
+
+        /**
+         * @return the number of passed tests
+         */
+        public int getPassedTestCount() {
+            return passedTests;
+        }
+
+        /**
+         * @return the number of failed tests
+         */
+        public int getFailedTestCount() {
+            return failedTests;
+        }
+    }
+
+    /**
+     * Creates a store backed by the given file.
+     *
+     * @param storeFile
+     *            the file the results are kept in
+     * @param restored
+     *            true if the exercise was restored and earlier results are
+     *            still valid, false to discard them
+     */
+    public SubmissionResultStore(Path storeFile, boolean restored) {
+        m_storeFile = storeFile;
+        if (!restored) {
+            try {
+                Files.deleteIfExists(storeFile);
+            } catch (IOException e) {
+                LOGGER.warning("Could not discard old results in "
+                        + storeFile + ": " + e.getMessage());
+            }
+            m_records = new HashMap<>();
+        }
+    }
+
+    /**
+     * Gets the stored result of a student.
+     *
+     * @param student
+     *            the student
+     * @return the record or null if nothing is stored
+     */
+    public synchronized Record get(Student student) {
+        return getRecords().get(keyOf(student));
+    }
+
+    /**
+     * Checks whether a submission with this hash was already checked for the
+     * student.
+     *
+     * @param student
+     *            the student
+     * @param sha1Hash
+     *            the hash of the current submission
+     * @return true if the stored result belongs to the same submission
+     */
+    public synchronized boolean isUnchanged(Student student, String sha1Hash) {
+        Record record = get(student);
+        return (record != null) && (sha1Hash != null)
+                && sha1Hash.equals(record.getSHA1Hash());
+    }
+
+    /**
+     * Records the result of a checked submission. Call {@link #save()} to
+     * persist it.
+     *
+     * @param submission
+     *            the checked submission
+     */
+    public synchronized void put(Submission submission) {
+        if ((submission.getStudent() == null)
+                || (submission.getSHA1Hash() == null)) {
+            return;
+        }
+        getRecords().put(keyOf(submission.getStudent()),
+                new Record(submission));
+        m_dirty = true;
+    }
+
+    /**
+     * Writes the records to disk if they changed. The file is replaced
+     * atomically, so a crash never leaves a truncated store behind.
+     */
+    public synchronized void save() {
+        if (!m_dirty) {
+            return;
+        }
+        Path temp = m_storeFile.resolveSibling(m_storeFile.getFileName()
+                + ".tmp");
+        try {
+            Files.createDirectories(m_storeFile.getParent());
+            FileUtils.writeStringToFile(temp.toFile(),
+                    GSON.toJson(m_records, RECORDS_TYPE), "UTF-8");
+            try {
+                Files.move(temp, m_storeFile,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, m_storeFile,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            m_dirty = false;
+        } catch (IOException e) {
+            LOGGER.severe("Could not save submission results to "
+                    + m_storeFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Students are identified by their mail address, or by their name if
+     * the address is unknown.
+     *
+     * @param student
+     *            the student
+     * @return the key of the student's record
+     */
+    private static String keyOf(Student student) {
+        if (student.getEmail() != null) {
+            return student.getEmail();
+        }
+        return student.getName();
+    }
+
+    /**
+     * Returns the records, reading them from disk on first access.
+     *
+     * @return the records
+     */
+    private Map<String, Record> getRecords() {
+        if (m_records != null) {
+            return m_records;
+        }
+        m_records = new HashMap<>();
+        if (Files.isRegularFile(m_storeFile)) {
+            try {
+                Map<String, Record> records =
+                        GSON.fromJson(FileUtils.readFileToString(
+                                m_storeFile.toFile(), "UTF-8"), RECORDS_TYPE);
+                if (records != null) {
+                    m_records.putAll(records);
+                }
+                LOGGER.info("Restored " + m_records.size()
+                        + " submission results from " + m_storeFile);
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warning("Could not read submission results from "
+                        + m_storeFile + ", starting over: " + e.getMessage());
+            }
+        }
+        return m_records;
+    }
+}
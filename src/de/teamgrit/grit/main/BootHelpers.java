@@ -1,20 +1,21 @@
 package de.teamgrit.grit.main;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.output.FileWriterWithEncoding;
 
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
+
 /**
  * Various helper methods for the boot process.
  *
@@ -25,6 +26,10 @@ class BootHelpers {
 
     private static final Logger LOGGER = Logger.getLogger("systemlog");
 
+    /* how long a program may take to print its version */
+    private static final long VERSION_CHECK_TIMEOUT = TimeUnit.SECONDS
+            .toMillis(30);
+
     /**
      * Creates an empty state file.
      *
@@ -78,6 +83,31 @@ class BootHelpers {
                         + "\n"
                         + "</server>"
                         + "\n"
+                        + "<processing>"
+                        + "\n"
+                        + "<scheduler workers=\"2\"/>"
+                        + "\n"
+                        + "<checking workers=\"0\"/>"
+                        + "\n"
+                        + "<pipeline extractWorkers=\"0\" reportWorkers=\"0\""
+                        + " queueSize=\"16\"/>"
+                        + "\n"
+                        + "<extraction maxMegabytes=\"100\""
+                        + " maxEntries=\"10000\" maxRatio=\"100\""
+                        + " maxDepth=\"5\"/>"
+                        + "\n"
+                        + "<compile inProcess=\"true\"/>"
+                        + "\n"
+                        + "<testing forked=\"true\" workers=\"0\""
+                        + " jobsPerWorker=\"50\" maxHeap=\"256\""
+                        + " testTimeout=\"10000\""
+                        + " submissionTimeout=\"120000\"/>"
+                        + "\n"
+                        + "<report precompiledPreamble=\"true\""
+                        + " directPdf=\"false\" nativeMerge=\"true\"/>"
+                        + "\n"
+                        + "</processing>"
+                        + "\n"
                         + "<email>"
                         + "\n"
                         + "<auth password=\"\" adress=\"\" host=\"\"/>"
@@ -104,12 +134,12 @@ class BootHelpers {
 
     static boolean checkRequirements() {
         List<String> programArguments = new LinkedList<>();
-        ProcessBuilder buildExecutor = null;
+        ProcessRunner buildExecutor = null;
 
         // check for svn
         programArguments.add("svn");
         programArguments.add("--version");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isSvnAvailable = runProcess(buildExecutor, "svn");
 
         programArguments.clear();
@@ -118,7 +148,7 @@ class BootHelpers {
         // check for ssh
         programArguments.add("ssh");
         programArguments.add("-V");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isSshAvailable = runProcess(buildExecutor, "ssh");
 
         programArguments.clear();
@@ -126,7 +156,7 @@ class BootHelpers {
 
         // check for scp
         programArguments.add("scp");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isScpAvailable = runProcess(buildExecutor, "scp");
 
         programArguments.clear();
@@ -135,7 +165,7 @@ class BootHelpers {
         // check for javac
         programArguments.add("javac");
         programArguments.add("-version");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isJavacAvailable = runProcess(buildExecutor, "javac");
 
         programArguments.clear();
@@ -144,7 +174,7 @@ class BootHelpers {
         // check for gcc
         programArguments.add("gcc");
         programArguments.add("--version");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isGccAvailable = runProcess(buildExecutor, "gcc");
 
         programArguments.clear();
@@ -153,7 +183,7 @@ class BootHelpers {
         // check for g++
         programArguments.add("g++");
         programArguments.add("--version");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isGppAvailable = runProcess(buildExecutor, "g++");
 
         programArguments.clear();
@@ -162,7 +192,7 @@ class BootHelpers {
         // check for ghc
         programArguments.add("ghc");
         programArguments.add("--version");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isGhcAvailable = runProcess(buildExecutor, "ghc");
 
         programArguments.clear();
@@ -171,7 +201,7 @@ class BootHelpers {
         // check for pdf
         programArguments.add("pdflatex");
         programArguments.add("--version");
-        buildExecutor = new ProcessBuilder(programArguments);
+        buildExecutor = new ProcessRunner(programArguments);
         boolean isPdfAvailable = runProcess(buildExecutor, "pdflatex");
 
         return (isSvnAvailable && isSshAvailable && isScpAvailable
@@ -180,7 +210,7 @@ class BootHelpers {
     }
 
     /**
-     * Runs a process defined by the given {@link ProcessBuilder} and returns
+     * Runs a process defined by the given {@link ProcessRunner} and returns
      * whether the program returns a valid output or not.
      *
      * @param programToExecute
@@ -189,37 +219,22 @@ class BootHelpers {
      *            the name of the program for an easier log message
      * @return true if the program returns a version number, false otherwise
      */
-    private static boolean runProcess(ProcessBuilder programToExecute,
+    private static boolean runProcess(ProcessRunner programToExecute,
             String program) {
         try {
-            Process executeProgram = programToExecute.start();
-            InputStream programOutputStream = null;
+            ProcessResult executeProgram =
+                    programToExecute.timeout(VERSION_CHECK_TIMEOUT).run();
+            List<String> programOutputLines;
 
             // some programms print their version info to the errorStream so we
             // need to handle them differently
             if ("javac".equals(program) || "ssh".equals(program)
                     || "scp".equals(program)) {
-                programOutputStream = executeProgram.getErrorStream();
+                programOutputLines = executeProgram.getErrorLines();
             } else {
-                programOutputStream = executeProgram.getInputStream();
-            }
-            InputStreamReader programStreamReader =
-                    new InputStreamReader(programOutputStream);
-            BufferedReader compilerOutputBuffer =
-                    new BufferedReader(programStreamReader);
-
-            List<String> programOutputLines = new LinkedList<>();
-            String line = null;
-
-            while ((line = compilerOutputBuffer.readLine()) != null) {
-                programOutputLines.add(line);
+                programOutputLines = executeProgram.getOutputLines();
             }
 
-            compilerOutputBuffer.close();
-            programStreamReader.close();
-            programOutputStream.close();
-            executeProgram.destroy();
-
             for (String outputLine : programOutputLines) {
 
                 if ((!"scp".equals(program))
@@ -239,6 +254,9 @@ class BootHelpers {
                     + e.getMessage());
             return false;
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 }
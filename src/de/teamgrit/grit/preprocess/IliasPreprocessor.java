@@ -17,7 +17,6 @@
 
 package de.teamgrit.grit.preprocess;
 
-import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -36,7 +35,7 @@ import de.teamgrit.grit.preprocess.tokenize.InvalidStructureException;
 import de.teamgrit.grit.preprocess.tokenize.MaximumDirectoryDepthExceededException;
 import de.teamgrit.grit.preprocess.tokenize.Submission;
 import de.teamgrit.grit.preprocess.tokenize.SubmissionStructure;
-import de.teamgrit.grit.util.hashing.SHA1Generator;
+import de.teamgrit.grit.util.metrics.Metrics;
 
 /**
  * The ILIAS preprocessor uses the {@link IliasFetcher} to fetch submissions
@@ -109,14 +108,19 @@ public final class IliasPreprocessor {
 
         // Fetch submissions
         LOGGER.info("Fetching submissions from ILIAS");
+        long startTime = Metrics.startTimer();
         List<StudentRepoData> iliasStudentData = IliasFetcher.fetchSubmissions(
                 connection, courseName, exerciseName, targetDirectory);
+        Metrics.recordLatency("fetch", courseName, exerciseName, startTime);
 
         try {
             LOGGER.info("Collecting the submissions");
+            startTime = Metrics.startTimer();
             List<Submission> fetchedSubmissions = submissionTokenizer
                     .exploreSubmissionDirectory(submissionStructure,
                             targetDirectory);
+            Metrics.recordLatency("tokenize", courseName, exerciseName,
+                    startTime);
 
             // detect if the students turned in submissions
             for (StudentRepoData studentData : iliasStudentData) {
@@ -126,16 +130,6 @@ public final class IliasPreprocessor {
 
                         setSubmitted(studentData, submission,
                                 studentSubmissions);
-                        try {
-                            submission.setSHA1Hash(SHA1Generator
-                                    .calculateSHA1Hash(submission
-                                            .getSourceCodeLocation()));
-                        } catch (IOException e) {
-                            LOGGER.severe("IOException while generating hash, "
-                                    + "skipping submission from : "
-                                    + submission.getStudent().getEmail() + "\n"
-                                    + e.getMessage());
-                        }
                         // studentSubmissions.put(submission.getStudent(),
                         // submission);
 
@@ -17,7 +17,6 @@
 
 package de.teamgrit.grit.preprocess;
 
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
@@ -36,7 +35,7 @@ import de.teamgrit.grit.preprocess.tokenize.InvalidStructureException;
 import de.teamgrit.grit.preprocess.tokenize.MaximumDirectoryDepthExceededException;
 import de.teamgrit.grit.preprocess.tokenize.Submission;
 import de.teamgrit.grit.preprocess.tokenize.SubmissionStructure;
-import de.teamgrit.grit.util.hashing.SHA1Generator;
+import de.teamgrit.grit.util.metrics.Metrics;
 
 /**
  * @author <a href="mailto:fabian.maquart@uni-konstanz.de">Fabian Marquart</a>
@@ -80,10 +79,12 @@ public class MailPreprocessor {
         structureList.add(exerciseName.toString());
         structureList.add("SUBMISSION");
 
+        long fetchStart = Metrics.startTimer();
         Path submissionDirectory =
                 MailFetcher.fetchSubmissions(targetDirectory, mailServer,
                         loginUsername, loginPassword, startTime, deadline,
                         courseName, exerciseName);
+        Metrics.recordLatency("fetch", courseName, exerciseName, fetchStart);
 
         GeneralTokenizer tokenizer =
                 new GeneralTokenizer(fileRegex, archiveRegex);
@@ -91,9 +92,12 @@ public class MailPreprocessor {
         try {
             SubmissionStructure structure =
                     new SubmissionStructure(structureList);
+            long tokenizeStart = Metrics.startTimer();
             submissions =
                     tokenizer.exploreSubmissionDirectory(structure,
                             submissionDirectory);
+            Metrics.recordLatency("tokenize", courseName, exerciseName,
+                    tokenizeStart);
         } catch (MaximumDirectoryDepthExceededException e) {
             LOGGER.severe("Maximum directory depth exceeded.");
             throw new SubmissionFetchingException(e);
@@ -126,18 +130,6 @@ public class MailPreprocessor {
 
             currentSubmission.getStudent().setEmail(studentEmail);
             currentSubmission.getStudent().setName(studentName);
-            try {
-                currentSubmission.setSHA1Hash(SHA1Generator
-                        .calculateSHA1Hash(currentSubmission
-                                .getSourceCodeLocation()));
-            } catch (IOException e) {
-                LOGGER.severe("IOException while generating hash, "
-                        + "skipping submission from : "
-                        + currentSubmission.getStudent().getEmail() + "\n"
-                        + e.getMessage());
-                continue;
-            }
-
             map.put(currentSubmission.getStudent(), currentSubmission);
         }
 
@@ -16,6 +16,8 @@ public class PreprocessingResult {
     private Map<Student, Submission> m_studentSubmissions;
     private List<Student> m_studentsWithoutSubmission;
 
+    private boolean m_unchanged;
+
     /**
      * Constructor.
      *
@@ -26,8 +28,25 @@ public class PreprocessingResult {
      */
     public PreprocessingResult(Map<Student, Submission> studentSubmissions,
             List<Student> studentsWithoutSubmissions) {
+        this(studentSubmissions, studentsWithoutSubmissions, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param studentSubmissions
+     *            the map storing the students and their submissions.
+     * @param studentsWithoutSubmissions
+     *            the list of students that did not turn in a submission
+     * @param unchanged
+     *            true if the source reported that nothing changed since the
+     *            last preprocessing
+     */
+    public PreprocessingResult(Map<Student, Submission> studentSubmissions,
+            List<Student> studentsWithoutSubmissions, boolean unchanged) {
         m_studentSubmissions = studentSubmissions;
         m_studentsWithoutSubmission = studentsWithoutSubmissions;
+        m_unchanged = unchanged;
     }
 
     /**
@@ -44,4 +63,13 @@ public class PreprocessingResult {
         return m_studentsWithoutSubmission;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return true if the source reported that nothing changed since the
+     *         last preprocessing, the submissions are the ones of the last
+     *         preprocessing then
+     */
+    public boolean isUnchanged() {
+        return m_unchanged;
+    }
+
+}
@@ -50,7 +50,7 @@ public abstract class Preprocessors {
             break;
         case SVN:
             result = SvnPreprocessor.preprocess(connection, targetDirectory,
-                    fileRegex, archiveRegex);
+                    fileRegex, archiveRegex, courseName, exerciseName);
             break;
         case MAIL:
             result = MailPreprocessor.preprocess(connection, targetDirectory,
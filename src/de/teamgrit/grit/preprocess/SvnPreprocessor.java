@@ -19,22 +19,26 @@ package de.teamgrit.grit.preprocess;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import de.teamgrit.grit.preprocess.fetch.SubmissionFetchingException;
 import de.teamgrit.grit.preprocess.fetch.SvnFetcher;
+import de.teamgrit.grit.preprocess.fetch.SvnUpdate;
 import de.teamgrit.grit.preprocess.tokenize.GeneralTokenizer;
 import de.teamgrit.grit.preprocess.tokenize.MaximumDirectoryDepthExceededException;
 import de.teamgrit.grit.preprocess.tokenize.Submission;
-import de.teamgrit.grit.preprocess.tokenize.Tokenizer;
-import de.teamgrit.grit.util.hashing.SHA1Generator;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionStructure;
+import de.teamgrit.grit.util.metrics.Metrics;
 
 /**
  * This SVN Preprocessor uses the {@link SvnFetcher} to collect all submissions
@@ -44,11 +48,18 @@ import de.teamgrit.grit.util.hashing.SHA1Generator;
  *
  * studXX = max.2.mustermann@<domain>.<topleveldomain>
  *
+ * Between two runs only the student directories touched by svn update are
+ * tokenized again, the submissions of the others are kept.
+ *
  * @author <a href="mailto:eike.heinz@uni-konstanz.de">Eike Heinz</a>
  */
 public final class SvnPreprocessor {
     private static final Logger LOGGER = Logger.getLogger("systemlog");
 
+    /* the last tokenization of each working copy */
+    private static final Map<Path, WorkingCopyState> s_states =
+            new ConcurrentHashMap<>();
+
     /**
      * This is a singleton no need for instances.
      */
@@ -66,22 +77,28 @@ public final class SvnPreprocessor {
      *            the regex matching the valid source files
      * @param archiveRegex
      *            the regex matching the valid archive types
+     * @param courseName
+     *            the name of the course, used for the metrics
+     * @param exerciseName
+     *            the name of the exercise, used for the metrics
      * @return the result of the preprocessing
      * @throws SubmissionFetchingException
      */
     public static PreprocessingResult preprocess(Connection connection,
-            Path targetDirectory, String fileRegex, String archiveRegex)
+            Path targetDirectory, String fileRegex, String archiveRegex,
+            String courseName, String exerciseName)
             throws SubmissionFetchingException {
 
-        Tokenizer submissionTokenizer =
-                new GeneralTokenizer(fileRegex, archiveRegex);
         List<Student> studentsWithoutSubmission = new ArrayList<>();
         Map<Student, Submission> submissions = new HashMap<>();
 
         LOGGER.info("Fetching submissions from SVN");
         // throws SubmissionFetchingException
-        Path pathToSubmissions =
-                SvnFetcher.fetchSubmissions(connection, targetDirectory);
+        long startTime = Metrics.startTimer();
+        SvnUpdate update =
+                SvnFetcher.updateSubmissions(connection, targetDirectory);
+        Metrics.recordLatency("fetch", courseName, exerciseName, startTime);
+        Path pathToSubmissions = update.getWorkingCopy();
 
         if (pathToSubmissions != null) {
             // since we're using SVN we don't receive a list of mail
@@ -92,11 +109,15 @@ public final class SvnPreprocessor {
             LOGGER.info("Collecting submissions");
             try {
                 // getting a list of all submissions with the corresponding
-                // student
+                // student, only the changed directories are explored again
                 // throws MaximumDirectoryDepthExceededException
-                List<Submission> tokenizedSubmissions =
-                        submissionTokenizer.exploreSubmissionDirectory(
-                                connection.getStructure(), pathToSubmissions);
+                startTime = Metrics.startTimer();
+                WorkingCopyState state =
+                        tokenize(update, connection.getStructure(),
+                                fileRegex, archiveRegex);
+                Metrics.recordLatency("tokenize", courseName, exerciseName,
+                        startTime);
+                List<Submission> tokenizedSubmissions = state.m_submissions;
                 File studentsMapping =
                         new File(pathToSubmissions.toString(), "students.txt");
 
@@ -120,8 +141,7 @@ public final class SvnPreprocessor {
 
                 String[] students = tempStudents.toArray(new String[0]);
 
-                List<Path> emptySubmissionPaths =
-                        submissionTokenizer.getEmptySubmissions();
+                List<Path> emptySubmissionPaths = state.m_emptyLocations;
 
                 // map each student in the mapping file to his submission
                 for (String name : students) {
@@ -152,15 +172,6 @@ public final class SvnPreprocessor {
                             stud.setName(tempName.substring(0,
                                     tempName.indexOf("@")));
                             stud.setEmail(tempName);
-                            try {
-                                submission.setSHA1Hash(SHA1Generator
-                                        .calculateSHA1Hash(submission
-                                                .getSourceCodeLocation()));
-                            } catch (IOException e) {
-                                LOGGER.severe("IOException while generating hash, "
-                                        + "skipping submission from : "
-                                        + tempName + "\n" + e.getMessage());
-                            }
                             submissions.put(submission.getStudent(),
                                     submission);
                         }
@@ -179,7 +190,7 @@ public final class SvnPreprocessor {
                 LOGGER.info("Preprocessing completed");
 
                 return new PreprocessingResult(submissions,
-                        studentsWithoutSubmission);
+                        studentsWithoutSubmission, state.m_unchanged);
             } catch (MaximumDirectoryDepthExceededException e) {
                 throw new SubmissionFetchingException(
                         "Maximum Depth exceeded in Tokenizer.", e);
@@ -193,4 +204,232 @@ public final class SvnPreprocessor {
         // in this case pathToSubmissions is null so there are no submissions
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Tokenizes the working copy. The submissions of the last run on the same
+     * working copy are kept for every student directory the update didn't
+     * touch, only the touched ones are explored again. Everything is explored
+     * after a fresh checkout, when the revision is unknown or when the
+     * regexes or the structure changed.
+     *
+     * @param update
+     *            the result of fetching from svn
+     * @param structure
+     *            the structure of the repository
+     * @param fileRegex
+     *            the regex matching the valid source files
+     * @param archiveRegex
+     *            the regex matching the valid archive types
+     * @return the submissions and empty submission locations of the working
+     *         copy
+     * @throws MaximumDirectoryDepthExceededException
+     *             if the tokenizer descends too deep
+     */
+    private static WorkingCopyState tokenize(SvnUpdate update,
+            SubmissionStructure structure, String fileRegex,
+            String archiveRegex)
+            throws MaximumDirectoryDepthExceededException {
+        Path workingCopy = update.getWorkingCopy();
+        GeneralTokenizer submissionTokenizer =
+                new GeneralTokenizer(fileRegex, archiveRegex);
+        WorkingCopyState previous = s_states.get(workingCopy);
+
+        WorkingCopyState state;
+        if ((previous == null) || update.isCheckedOut()
+                || (update.getRevision() < 0)
+                || !previous.isCompatible(structure, fileRegex, archiveRegex)) {
+            state =
+                    new WorkingCopyState(update.getRevision(), structure,
+                            fileRegex, archiveRegex);
+            state.m_submissions.addAll(submissionTokenizer
+                    .exploreSubmissionDirectory(structure, workingCopy));
+            state.m_emptyLocations.addAll(submissionTokenizer
+                    .getEmptySubmissions());
+        } else if ((previous.m_revision == update.getRevision())
+                && update.getChangedPaths().isEmpty()) {
+            LOGGER.info("Revision " + update.getRevision() + " of "
+                    + workingCopy + " is unchanged.");
+            state = previous.copy(true);
+        } else {
+            List<Path> subtrees =
+                    getChangedSubtrees(workingCopy, structure,
+                            update.getChangedPaths());
+            LOGGER.info("Revision " + update.getRevision() + " of "
+                    + workingCopy + " changed " + subtrees.size()
+                    + " directories.");
+            state = previous.copy(false);
+            state.m_revision = update.getRevision();
+            for (Path subtree : subtrees) {
+                state.remove(subtree);
+                state.m_submissions.addAll(submissionTokenizer
+                        .exploreSubmissionSubtree(structure, workingCopy,
+                                subtree));
+                state.m_emptyLocations.addAll(submissionTokenizer
+                        .getEmptySubmissions());
+            }
+        }
+        s_states.put(workingCopy, state);
+        return state;
+    }
+
+    /**
+     * Maps the paths touched by an update to the directories that have to be
+     * explored again. A path below the submission level stands for the
+     * submission directory containing it, a path above for itself. Nested
+     * directories are dropped, they are explored with their parent.
+     *
+     * @param workingCopy
+     *            the root of the working copy
+     * @param structure
+     *            the structure of the repository
+     * @param changedPaths
+     *            the paths touched by the update, relative to the working
+     *            copy
+     * @return the absolute paths of the directories
+     */
+    private static List<Path> getChangedSubtrees(Path workingCopy,
+            SubmissionStructure structure, List<Path> changedPaths) {
+        // number of directories between the toplevel and a submission
+        int submissionDepth = structure.getStructure().size() - 2;
+        Set<Path> subtrees = new HashSet<>();
+        for (Path changedPath : changedPaths) {
+            Path subtree = workingCopy;
+            int depth = 0;
+            for (Path name : changedPath) {
+                if ((depth == submissionDepth) || ".".equals(name.toString())
+                        || name.toString().isEmpty()) {
+                    break;
+                }
+                subtree = subtree.resolve(name);
+                depth++;
+            }
+            subtrees.add(subtree);
+        }
+
+        List<Path> outermost = new ArrayList<>();
+        for (Path subtree : subtrees) {
+            boolean nested = false;
+            for (Path other : subtrees) {
+                if (!other.equals(subtree) && subtree.startsWith(other)) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                outermost.add(subtree);
+            }
+        }
+        return outermost;
+    }
+
+    /**
+     * The tokenized submissions of a working copy at a revision.
+     */
+    private static final class WorkingCopyState {
+
+        private long m_revision;
+        private final List<String> m_structure;
+        private final String m_fileRegex;
+        private final String m_archiveRegex;
+        private final boolean m_unchanged;
+        private final List<Submission> m_submissions = new ArrayList<>();
+        private final List<Path> m_emptyLocations = new ArrayList<>();
+
+        /**
+         * Creates an empty state.
+         *
+         * @param revision
+         *            the revision of the working copy
+         * @param structure
+         *            the structure the working copy was tokenized with
+         * @param fileRegex
+         *            the regex matching the valid source files
+         * @param archiveRegex
+         *            the regex matching the valid archive types
+         */
+        WorkingCopyState(long revision, SubmissionStructure structure,
+                String fileRegex, String archiveRegex) {
+            this(revision, structure.getStructure(), fileRegex,
+                    archiveRegex, false);
+        }
+
+        /**
+         * Creates an empty state.
+         *
+         * @param revision
+         *            the revision of the working copy
+         * @param structure
+         *            the structure the working copy was tokenized with
+         * @param fileRegex
+         *            the regex matching the valid source files
+         * @param archiveRegex
+         *            the regex matching the valid archive types
+         * @param unchanged
+         *            true if the revision didn't move since the last run
+         */
+        private WorkingCopyState(long revision, List<String> structure,
+                String fileRegex, String archiveRegex, boolean unchanged) {
+            m_revision = revision;
+            m_structure = new ArrayList<>(structure);
+            m_fileRegex = fileRegex;
+            m_archiveRegex = archiveRegex;
+            m_unchanged = unchanged;
+        }
+
+        /**
+         * Copies the state, the submissions themselves are shared.
+         *
+         * @param unchanged
+         *            true if the revision didn't move since the last run
+         * @return the copy
+         */
+        WorkingCopyState copy(boolean unchanged) {
+            WorkingCopyState copy =
+                    new WorkingCopyState(m_revision, m_structure,
+                            m_fileRegex, m_archiveRegex, unchanged);
+            copy.m_submissions.addAll(m_submissions);
+            copy.m_emptyLocations.addAll(m_emptyLocations);
+            return copy;
+        }
+
+        /**
+         * Checks whether the state was tokenized with the same settings.
+         *
+         * @param structure
+         *            the structure of the repository
+         * @param fileRegex
+         *            the regex matching the valid source files
+         * @param archiveRegex
+         *            the regex matching the valid archive types
+         * @return true if the submissions can be reused
+         */
+        boolean isCompatible(SubmissionStructure structure,
+                String fileRegex, String archiveRegex) {
+            return m_structure.equals(structure.getStructure())
+                    && m_fileRegex.equals(fileRegex)
+                    && m_archiveRegex.equals(archiveRegex);
+        }
+
+        /**
+         * Drops everything found below a directory.
+         *
+         * @param subtree
+         *            the directory
+         */
+        void remove(Path subtree) {
+            Iterator<Submission> submissions = m_submissions.iterator();
+            while (submissions.hasNext()) {
+                if (submissions.next().getSourceCodeLocation()
+                        .startsWith(subtree)) {
+                    submissions.remove();
+                }
+            }
+            Iterator<Path> locations = m_emptyLocations.iterator();
+            while (locations.hasNext()) {
+                if (locations.next().startsWith(subtree)) {
+                    locations.remove();
+                }
+            }
+        }
+    }
+}
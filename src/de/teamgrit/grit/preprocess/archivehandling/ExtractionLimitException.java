@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.preprocess.archivehandling;
+
+import java.util.zip.ZipException;
+
+/**
+ * Indicates that an archive exceeded one of the {@link ExtractionLimits}
+ * while it was extracted. Whatever was extracted up to then has been
+ * removed again.
+ */
+
+public class ExtractionLimitException extends ZipException {
+    /**
+     * Generated serial ID.
+     */
+    private static final long serialVersionUID = -3528960213487196402L;
+
+    /**
+     * Simply pass the message to the superclass. It implements all necessary
+     * methods.
+     *
+     * @param message
+     *            String describing the limit that was exceeded.
+     */
+    public ExtractionLimitException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.preprocess.archivehandling;
+
+/**
+ * Limits for extracting the archive of a single submission. They are checked
+ * while the archive is streamed, so a zip bomb is stopped after at most the
+ * allowed number of bytes instead of filling the disk.
+ */
+public final class ExtractionLimits {
+
+    /** The limits used if none are configured. */
+    public static final ExtractionLimits DEFAULT = new ExtractionLimits(
+            100L * 1024 * 1024, 10000, 100, 5);
+
+    /*
+     * the ratio is only checked above this many bytes, tiny archives of text
+     * files compress well and are harmless anyway
+     */
+    private static final long RATIO_THRESHOLD = 1024 * 1024;
+
+    private final long m_maxBytes;
+    private final int m_maxEntries;
+    private final int m_maxRatio;
+    private final int m_maxDepth;
+
+    /**
+     * Creates limits.
+     *
+     * @param maxBytes
+     *            the maximum number of uncompressed bytes
+     * @param maxEntries
+     *            the maximum number of entries, nested archives included
+     * @param maxRatio
+     *            the maximum ratio of the uncompressed bytes to the size of
+     *            the archive
+     * @param maxDepth
+     *            the maximum depth of nested archives
+     */
+    public ExtractionLimits(long maxBytes, int maxEntries, int maxRatio,
+            int maxDepth) {
+        m_maxBytes = maxBytes;
+        m_maxEntries = maxEntries;
+        m_maxRatio = maxRatio;
+        m_maxDepth = maxDepth;
+    }
+
+    /**
+     * Gets the maximum number of uncompressed bytes.
+     *
+     * @return the number of bytes
+     */
+    public long getMaxBytes() {
+        return m_maxBytes;
+    }
+
+    /**
+     * Gets the maximum number of entries, nested archives included.
+     *
+     * @return the number of entries
+     */
+    public int getMaxEntries() {
+        return m_maxEntries;
+    }
+
+    /**
+     * Gets the maximum ratio of uncompressed bytes to the archive size.
+     *
+     * @return the ratio
+     */
+    public int getMaxRatio() {
+        return m_maxRatio;
+    }
+
+    /**
+     * Gets the maximum depth of nested archives.
+     *
+     * @return the depth
+     */
+    public int getMaxDepth() {
+        return m_maxDepth;
+    }
+
+    /**
+     * Checks the number of bytes extracted so far.
+     *
+     * @param bytes
+     *            the uncompressed bytes extracted so far
+     * @param archiveSize
+     *            the size of the archive in bytes
+     * @throws ExtractionLimitException
+     *             if the bytes or the ratio exceed their limit
+     */
+    void checkBytes(long bytes, long archiveSize)
+            throws ExtractionLimitException {
+        if (bytes > m_maxBytes) {
+            throw new ExtractionLimitException("archive unpacks to more than "
+                    + m_maxBytes + " bytes");
+        }
+        if ((bytes > RATIO_THRESHOLD) && (archiveSize > 0)
+                && (bytes > archiveSize * m_maxRatio)) {
+            throw new ExtractionLimitException("archive of " + archiveSize
+                    + " bytes unpacks to more than " + m_maxRatio
+                    + " times its size");
+        }
+    }
+
+    /**
+     * Checks the number of entries extracted so far.
+     *
+     * @param entries
+     *            the number of entries extracted so far
+     * @throws ExtractionLimitException
+     *             if the entries exceed their limit
+     */
+    void checkEntries(int entries) throws ExtractionLimitException {
+        if (entries > m_maxEntries) {
+            throw new ExtractionLimitException(
+                    "archive contains more than " + m_maxEntries + " entries");
+        }
+    }
+
+    /**
+     * Checks the depth of a nested archive.
+     *
+     * @param depth
+     *            the depth of the nested archive, 1 for an archive in the
+     *            submitted one
+     * @throws ExtractionLimitException
+     *             if the depth exceeds its limit
+     */
+    void checkDepth(int depth) throws ExtractionLimitException {
+        if (depth > m_maxDepth) {
+            throw new ExtractionLimitException("archives are nested deeper "
+                    + "than " + m_maxDepth + " levels");
+        }
+    }
+}
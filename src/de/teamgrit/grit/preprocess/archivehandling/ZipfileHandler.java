@@ -17,6 +17,8 @@
 
 package de.teamgrit.grit.preprocess.archivehandling;
 
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -27,10 +29,13 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import de.teamgrit.grit.util.config.NoProperParameterException;
@@ -47,11 +52,18 @@ public class ZipfileHandler implements ArchiveHandler {
 
     private static final Logger LOGGER = Logger.getLogger("systemlog");
 
-    // buffer to read from files
-    private static final byte[] FILEBUFFER = new byte[8192];
+    // size of the buffers to read from files, each call has its own buffer
+    private static final int BUFFER_SIZE = 8192;
 
-    // this unzip method needs an temporary directory to store nested zip files
-    // in order to exatract them
+    // names of entries that are extracted as nested archives
+    private static final String ZIP_SUFFIX = ".zip";
+    private static final Pattern NESTED_ZIP = Pattern.compile(".*\\.zip");
+
+    // a zipfile starts with PK\3\4 or, if it is empty, with PK\5\6
+    private static final int ZIP_SIGNATURE_LENGTH = 4;
+
+    // nested zip files are streamed, the temporary directory is only kept
+    // for the ArchiveHandler interface
     private File m_unzipTempDirectory = null;
 
     // until this level we will unpack an nested archive
@@ -63,6 +75,17 @@ public class ZipfileHandler implements ArchiveHandler {
     // stores all dirs that are empty which are excluded in the makeZip method
     private Collection<File> m_emptyDirs = null;
 
+    // the limits checked while extracting, null if there are none
+    private ExtractionLimits m_limits = null;
+
+    // progress of the current extraction, checked against the limits
+    private long m_archiveSize;
+    private long m_extractedBytes;
+    private int m_extractedEntries;
+
+    // files and folders created by the current extraction, in that order
+    private List<File> m_createdFiles = null;
+
     /**
      * Constructor with ability to set the maximum depth to which nested zip
      * files will be extracted.
@@ -70,8 +93,8 @@ public class ZipfileHandler implements ArchiveHandler {
      * @param maxExtractionLevelDepth
      *            level to which nested archives are extracted
      * @param tempUnzipDir
-     *            Temporary Directory to assist in extraction process. content
-     *            will be deleted after process is finished.
+     *            Temporary Directory to assist in extraction process. Zip
+     *            files don't need it, nested ones are extracted on the fly.
      * @throws NoProperParameterException
      *             thrown if ExtractionDepthLimit or TempDirectory aren't set
      *             properly
@@ -108,6 +131,21 @@ public class ZipfileHandler implements ArchiveHandler {
 
     }
 
+    /**
+     * Sets the limits that are checked while extracting. The depth limit
+     * replaces the folder extraction depth limit; a nested archive deeper
+     * than that is no longer kept as a file but stops the extraction.
+     *
+     * @param limits
+     *            the limits, null for none
+     */
+    public void setExtractionLimits(ExtractionLimits limits) {
+        m_limits = limits;
+        if (limits != null) {
+            m_maxFolderLevelDepth = limits.getMaxDepth();
+        }
+    }
+
     @Override
     public File getTempDirectory() {
         return m_unzipTempDirectory;
@@ -136,7 +174,20 @@ public class ZipfileHandler implements ArchiveHandler {
             // if the output folder is valid we call the help method
             if (outputFolder.isDirectory()) {
                 m_failedFiles = new ArrayList<>();
-                extractZip(pathToZipfile, outputFolder, 0);
+                m_createdFiles = new ArrayList<>();
+                m_archiveSize = pathToZipfile.length();
+                m_extractedBytes = 0;
+                m_extractedEntries = 0;
+                try {
+                    extractZip(pathToZipfile, outputFolder, 0);
+                } catch (ExtractionLimitException e) {
+                    LOGGER.warning("Stopped extracting " + pathToZipfile
+                            + ": " + e.getMessage());
+                    deleteCreatedFiles();
+                    throw e;
+                } finally {
+                    m_createdFiles = null;
+                }
             } else {
                 throw new NoProperParameterException(
                         "OutputFolder is a file: " + outputFolder.toString());
@@ -149,7 +200,8 @@ public class ZipfileHandler implements ArchiveHandler {
 
     /**
      * method to limit the depth to which the ZipfileHandler unpacks an
-     * archive.
+     * archive. Nested archives are streamed straight from their parent into
+     * the output folder, they never touch the temp directory.
      *
      * @param pathToZipFile
      *            points to the zip archive that we want to extract
@@ -165,10 +217,8 @@ public class ZipfileHandler implements ArchiveHandler {
 
     private void extractZip(File pathToZipFile, File outputFolder,
             int folderLevel) throws ZipException {
-        // offset for creating substring from filenames (is needed to test if
-        // file is ".zip" archive)
-        int offsetFileEnding = 4;
-        int level = folderLevel;
+        // every extraction has its own buffer, so handlers can run in parallel
+        byte[] buffer = new byte[BUFFER_SIZE];
 
         ZipFile zipfile = null;
         try {
@@ -176,61 +226,25 @@ public class ZipfileHandler implements ArchiveHandler {
 
             // take each ZipEntry and extract it
             for (ZipEntry entry : Collections.list(zipfile.entries())) {
-                if (!m_unzipTempDirectory.exists()) {
-                    m_unzipTempDirectory.mkdirs();
-                }
-
-                // nested zip and limit of depth isn't reached
-                if ((entry.getName().matches(".*\\.zip"))
-                        && (folderLevel < m_maxFolderLevelDepth)) {
-
-                    // extract the current entry to the temp directory
-                    // otherwise we can't extract the entries in this
-                    // entry
-                    extractEntry(zipfile, entry, m_unzipTempDirectory);
-
-                    // construct the new subdirectory in which the new archive
-                    // will be extracted
-                    File temp =
-                            new File(m_unzipTempDirectory.toString(),
-                                    entry.getName());
-                    File outputFolderSubfolder =
-                            new File(outputFolder.toString(), entry.getName()
-                                    .substring(
-                                            0,
-                                            entry.getName().length()
-                                                    - offsetFileEnding));
-
-                    // increase level for recursive call because we're going
-                    // one level deeper into the archive
-                    level++;
-                    extractZip(temp, outputFolderSubfolder, level);
-
-                    // decrease level because we are back in our normal level
-                    level--;
-
-                    deleteFiles(m_unzipTempDirectory);
-
-                } else {
-
-                    extractEntry(zipfile, entry, outputFolder);
+                InputStream readStream = zipfile.getInputStream(entry);
+                try {
+                    extractEntry(readStream, entry, outputFolder,
+                            folderLevel, buffer);
+                } finally {
+                    readStream.close();
                 }
             }
         } catch (FileNotFoundException e) {
             LOGGER.severe("Error: outputStream couldn't be initialized: "
                     + e.getMessage());
             e.printStackTrace();
+        } catch (ExtractionLimitException e) {
+            throw e;
         } catch (ZipException e) {
-            // add current zipFile to the list of failed ones
-            // iff it's not the root zip we can add it, otherwise the whole zip
-            // is invalid so we throw an exception
-            if (level > 0) {
-                m_failedFiles.add(pathToZipFile);
-            } else {
-                throw new ZipException(
-                        "Specified Root zipfile isn't a zipfile: "
-                                + pathToZipFile.toString());
-            }
+            // broken nested archives are dealt with in extractNestedZip, so
+            // the whole zip is invalid
+            throw new ZipException("Specified Root zipfile isn't a zipfile: "
+                    + pathToZipFile.toString());
         } catch (IOException e) {
             LOGGER.severe("Error: I/O-Error: " + e.getMessage());
             e.printStackTrace();
@@ -246,11 +260,49 @@ public class ZipfileHandler implements ArchiveHandler {
     }
 
     /**
-     * returns a list of files that end with .zip but aren't zipfiles.
-     * Attention: Only contains the CURRENT location of the file. That means if
-     * it's nested it will be in temp/nameOfTheFile.zip
+     * Extracts the entries of a nested archive while it is read from its
+     * parent. If the nested archive turns out to be broken, it is added to
+     * the failed files and whatever was extracted up to then is kept.
      *
-     * No information about the former location is stored anywhere!
+     * @param readStream
+     *            the content of the nested archive, isn't closed
+     * @param archive
+     *            the location the nested archive would have in the output
+     *            folder
+     * @param outputFolder
+     *            folder to which the entries are extracted
+     * @param folderLevel
+     *            the depth level of the entries
+     * @param buffer
+     *            the buffer to copy with
+     * @throws IOException
+     *             if an entry can't be written
+     */
+    private void extractNestedZip(InputStream readStream, File archive,
+            File outputFolder, int folderLevel, byte[] buffer)
+            throws IOException {
+        // not closed, that would close the entry of the parent as well
+        ZipInputStream zipStream = new ZipInputStream(readStream);
+        try {
+            ZipEntry entry;
+            while ((entry = zipStream.getNextEntry()) != null) {
+                extractEntry(zipStream, entry, outputFolder, folderLevel,
+                        buffer);
+            }
+        } catch (ExtractionLimitException e) {
+            throw e;
+        } catch (ZipException | EOFException e) {
+            // EOFException: the archive is truncated
+            LOGGER.warning("Nested zipfile " + archive + " is broken: "
+                    + e.getMessage());
+            m_failedFiles.add(archive);
+        }
+    }
+
+    /**
+     * returns a list of files that end with .zip but aren't zipfiles or are
+     * broken. Contains the location the file has in the output folder; files
+     * that aren't zipfiles at all are extracted there like any other file.
      *
      * @return ArrayList with Files we tried to extract but are no zipfiles.
      */
@@ -282,65 +334,154 @@ public class ZipfileHandler implements ArchiveHandler {
     }
 
     /**
-     * private method which extracts a given ZipEntry form a ZipFile to a
-     * specified location.
+     * private method which extracts a given ZipEntry to a specified location.
+     * A nested zip above the depth limit is extracted into a folder named
+     * like the archive without the ".zip".
      *
-     * @param zipfile
-     *            ZipFile which contains the ZipEntry
+     * @param readStream
+     *            the content of the ZipEntry, isn't closed
      * @param entry
      *            ZipEntry which is going to be extracted
      * @param outputFolder
      *            Folder to which the ZipEntry will be extracted
+     * @param folderLevel
+     *            current folder depth level in the archive
+     * @param buffer
+     *            the buffer to copy with
      * @throws FileNotFoundException
      *             thrown if outputstream couldn't be initialized
      * @throws IOException
-     *             thrown if Inputstream couldn't be initialized
+     *             thrown if the entry can't be read
      */
 
-    private void extractEntry(ZipFile zipfile, ZipEntry entry,
-            File outputFolder) throws FileNotFoundException, IOException {
+    private void extractEntry(InputStream readStream, ZipEntry entry,
+            File outputFolder, int folderLevel, byte[] buffer)
+            throws FileNotFoundException, IOException {
 
         // create the outputFolder-Hierarchy
         File outputFile = new File(outputFolder, entry.getName());
 
+        m_extractedEntries++;
+        if (m_limits != null) {
+            m_limits.checkEntries(m_extractedEntries);
+        }
+
         // create the directory, if entry is one
         if (entry.isDirectory()) {
-            outputFile.mkdirs();
-        } else {
+            makeDirectories(outputFile);
+            return;
+        }
 
-            // creating a file, if the entry is a file
-            new File(outputFile.getParent()).mkdirs();
+        InputStream content = readStream;
+
+        // nested zip and limit of depth isn't reached
+        if (NESTED_ZIP.matcher(entry.getName()).matches()
+                && (folderLevel < m_maxFolderLevelDepth)) {
+            content = new BufferedInputStream(readStream);
+            if (startsLikeZip(content)) {
+                String name = entry.getName();
+                File outputFolderSubfolder =
+                        new File(outputFolder, name.substring(0,
+                                name.length() - ZIP_SUFFIX.length()));
+                extractNestedZip(content, outputFile, outputFolderSubfolder,
+                        folderLevel + 1, buffer);
+                return;
+            }
+            // not a zipfile after all, keep it as it is
+            m_failedFiles.add(outputFile);
+        } else if ((m_limits != null)
+                && NESTED_ZIP.matcher(entry.getName()).matches()) {
+            // too deep, unless it isn't a zipfile at all
+            content = new BufferedInputStream(readStream);
+            if (startsLikeZip(content)) {
+                m_limits.checkDepth(folderLevel + 1);
+            }
+        }
 
-            // Streams which will read from the source and write to the target
-            // location
-            InputStream readStream = null;
-            OutputStream writeStream = null;
+        // creating a file, if the entry is a file
+        makeDirectories(outputFile.getParentFile());
 
-            try {
+        OutputStream writeStream = new FileOutputStream(outputFile);
+        m_createdFiles.add(outputFile);
+        try {
+            int numberOfBytesToWrite;
+
+            // read #buffer bytes from the entry and write them in output
+            // until all bytes are written, or a limit is exceeded
+            while ((numberOfBytesToWrite = content.read(buffer)) > 0) {
+                writeStream.write(buffer, 0, numberOfBytesToWrite);
+                m_extractedBytes += numberOfBytesToWrite;
+                if (m_limits != null) {
+                    m_limits.checkBytes(m_extractedBytes, m_archiveSize);
+                }
+            }
+        } finally {
+            writeStream.close();
+        }
+    }
 
-                // set up filereader and filewriter
-                readStream = zipfile.getInputStream(entry);
-                writeStream = new FileOutputStream(outputFile);
+    /**
+     * Creates a folder and its missing parents, remembering the ones that
+     * were created.
+     *
+     * @param directory
+     *            the folder
+     */
+    private void makeDirectories(File directory) {
+        if ((directory == null) || directory.exists()) {
+            return;
+        }
+        makeDirectories(directory.getParentFile());
+        if (directory.mkdir()) {
+            m_createdFiles.add(directory);
+        }
+    }
 
-                int numberOfBytesToWrite;
+    /**
+     * Deletes the files and folders created by the current extraction, so
+     * a rejected archive doesn't leave anything behind.
+     */
+    private void deleteCreatedFiles() {
+        for (int i = m_createdFiles.size() - 1; i >= 0; i--) {
+            File file = m_createdFiles.get(i);
+            if (!file.delete() && file.exists()) {
+                LOGGER.warning("Couldn't delete " + file);
+            }
+        }
+    }
 
-                // read #fileBuffer bytes from zipfile and write them in output
-                // until all bytes are written
-                while ((numberOfBytesToWrite = readStream.read(FILEBUFFER)) > 0) {
-                    writeStream.write(FILEBUFFER, 0, numberOfBytesToWrite);
-                }
-            } finally {
-                // if an exception is thrown (by Input or outputStreams we
-                // still have to close the filestreams
-                if (readStream != null) {
-                    readStream.close();
-                }
-                if (writeStream != null) {
-                    writeStream.close();
+    /**
+     * Checks whether a stream starts with the signature of a zipfile, either
+     * of its first entry or of the end record of an empty one. The stream is
+     * reset to where it was.
+     *
+     * @param stream
+     *            a stream supporting mark and reset
+     * @return true if the stream looks like a zipfile
+     * @throws IOException
+     *             if the stream can't be read
+     */
+    private static boolean startsLikeZip(InputStream stream)
+            throws IOException {
+        byte[] signature = new byte[ZIP_SIGNATURE_LENGTH];
+        stream.mark(signature.length);
+        int length = 0;
+        try {
+            int read = 0;
+            while ((length < signature.length) && (read >= 0)) {
+                read = stream.read(signature, length, signature.length
+                        - length);
+                if (read > 0) {
+                    length += read;
                 }
             }
+        } finally {
+            stream.reset();
         }
-
+        return (length == signature.length) && (signature[0] == 'P')
+                && (signature[1] == 'K')
+                && (((signature[2] == 3) && (signature[3] == 4))
+                        || ((signature[2] == 5) && (signature[3] == 6)));
     }
 
     /**
@@ -413,6 +554,7 @@ public class ZipfileHandler implements ArchiveHandler {
 
         // self-explaining
         int numberOfBytesToWrite;
+        byte[] buffer = new byte[BUFFER_SIZE];
 
         // if the inputlocation is no valid path to a file or a folder an
         // exception is thrown
@@ -470,8 +612,8 @@ public class ZipfileHandler implements ArchiveHandler {
                     zOutStream.putNextEntry(entry);
 
                     // read from fileInputStream and write all bytes to zipFile
-                    while ((numberOfBytesToWrite = fInStream.read(FILEBUFFER)) > 0) {
-                        zOutStream.write(FILEBUFFER, 0, numberOfBytesToWrite);
+                    while ((numberOfBytesToWrite = fInStream.read(buffer)) > 0) {
+                        zOutStream.write(buffer, 0, numberOfBytesToWrite);
                     }
 
                     zOutStream.closeEntry();
@@ -17,10 +17,7 @@
 
 package de.teamgrit.grit.preprocess.fetch;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
@@ -37,6 +34,8 @@ import java.util.logging.Logger;
 import de.teamgrit.grit.preprocess.Connection;
 import de.teamgrit.grit.preprocess.sql_connector.SqlConnector;
 import de.teamgrit.grit.preprocess.tokenize.Submission;
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
 
 /**
  * This class implements an ILIASFetcher, it  is capable of fetching {@link Submission} from an
@@ -234,44 +233,33 @@ public class IliasFetcher {
         List<String> scpCommand = createScpCommand(files, targetDirectory,
                 iliasLocation, sshLoginName, sshKeyFileLocation);
 
-        // build process: construct command and set working directory.
-        Process scpProcess = null;
-        ProcessBuilder scpProcessBuilder = new ProcessBuilder(scpCommand);
-        scpProcessBuilder.directory(targetDirectory.toFile());
-
+        // run scp in the target directory and wait until it's done.
+        ProcessResult scpResult;
         try {
-            scpProcess = scpProcessBuilder.start();
+            scpResult =
+                    new ProcessRunner(scpCommand).directory(targetDirectory)
+                            .redirectErrorStream(true).run();
         } catch (IOException e) {
             LOGGER.severe("Error while starting scp: " + e.getMessage());
-        }
-
-        // wait until it's done.
-        try {
-            scpProcess.waitFor();
+            return false;
         } catch (InterruptedException e) {
             LOGGER.severe("Interrupted while waiting for SCP. "
                     + "Cannot guarantee clean command run!" + e.getMessage());
+            Thread.currentThread().interrupt();
             return false;
         }
 
         // get output from ssh
-        InputStream scpErrorStream = scpProcess.getErrorStream();
-        InputStreamReader scpStreamReader = new InputStreamReader(
-                scpErrorStream);
-        BufferedReader scpOutputBuffer = new BufferedReader(scpStreamReader);
-        String line;
-
-        try {
-            while ((line = scpOutputBuffer.readLine()) != null) {
-                LOGGER.info("SSH:: " + line);
-            }
-        } catch (IOException e) {
-            LOGGER.severe("Error while reading from scp stream."
-                    + e.getMessage());
+        for (String line : scpResult.getOutputLines()) {
+            LOGGER.info("SSH:: " + line);
+        }
+        if (scpResult.isTimedOut()) {
+            LOGGER.severe("SCP didn't finish in time and was killed.");
+            return false;
         }
 
         // check return value
-        switch (scpProcess.exitValue()) {
+        switch (scpResult.getExitValue()) {
         case 0:
             // all is well :)
             return true;
@@ -283,7 +271,7 @@ public class IliasFetcher {
             return false;
         default:
             LOGGER.severe("Unknown SSH/SCP return code: "
-                    + scpProcess.exitValue()
+                    + scpResult.getExitValue()
                     + " (Check the scp manual or RFC4253");
             return false;
         }
@@ -17,10 +17,7 @@
 
 package de.teamgrit.grit.preprocess.fetch;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
@@ -28,14 +25,19 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import de.teamgrit.grit.preprocess.Connection;
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
 
 /**
  * This SVNFetcher is able  to fetch
@@ -48,6 +50,17 @@ public final class SvnFetcher {
 
     private static final Logger LOGGER = Logger.getLogger("systemlog");
 
+    /* text, properties, lock and tree conflict status of an updated path */
+    private static final int STATUS_COLUMNS = 4;
+    private static final Pattern STATUS_LINE = Pattern
+            .compile("(?=.{0,3}[ADUCGEBR])[ ADUCGEBR]{4} .+");
+    private static final Pattern REVISION_LINE = Pattern
+            .compile("(?:At|Updated to) revision (\\d+)\\.");
+
+    /* svn translates its messages, the output is only parsed in English */
+    private static final String LOCALE_VARIABLE = "LC_ALL";
+    private static final String PLAIN_LOCALE = "C";
+
     /**
      * This is a static class, so no instances required.
      */
@@ -72,12 +85,33 @@ public final class SvnFetcher {
     public static Path fetchSubmissions(
             final Connection connection, final Path targetDirectory)
             throws SubmissionFetchingException {
+        return updateSubmissions(connection, targetDirectory).getWorkingCopy();
+    }
+
+    /**
+     * Fetches from a remote svn repository like
+     * {@link #fetchSubmissions(Connection, Path)} and reports what the update
+     * changed, parsed from the output of svn update.
+     *
+     * @param connection
+     *            contains login information and address of remote svn
+     * @param targetDirectory
+     *            directory in which the checkout will be placed
+     * @return the working copy, its revision and the changed paths
+     * @throws SubmissionFetchingException
+     *             if the fetching fails
+     */
+    public static SvnUpdate updateSubmissions(
+            final Connection connection, final Path targetDirectory)
+            throws SubmissionFetchingException {
         if (!checkConnectionToRemoteSVN(connection.getLocation())) {
             throw new SubmissionFetchingException(
                     "No connection to remote SVN.");
         }
+        boolean checkedOut = false;
         if (!isDataSourceInitialized(targetDirectory)) {
             initializeDataSource(connection, targetDirectory);
+            checkedOut = true;
         }
 
         Path newTargetDirectory =
@@ -118,7 +152,82 @@ public final class SvnFetcher {
 
         LOGGER.info("Done fetching from SVN Repository.");
 
-        return newTargetDirectory;
+        SvnUpdate update =
+                parseUpdateOutput(newTargetDirectory, checkedOut,
+                        svnResult.getSvnOutputLines());
+        long revision = readRevision(newTargetDirectory);
+        if (revision < 0) {
+            revision = update.getRevision();
+        }
+        if (revision < 0) {
+            LOGGER.warning("Could not read the revision of "
+                    + newTargetDirectory + ".");
+        }
+        return new SvnUpdate(newTargetDirectory, revision, checkedOut,
+                update.getChangedPaths());
+    }
+
+    /**
+     * Asks svn info for the revision of a working copy. Needs svn 1.9 or
+     * later, older versions only report it in the output of svn update.
+     *
+     * @param workingCopy
+     *            the root of the working copy
+     * @return the revision or -1 if it can't be determined
+     */
+    private static long readRevision(Path workingCopy) {
+        List<String> svnCommand = new LinkedList<>();
+        svnCommand.add("svn");
+        svnCommand.add("info");
+        svnCommand.add("--show-item");
+        svnCommand.add("revision");
+        svnCommand.add("--non-interactive");
+        try {
+            ProcessResult result =
+                    new ProcessRunner(svnCommand).directory(workingCopy)
+                            .environment(LOCALE_VARIABLE, PLAIN_LOCALE)
+                            .run();
+            if ((result.getExitValue() == 0)
+                    && !result.getOutputLines().isEmpty()) {
+                return Long.parseLong(result.getOutputLines().get(0).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.fine("svn info could not report the revision: "
+                    + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the output of svn update. Every touched path is reported on a
+     * line of four status columns, a blank and the path relative to the
+     * working copy, the last line names the revision the working copy is at
+     * now.
+     *
+     * @param workingCopy
+     *            the root of the working copy
+     * @param checkedOut
+     *            true if the working copy was checked out before the update
+     * @param outputLines
+     *            the output of svn update
+     * @return the parsed update
+     */
+    private static SvnUpdate parseUpdateOutput(Path workingCopy,
+            boolean checkedOut, List<String> outputLines) {
+        long revision = -1;
+        List<Path> changedPaths = new ArrayList<>();
+        for (String line : outputLines) {
+            Matcher revisionLine = REVISION_LINE.matcher(line);
+            if (revisionLine.matches()) {
+                revision = Long.parseLong(revisionLine.group(1));
+            } else if (STATUS_LINE.matcher(line).matches()) {
+                changedPaths.add(Paths.get(line.substring(
+                        STATUS_COLUMNS + 1)));
+            }
+        }
+        return new SvnUpdate(workingCopy, revision, checkedOut, changedPaths);
     }
 
     /**
@@ -263,8 +372,7 @@ public final class SvnFetcher {
      *            repository).
      * @return A list of all output lines.
      * @throws IOException
-     *             Thrown when process can't be started or an error occurs
-     *             while reading its output
+     *             Thrown when process can't be started
      */
     private static SVNResultData runSVNCommand(
             Connection connection, List<String> svnCommand, Path workingDir)
@@ -287,33 +395,26 @@ public final class SvnFetcher {
             svnCommand.add(connection.getPassword());
         }
 
-        // build process: construct command and set working directory.
-        Process svnProcess = null;
-        ProcessBuilder svnProcessBuilder = new ProcessBuilder(svnCommand);
-        svnProcessBuilder.directory(workingDir.toFile());
-
-        svnProcess = svnProcessBuilder.start();
+        // run svn in the working directory, its error messages end up in
+        // the output as well
+        ProcessResult svnResult;
         try {
-            svnProcess.waitFor();
+            svnResult =
+                    new ProcessRunner(svnCommand).directory(workingDir)
+                            .environment(LOCALE_VARIABLE, PLAIN_LOCALE)
+                            .redirectErrorStream(true).run();
         } catch (InterruptedException e) {
             LOGGER.severe("Interrupted while waiting for SVN. "
                     + "Cannot guarantee clean command run!");
+            Thread.currentThread().interrupt();
             return null;
         }
-
-        InputStream svnOutputStream = svnProcess.getInputStream();
-        InputStreamReader svnStreamReader =
-                new InputStreamReader(svnOutputStream);
-        BufferedReader svnOutputBuffer = new BufferedReader(svnStreamReader);
-        String line;
-
-        List<String> svnOutputLines = new LinkedList<>();
-
-        while ((line = svnOutputBuffer.readLine()) != null) {
-            svnOutputLines.add(line);
+        if (svnResult.isTimedOut()) {
+            LOGGER.severe("SVN didn't finish in time and was killed.");
         }
 
-        return new SVNResultData(svnProcess.exitValue(), svnOutputLines);
+        return new SVNResultData(svnResult.getExitValue(),
+                svnResult.getOutputLines());
     }
 
     /**
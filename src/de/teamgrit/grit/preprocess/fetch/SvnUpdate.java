@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.preprocess.fetch;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of fetching from a SVN repository: where the working copy is,
+ * which revision it is at and which paths the update touched.
+ */
+public class SvnUpdate {
+
+    private final Path m_workingCopy;
+    private final long m_revision;
+    private final boolean m_checkedOut;
+    private final List<Path> m_changedPaths;
+
+    /**
+     * Creates an update result.
+     *
+     * @param workingCopy
+     *            the root of the working copy
+     * @param revision
+     *            the revision the working copy is at, -1 if unknown
+     * @param checkedOut
+     *            true if the working copy was checked out from scratch
+     * @param changedPaths
+     *            the paths the update touched, relative to the working copy
+     */
+    SvnUpdate(Path workingCopy, long revision, boolean checkedOut,
+            List<Path> changedPaths) {
+        m_workingCopy = workingCopy;
+        m_revision = revision;
+        m_checkedOut = checkedOut;
+        m_changedPaths = Collections.unmodifiableList(changedPaths);
+    }
+
+    /**
+     * @return the root of the working copy
+     */
+    public Path getWorkingCopy() {
+        return m_workingCopy;
+    }
+
+    /**
+     * @return the revision the working copy is at, -1 if svn didn't report
+     *         it
+     */
+    public long getRevision() {
+        return m_revision;
+    }
+
+    /**
+     * A fresh checkout doesn't report the files it created, everything in
+     * the working copy has to be considered changed then.
+     *
+     * @return true if the working copy was checked out from scratch
+     */
+    public boolean isCheckedOut() {
+        return m_checkedOut;
+    }
+
+    /**
+     * @return the paths added, updated, merged or deleted by the update,
+     *         relative to the working copy
+     */
+    public List<Path> getChangedPaths() {
+        return m_changedPaths;
+    }
+}
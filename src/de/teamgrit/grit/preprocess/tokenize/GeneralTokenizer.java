@@ -19,18 +19,26 @@ package de.teamgrit.grit.preprocess.tokenize;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.zip.ZipException;
 
 import org.apache.commons.io.FilenameUtils;
 
 import de.teamgrit.grit.preprocess.Student;
-import de.teamgrit.grit.preprocess.archivehandling.ArchiveHandler;
+import de.teamgrit.grit.preprocess.archivehandling.ExtractionLimitException;
+import de.teamgrit.grit.preprocess.archivehandling.ExtractionLimits;
 import de.teamgrit.grit.preprocess.archivehandling.ZipfileHandler;
 import de.teamgrit.grit.util.config.NoProperParameterException;
 
@@ -49,20 +57,23 @@ public class GeneralTokenizer implements Tokenizer {
 
     private List<Path> m_emptyLocations = null;
 
+    /* archives found while traversing, keyed by the folder to unpack into */
+    private Map<Path, File> m_archives = null;
+
     private final Logger m_log = Logger.getLogger("systemlog");
 
     // these objects indicate the files we are searching for by specifying the
-    // file extension
-    private final String m_sourceSuffixRegex;
-    private final String m_archiveRegex;
+    // file extension, compiled once for all files
+    private final Pattern m_sourcePattern;
+    private final Pattern m_archivePattern;
 
     /**
      * Instantiates a new Tokenizer. Arguments are Regexes that match source
      * files and archive files respectively.
      */
     public GeneralTokenizer(String suffixRegexes, String newArchiveRegexes) {
-        m_sourceSuffixRegex = suffixRegexes;
-        m_archiveRegex = newArchiveRegexes;
+        m_sourcePattern = Pattern.compile(suffixRegexes);
+        m_archivePattern = Pattern.compile(newArchiveRegexes);
     }
 
     /**
@@ -83,26 +94,96 @@ public class GeneralTokenizer implements Tokenizer {
 
         // list to log all students that have not submitted anything
         m_emptyLocations = new ArrayList<>();
+        m_archives = new HashMap<>();
 
-        // first make sure we have got stuff to check at all
-        if ((location.toFile().listFiles() == null)
-                || (location.toFile().listFiles().length == 0)) {
+        // first make sure we have got stuff to check at all, traverse
+        // returns nothing for an empty directory
+        if (!Files.isDirectory(location)) {
             // then return nothing.
             return new LinkedList<>();
         }
 
-        List<Submission> foundSubmissions = new LinkedList<>();
-
         // We are now at TOPLEVEL, which is location
         // now we recursively traverse along the given structure
-        List<Path> allSubmissionPaths = traverse(
-                submissionStructure.getStructure(), location);
+        List<Path> allSubmissionPaths = traverse(submissionStructure, location);
+
+        return createSubmissions(allSubmissionPaths);
+    }
+
+    /**
+     * Explores a single subtree of a submission directory, e.g. the directory
+     * of one student whose files changed. The subtree is validated against
+     * the levels of the structure it lies on, below it the structure is
+     * traversed just like in
+     * {@link #exploreSubmissionDirectory(SubmissionStructure, Path)}.
+     * {@link #getEmptySubmissions()} afterwards only contains the empty
+     * locations of the subtree.
+     * 
+     * @param submissionStructure
+     *            A valid structure the location will be validated against.
+     * @param location
+     *            the toplevel of the submission directory
+     * @param subtree
+     *            a directory below the toplevel, at most as deep as the
+     *            submission level
+     * @return the submissions found in the subtree, an empty list if the
+     *         subtree doesn't exist or doesn't match the structure
+     * @throws MaximumDirectoryDepthExceededException
+     *             when maxDirectoryDepth is exceeded while traversing
+     *             directories.
+     */
+    public List<Submission> exploreSubmissionSubtree(
+            SubmissionStructure submissionStructure, Path location,
+            Path subtree) throws MaximumDirectoryDepthExceededException {
+
+        m_emptyLocations = new ArrayList<>();
+        m_archives = new HashMap<>();
+
+        if (!Files.isDirectory(subtree) || !subtree.startsWith(location)) {
+            return new LinkedList<>();
+        }
+
+        // the directories between toplevel and subtree have to match the
+        // levels of the structure they are on
+        Path relative = location.relativize(subtree);
+        int level = 1;
+        if (!relative.toString().isEmpty()) {
+            for (Path directory : relative) {
+                if ((level >= submissionStructure.getStructure().size())
+                        || submissionStructure.isSubmissionLevel(level)
+                        || !submissionStructure.getPatterns().get(level)
+                                .matcher(directory.toString()).matches()) {
+                    return new LinkedList<>();
+                }
+                level++;
+            }
+        }
+
+        return createSubmissions(traverse(submissionStructure, level,
+                subtree));
+    }
+
+    /**
+     * Creates a submission object for each submission location found while
+     * traversing.
+     * 
+     * @param allSubmissionPaths
+     *            the locations of the submissions
+     * @return the submissions
+     */
+    private List<Submission> createSubmissions(List<Path> allSubmissionPaths) {
+        List<Submission> foundSubmissions = new LinkedList<>();
 
         // For each file we found we add a submission object
         int i = 0;
         for (Path submissionFile : allSubmissionPaths) {
             Submission submission = new Submission(submissionFile, new Student(
                     "Unknown" + i));
+            // archives are unpacked when the submission is processed
+            File archive = m_archives.get(submissionFile);
+            if (archive != null) {
+                submission.setArchive(archive);
+            }
             foundSubmissions.add(submission);
             i++;
         }
@@ -122,7 +203,7 @@ public class GeneralTokenizer implements Tokenizer {
      *             When other traverse method throws this method passes it
      *             along.
      */
-    private List<Path> traverse(List<String> structure, Path location)
+    private List<Path> traverse(SubmissionStructure structure, Path location)
             throws MaximumDirectoryDepthExceededException {
         return traverse(structure, 1, location);
     }
@@ -130,7 +211,8 @@ public class GeneralTokenizer implements Tokenizer {
     /**
      * Traverses a directory tree, only considering directories that match the
      * ones specified in {@link SubmissionStructure}. When reaching the lowest
-     * level, submissions are gathered.
+     * level, submissions are gathered. Every directory is listed once and the
+     * structure is matched with its precompiled patterns.
      * 
      * @param structure
      *            A StrcutureObj containing a description of how folders
@@ -146,10 +228,10 @@ public class GeneralTokenizer implements Tokenizer {
      *             when maxDirectoryDepth is exceeded while traversing
      *             directories.
      */
-    private List<Path> traverse(List<String> structure, int level, Path location)
-            throws MaximumDirectoryDepthExceededException {
+    private List<Path> traverse(SubmissionStructure structure, int level,
+            Path location) throws MaximumDirectoryDepthExceededException {
 
-        m_log.info("traverse: " + location.toString());
+        m_log.fine("traverse: " + location);
 
         // If we went too deep, we abort here in order to avoid exploding our
         // stackspace
@@ -161,7 +243,7 @@ public class GeneralTokenizer implements Tokenizer {
         }
 
         // If we have reached the bottom, we can scan for files.
-        if ("SUBMISSION".equals(structure.get(level))) {
+        if (structure.isSubmissionLevel(level)) {
             // look for files.
             m_log.config("Bottomed out in " + location);
             List<Path> submission = extractSubmissionFiles(location);
@@ -174,29 +256,31 @@ public class GeneralTokenizer implements Tokenizer {
         }
 
         List<Path> foundSubmissions = new LinkedList<>();
-
-        // ensure that empty dirs are handled properly
-        if ((location.toFile().listFiles() == null)
-                || (location.toFile().listFiles().length == 0)) {
-            m_log.info("No files in " + location.toString());
-            return new LinkedList<>();
-        }
+        Pattern directoryPattern = structure.getPatterns().get(level);
+        boolean logFiles = m_log.isLoggable(Level.FINE);
 
         // If we are not too deep and not in the final level, go through all
-        // directories here and go one level deeper.
-        for (File currentFile : location.toFile().listFiles()) {
-            m_log.info("looking at " + currentFile.toString());
-            if (currentFile.isDirectory()) {
+        // directories here and go one level deeper. Empty dirs yield nothing.
+        try (DirectoryStream<Path> entries =
+                Files.newDirectoryStream(location)) {
+            for (Path entry : entries) {
+                if (!Files.isDirectory(entry)) {
+                    continue;
+                }
                 // does this directory match our structure spec?
-                if (currentFile.getName().matches(structure.get(level))) {
+                if (directoryPattern.matcher(entry.getFileName().toString())
+                        .matches()) {
                     // if so, traverse it and collect everything it returns.
                     foundSubmissions.addAll(traverse(structure, (level + 1),
-                            currentFile.toPath()));
-                } else {
-                    m_log.info("Unexpected file: " + currentFile.toString()
-                            + " to " + structure.get(level));
+                            entry));
+                } else if (logFiles) {
+                    m_log.fine("Unexpected file: " + entry + " to "
+                            + directoryPattern.pattern());
                 }
             }
+        } catch (IOException e) {
+            m_log.warning("Could not list " + location + ": "
+                    + e.getMessage());
         }
 
         return foundSubmissions;
@@ -212,43 +296,73 @@ public class GeneralTokenizer implements Tokenizer {
      */
     private List<Path> extractSubmissionFiles(Path location) {
         List<Path> submissionFiles = new LinkedList<>();
-
-        m_log.info("Extracting files.");
+        boolean hasSourceFiles = false;
+        boolean logFiles = m_log.isLoggable(Level.FINE);
 
         // Check if our location has any submissions files (as recognized by
         // their suffix. if so, note it.
-        for (File currentFile : location.toFile().listFiles()) {
-
-            // unpack archives
-            if (currentFile.toString().matches(m_archiveRegex)) {
-                try {
-                    // the number indicates to which level of a zipfile nested
-                    // zipfiles will be extracted
-                    ArchiveHandler unzipper = new ZipfileHandler(5, Paths.get(
-                            ".").toFile());
-
-                    Path unzippedDir = Paths.get(FilenameUtils
-                            .removeExtension(currentFile.toString()));
-
-                    unzipper.extractZip(currentFile, unzippedDir.toFile());
-
+        try (DirectoryStream<Path> entries =
+                Files.newDirectoryStream(location)) {
+            for (Path entry : entries) {
+                String name = entry.toString();
+
+                // remember archives, they are unpacked by Submission#extract()
+                if (m_archivePattern.matcher(name).matches()) {
+                    Path unzippedDir =
+                            Paths.get(FilenameUtils.removeExtension(name));
+                    m_archives.put(unzippedDir, entry.toFile());
                     submissionFiles.add(unzippedDir);
-
-                } catch (FileNotFoundException | ZipException e) {
-                    m_log.info("Error while unzipping ilias submission"
-                            + e.getMessage());
-                } catch (NoProperParameterException e) {
-                    m_log.info("Bad parameters for zip." + e.getMessage());
-                }
-            } else if (currentFile.toString().matches(m_sourceSuffixRegex)) {
-                m_log.info("Found: " + currentFile.toString());
-                if (!submissionFiles.contains(location)) {
-                    submissionFiles.add(location);
+                } else if (m_sourcePattern.matcher(name).matches()) {
+                    if (logFiles) {
+                        m_log.fine("Found: " + name);
+                    }
+                    hasSourceFiles = true;
+                } else if (logFiles) {
+                    m_log.fine("found invalid file: " + name);
                 }
-            } else {
-                m_log.info("found invalid file: " + currentFile.toString());
             }
+        } catch (IOException e) {
+            m_log.warning("Could not list " + location + ": "
+                    + e.getMessage());
+        }
+        if (hasSourceFiles) {
+            submissionFiles.add(0, location);
         }
         return submissionFiles;
     }
+
+    /**
+     * Unpacks the archive of a submission.
+     * 
+     * @param archive
+     *            the archive
+     * @param target
+     *            the folder to unpack into
+     * @param limits
+     *            the limits the archive has to stay within
+     * @throws ExtractionLimitException
+     *             if the archive exceeds a limit, nothing is left behind then
+     * @throws IOException
+     *             if the archive can't be unpacked
+     */
+    public static void extractArchive(File archive, Path target,
+            ExtractionLimits limits) throws IOException {
+        try {
+            // the limits also decide to which level of a zipfile nested
+            // zipfiles will be extracted
+            ZipfileHandler unzipper =
+                    new ZipfileHandler(limits.getMaxDepth(), Paths.get(".")
+                            .toFile());
+            unzipper.setExtractionLimits(limits);
+            unzipper.extractZip(archive, target.toFile());
+        } catch (ExtractionLimitException e) {
+            throw e;
+        } catch (FileNotFoundException | ZipException e) {
+            throw new IOException("Error while unzipping " + archive + ": "
+                    + e.getMessage(), e);
+        } catch (NoProperParameterException e) {
+            throw new IOException("Bad parameters for zip: "
+                    + e.getMessage(), e);
+        }
+    }
 }
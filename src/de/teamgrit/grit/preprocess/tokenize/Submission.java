@@ -17,11 +17,18 @@
 
 package de.teamgrit.grit.preprocess.tokenize;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.logging.Logger;
 
 import de.teamgrit.grit.checking.CheckingResult;
 import de.teamgrit.grit.checking.plausibility.SubmissionPlausibilityChecker;
 import de.teamgrit.grit.preprocess.Student;
+import de.teamgrit.grit.preprocess.archivehandling.ExtractionLimitException;
+import de.teamgrit.grit.preprocess.archivehandling.ExtractionLimits;
+import de.teamgrit.grit.util.hashing.FileHashCache;
+import de.teamgrit.grit.util.hashing.SHA1Generator;
 
 /**
  * 
@@ -36,6 +43,8 @@ import de.teamgrit.grit.preprocess.Student;
 
 public class Submission {
 
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
     private Path m_sourceCodeLocation;
 
     private CheckingResult m_result;
@@ -47,6 +56,14 @@ public class Submission {
 
     private String m_sha1Hash;
 
+    private SubmissionManifest m_manifest;
+
+    /* the archive to unpack into the source code location, if not done yet */
+    private File m_archive;
+
+    /* why the archive wasn't unpacked, null if it was or there is none */
+    private String m_extractionProblem;
+
     /**
      * Creates a {@link Submission}.
      * 
@@ -71,6 +88,125 @@ public class Submission {
         return m_sourceCodeLocation;
     }
 
+    /**
+     * Sets an archive that is unpacked into the source code location by
+     * {@link #extract()}. The tokenizer only records archives, so unpacking
+     * happens when the submission is processed.
+     * 
+     * @param archive
+     *            the archive the submission was turned in as
+     */
+    public synchronized void setArchive(File archive) {
+        m_archive = archive;
+        m_manifest = null;
+    }
+
+    /**
+     * Unpacks the archive of the submission within the default limits, see
+     * {@link #extract(ExtractionLimits)}.
+     * 
+     * @throws IOException
+     *             if the source code location can't be read
+     */
+    public void extract() throws IOException {
+        extract(ExtractionLimits.DEFAULT);
+    }
+
+    /**
+     * Unpacks the archive of the submission, if there is one that wasn't
+     * unpacked yet, and lists the files of the submission. An archive that
+     * exceeds the limits or can't be unpacked is left packed and the reason
+     * is recorded, see {@link #getExtractionProblem()}.
+     * 
+     * @param limits
+     *            the limits the archive has to stay within
+     * @throws IOException
+     *             if the source code location can't be read
+     */
+    public synchronized void extract(ExtractionLimits limits)
+            throws IOException {
+        if (m_archive != null) {
+            try {
+                GeneralTokenizer.extractArchive(m_archive,
+                        m_sourceCodeLocation, limits);
+            } catch (ExtractionLimitException e) {
+                m_extractionProblem = e.getMessage();
+            } catch (IOException e) {
+                // a broken archive is reported like one that exceeds the
+                // limits, the student must not vanish from the results
+                LOGGER.warning("Could not unpack " + m_archive + ": "
+                        + e.getMessage());
+                m_extractionProblem =
+                        "archive " + m_archive.getName()
+                                + " is broken or not a zip archive";
+            }
+            m_archive = null;
+            m_manifest = null;
+        }
+        if ((m_manifest == null) && (m_sourceCodeLocation != null)) {
+            m_manifest = SubmissionManifest.create(m_sourceCodeLocation);
+        }
+    }
+
+    /**
+     * Gets the files of the submission. If {@link #extract()} wasn't called
+     * yet, it is called now.
+     * 
+     * @return the manifest or null if the submission can't be unpacked or
+     *         read
+     */
+    public synchronized SubmissionManifest getManifest() {
+        if (m_manifest == null) {
+            try {
+                extract();
+            } catch (IOException e) {
+                LOGGER.warning("Could not list the files of "
+                        + m_sourceCodeLocation + ": " + e.getMessage());
+            }
+        }
+        return m_manifest;
+    }
+
+    /**
+     * Gets why the archive of the submission wasn't unpacked.
+     * 
+     * @return the exceeded limit or why the archive is broken, null if it
+     *         was unpacked or there is none
+     */
+    public synchronized String getExtractionProblem() {
+        return m_extractionProblem;
+    }
+
+    /**
+     * Sets the files of the submission.
+     * 
+     * @param manifest
+     *            the manifest of the source code location
+     */
+    public void setManifest(SubmissionManifest manifest) {
+        m_manifest = manifest;
+    }
+
+    /**
+     * Calculates the SHA-1 hash of the submission from its manifest and
+     * stores it.
+     * 
+     * @param hashCache
+     *            the hashes of unchanged files, may be null
+     * @throws IOException
+     *             if a file can not be read
+     */
+    public void updateSHA1Hash(FileHashCache hashCache) throws IOException {
+        SubmissionManifest manifest = getManifest();
+        if (manifest != null) {
+            m_sha1Hash = manifest.calculateSHA1Hash(hashCache);
+        } else {
+            m_sha1Hash =
+                    SHA1Generator.calculateSHA1Hash(m_sourceCodeLocation,
+                            null, hashCache);
+        }
+    }
+
     /**
      * Gets the result.
      * 
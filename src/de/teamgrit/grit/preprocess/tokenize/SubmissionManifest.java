@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.preprocess.tokenize;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import de.teamgrit.grit.entities.LanguageType;
+import de.teamgrit.grit.util.hashing.FileHashCache;
+import de.teamgrit.grit.util.hashing.SHA1Generator;
+
+/**
+ * The files of a {@link Submission}, collected in a single walk over its
+ * source code location when the submission is tokenized. Plausibility
+ * checks, hashing, compiling and report generation all work on this list
+ * instead of walking the submission again.
+ */
+public class SubmissionManifest {
+
+    private static final Pattern JAVA_FILE = Pattern
+            .compile(".+\\.[Jj][Aa][Vv][Aa]");
+    private static final Pattern HASKELL_FILE = Pattern
+            .compile(".+\\.([Ll])?[Hh][Ss]");
+    private static final Pattern C_FILE = Pattern.compile(".+\\.[CcHh]");
+    private static final Pattern CPP_FILE = Pattern
+            .compile(".+\\.[Cc][Pp][Pp]");
+
+    private final Path m_root;
+
+    /* the files keyed by their path relative to the root */
+    private final SortedMap<String, BasicFileAttributes> m_files;
+
+    private final LanguageType m_language;
+
+    private Map<String, String> m_fileHashes = null;
+
+    /**
+     * Creates a manifest from collected files.
+     *
+     * @param root
+     *            the source code location
+     * @param files
+     *            the files below the root
+     */
+    private SubmissionManifest(Path root,
+            SortedMap<String, BasicFileAttributes> files) {
+        m_root = root;
+        m_files = files;
+        m_language = detectLanguage(files.keySet());
+    }
+
+    /**
+     * Walks a source code location and records all regular files below it.
+     *
+     * @param root
+     *            the source code location of a submission
+     * @return the manifest of the location
+     * @throws IOException
+     *             if the location can't be walked
+     */
+    public static SubmissionManifest create(final Path root)
+            throws IOException {
+        final SortedMap<String, BasicFileAttributes> files = new TreeMap<>();
+        if (Files.isDirectory(root)) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file,
+                        BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.put(SHA1Generator.toRelativeName(root, file),
+                                attrs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return new SubmissionManifest(root, files);
+    }
+
+    /**
+     * Gets the source code location the manifest was created from.
+     *
+     * @return the source code location
+     */
+    public Path getRoot() {
+        return m_root;
+    }
+
+    /**
+     * Gets all files of the submission, sorted by their relative path.
+     *
+     * @return the absolute paths of the files
+     */
+    public List<Path> getFiles() {
+        List<Path> files = new ArrayList<>(m_files.size());
+        for (String name : m_files.keySet()) {
+            files.add(m_root.resolve(name));
+        }
+        return files;
+    }
+
+    /**
+     * Gets the files of the submission whose path matches a regex. The regex
+     * is matched against the whole path, just like the directory walkers do.
+     *
+     * @param regex
+     *            the regex the paths have to match
+     * @return the absolute paths of the matching files
+     */
+    public List<Path> getFiles(String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        List<Path> files = new ArrayList<>();
+        for (Path file : getFiles()) {
+            if (pattern.matcher(file.toString()).matches()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Gets the number of files of the submission.
+     *
+     * @return the number of files
+     */
+    public int getFileCount() {
+        return m_files.size();
+    }
+
+    /**
+     * Gets the size of a file of the submission.
+     *
+     * @param file
+     *            the absolute path of the file
+     * @return the size in bytes or -1 if the file isn't part of the
+     *         submission
+     */
+    public long getSize(Path file) {
+        BasicFileAttributes attributes =
+                m_files.get(SHA1Generator.toRelativeName(m_root, file));
+        return (attributes == null) ? -1 : attributes.size();
+    }
+
+    /**
+     * Gets the size of all files of the submission.
+     *
+     * @return the size in bytes
+     */
+    public long getTotalSize() {
+        long size = 0;
+        for (BasicFileAttributes attributes : m_files.values()) {
+            size += attributes.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the language most source files of the submission are written in.
+     *
+     * @return the language or null if there are no source files
+     */
+    public LanguageType getLanguage() {
+        return m_language;
+    }
+
+    /**
+     * Calculates the SHA-1 hash of the submission from the recorded files,
+     * without walking the source code location again. The hashes of the
+     * single files are kept, see {@link #getFileHashes()}.
+     *
+     * @param hashCache
+     *            the hashes of unchanged files, may be null
+     * @return the hash in a string
+     * @throws IOException
+     *             if a file can not be read
+     */
+    public String calculateSHA1Hash(FileHashCache hashCache)
+            throws IOException {
+        Map<String, String> fileHashes = new TreeMap<>();
+        String hash =
+                SHA1Generator.calculateSHA1Hash(m_root, m_files, fileHashes,
+                        hashCache);
+        m_fileHashes = Collections.unmodifiableMap(fileHashes);
+        return hash;
+    }
+
+    /**
+     * Gets the hashes of the single files, keyed by their path relative to
+     * the source code location.
+     *
+     * @return the hashes or null if {@link #calculateSHA1Hash(FileHashCache)}
+     *         wasn't called yet
+     */
+    public Map<String, String> getFileHashes() {
+        return m_fileHashes;
+    }
+
+    /**
+     * Counts the source files of each language and picks the most common
+     * one.
+     *
+     * @param names
+     *            the relative paths of the files
+     * @return the language or null if there are no source files
+     */
+    private static LanguageType detectLanguage(Iterable<String> names) {
+        Map<LanguageType, Integer> counts = new EnumMap<>(LanguageType.class);
+        for (String name : names) {
+            LanguageType language = null;
+            if (JAVA_FILE.matcher(name).matches()) {
+                language = LanguageType.JAVA;
+            } else if (HASKELL_FILE.matcher(name).matches()) {
+                language = LanguageType.HASKELL;
+            } else if (CPP_FILE.matcher(name).matches()) {
+                language = LanguageType.CPP;
+            } else if (C_FILE.matcher(name).matches()) {
+                language = LanguageType.C;
+            }
+            if (language != null) {
+                Integer count = counts.get(language);
+                counts.put(language, (count == null) ? 1 : count + 1);
+            }
+        }
+        LanguageType detected = null;
+        int maximum = 0;
+        for (Map.Entry<LanguageType, Integer> count : counts.entrySet()) {
+            if (count.getValue() > maximum) {
+                detected = count.getKey();
+                maximum = count.getValue();
+            }
+        }
+        return detected;
+    }
+}
@@ -17,6 +17,8 @@
 
 package de.teamgrit.grit.preprocess.tokenize;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -32,6 +34,9 @@ public class SubmissionStructure {
 
     private List<String> m_submissionStructure;
 
+    /* the structure compiled once, matched against every directory */
+    private List<Pattern> m_patterns;
+
     /**
      * Initializes the structure with a structure form the config. Syntax of
      * the list elements is:
@@ -67,9 +72,10 @@ public class SubmissionStructure {
             throw new InvalidStructureException("No SUBMISSION tag found");
         }
 
+        List<Pattern> patterns = new ArrayList<>(structure.size());
         for (String regex : structure) {
             try {
-                Pattern.compile(regex);
+                patterns.add(Pattern.compile(regex));
             } catch (PatternSyntaxException regexException) {
                 throw new InvalidStructureException(
                         regexException.getMessage());
@@ -77,6 +83,7 @@ public class SubmissionStructure {
         }
 
         m_submissionStructure = structure;
+        m_patterns = Collections.unmodifiableList(patterns);
     }
 
     /**
@@ -87,4 +94,26 @@ public class SubmissionStructure {
     public List<String> getStructure() {
         return m_submissionStructure;
     }
+
+    /**
+     * Gets the compiled regular expressions of the structure, in the same
+     * order as {@link #getStructure()}.
+     * 
+     * @return the patterns
+     */
+    public List<Pattern> getPatterns() {
+        return m_patterns;
+    }
+
+    /**
+     * Checks whether a level of the structure is the one containing the
+     * submissions.
+     * 
+     * @param level
+     *            the index into the structure
+     * @return true if the level is SUBMISSION
+     */
+    public boolean isSubmissionLevel(int level) {
+        return "SUBMISSION".equals(m_submissionStructure.get(level));
+    }
 }
@@ -17,18 +17,26 @@
 
 package de.teamgrit.grit.report;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.output.FileWriterWithEncoding;
 
 import de.teamgrit.grit.preprocess.Student;
+import de.teamgrit.grit.report.PdfDocument.Font;
 
 /**
  * The PdfConcatinator is an utility class to merge the pdfs generated by the
@@ -42,6 +50,10 @@ public class PdfConcatenator {
 
     private static final Logger LOGGER = Logger.getLogger("systemlog");
 
+    private static final String PART_PREFIX = ".report-";
+
+    private static final float MARGIN = 56;
+
     private PdfConcatenator(){
         // prevent instantiation
     }
@@ -64,11 +76,48 @@ public class PdfConcatenator {
     protected static Path concatPDFS(
             Path folderWithPdfs, Path outPath, String exerciseName,
             List<Student> studentsWithoutSubmissions) throws IOException {
+        return concatPDFS(folderWithPdfs, outPath, exerciseName,
+                studentsWithoutSubmissions, true);
+    }
+
+    /**
+     * Concatinates pdfs generated {@link TexGenerator}, either by copying
+     * their pages into report.pdf directly or by including them into a TeX
+     * file with pdfpages. If copying fails, pdfpages is used.
+     *
+     * @param folderWithPdfs
+     *            the folder with pdfs
+     * @param outPath
+     *            the out path
+     * @param exerciseName
+     *            the context
+     * @param studentsWithoutSubmissions
+     *            list of students who did not submit any solution
+     * @param nativeMerge
+     *            true to copy the pages without LaTeX
+     * @return the path to the created PDF, or to the TeX file with pdfpages
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    protected static Path concatPDFS(
+            Path folderWithPdfs, Path outPath, String exerciseName,
+            List<Student> studentsWithoutSubmissions, boolean nativeMerge)
+            throws IOException {
 
         if ((folderWithPdfs == null) || !Files.isDirectory(folderWithPdfs)) {
             throw new IOException("The Path doesn't point to a Folder");
         }
 
+        if (nativeMerge) {
+            try {
+                return mergePdfs(folderWithPdfs, outPath, exerciseName,
+                        studentsWithoutSubmissions);
+            } catch (IOException e) {
+                LOGGER.warning("Could not merge the reports directly, "
+                        + "using pdfpages instead: " + e.getMessage());
+            }
+        }
+
         File file = new File(outPath.toFile(), "report.tex");
 
         if (Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
@@ -87,6 +136,159 @@ public class PdfConcatenator {
 
     }
 
+    /**
+     * Writes report.pdf without LaTeX: the title page and the students
+     * without submission are drawn directly, the pages of the reports are
+     * copied one report after another.
+     *
+     * @param folderWithPdfs
+     *            the folder with pdfs
+     * @param outPath
+     *            the out path
+     * @param exerciseName
+     *            the name of the exercise
+     * @param studentsWithoutSubmissions
+     *            list of students who did not submit any solution
+     * @return the path to the created PDF
+     * @throws IOException
+     *             if a report can't be read or writing fails
+     */
+    private static Path mergePdfs(Path folderWithPdfs, Path outPath,
+            String exerciseName, List<Student> studentsWithoutSubmissions)
+            throws IOException {
+        List<Path> reports = new ArrayList<>();
+        File[] files = folderWithPdfs.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                // We only want the the PDFs as input
+                if (file.isFile()
+                        && "pdf".equals(FilenameUtils.getExtension(file
+                                .getName()))) {
+                    reports.add(file.toPath());
+                }
+            }
+        }
+        if (reports.isEmpty()) {
+            LOGGER.warning("No Reports available in the specified folder: "
+                    + folderWithPdfs.toString());
+        }
+        Collections.sort(reports);
+
+        Path file = outPath.resolve("report.pdf");
+        Path part = Files.createTempFile(outPath, PART_PREFIX, ".part");
+        try {
+            try (PdfOutput output =
+                    new PdfOutput(new BufferedOutputStream(
+                            Files.newOutputStream(part)))) {
+                try (PdfDocument document = new PdfDocument(output)) {
+                    drawTitlePage(document, exerciseName);
+                    drawMissingStudents(document, studentsWithoutSubmissions);
+                }
+                PdfMerger merger = new PdfMerger(output);
+                for (Path report : reports) {
+                    merger.append(PdfReader.read(report));
+                }
+            }
+            Files.move(part, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+        return file;
+    }
+
+    /**
+     * Draws the title page.
+     *
+     * @param document
+     *            the document
+     * @param exerciseName
+     *            the name of the exercise
+     * @throws IOException
+     *             if writing fails
+     */
+    private static void drawTitlePage(PdfDocument document,
+            String exerciseName) throws IOException {
+        float top = PdfDocument.PAGE_HEIGHT - MARGIN;
+        document.beginPage();
+        drawCentered(document, Font.REGULAR, 17, top - 40,
+                "UNIVERSITÄT KONSTANZ");
+        drawCentered(document, Font.REGULAR, 12, top - 100, "Korrektur");
+        document.drawRectangle(MARGIN, top - 120, PdfDocument.PAGE_WIDTH - 2
+                * MARGIN, 1.4f, true);
+        drawCentered(document, Font.BOLD, 24, top - 150, exerciseName);
+        document.drawRectangle(MARGIN, top - 170, PdfDocument.PAGE_WIDTH - 2
+                * MARGIN, 1.4f, true);
+        drawCentered(document, Font.REGULAR, 12, MARGIN + 40, DateFormat
+                .getDateInstance(DateFormat.LONG, Locale.GERMAN).format(
+                        new Date()));
+        document.endPage();
+    }
+
+    /**
+     * Draws the names of the students that didn't hand in a submission in
+     * two columns, on as many pages as needed.
+     *
+     * @param document
+     *            the document
+     * @param studentWithoutSubmissions
+     *            a list with students who did not submit any solution.
+     * @throws IOException
+     *             if writing fails
+     */
+    private static void drawMissingStudents(PdfDocument document,
+            List<Student> studentWithoutSubmissions) throws IOException {
+        // only write if there are any missing submissions
+        if ((studentWithoutSubmissions == null)
+                || studentWithoutSubmissions.isEmpty()) {
+            return;
+        }
+        float top = PdfDocument.PAGE_HEIGHT - MARGIN;
+        float column = (PdfDocument.PAGE_WIDTH - 2 * MARGIN) / 2;
+        float leading = 14;
+        float y = 0;
+        for (int i = 0; i < studentWithoutSubmissions.size(); i += 2) {
+            if (y < MARGIN) {
+                if (i > 0) {
+                    document.endPage();
+                }
+                document.beginPage();
+                document.drawText(Font.BOLD, 17, MARGIN, top - 17,
+                        "Studenten welche nicht abgegeben haben:");
+                y = top - 17 - 2 * leading;
+            }
+            for (int j = i; j < Math.min(i + 2, studentWithoutSubmissions
+                    .size()); j++) {
+                float x = MARGIN + (j - i) * column + 10;
+                document.drawText(Font.REGULAR, 10, x, y, "\u2022");
+                document.drawText(Font.REGULAR, 10, x + 12, y,
+                        studentWithoutSubmissions.get(j).getName());
+            }
+            y -= leading;
+        }
+        document.endPage();
+    }
+
+    /**
+     * Draws a centered line.
+     *
+     * @param document
+     *            the document
+     * @param font
+     *            the font
+     * @param size
+     *            the font size
+     * @param y
+     *            the baseline
+     * @param text
+     *            the text
+     */
+    private static void drawCentered(PdfDocument document, Font font,
+            float size, float y, String text) {
+        float width = PdfDocument.getWidth(font, size, text);
+        document.drawText(font, size, (PdfDocument.PAGE_WIDTH - width) / 2,
+                y, text);
+    }
+
     /**
      * Writes the preamble and title to the file.
      *
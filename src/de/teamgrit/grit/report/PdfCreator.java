@@ -17,16 +17,22 @@
 
 package de.teamgrit.grit.report;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
 import de.teamgrit.grit.preprocess.tokenize.Submission;
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
 
 /**
  * This class provides methods to create a pdf Report containing need
@@ -38,6 +44,9 @@ import de.teamgrit.grit.preprocess.tokenize.Submission;
 
 public abstract class PdfCreator {
 
+    /* prefix of the scratch directories scorecards are rendered in */
+    private static final String SCRATCH_PREFIX = ".render-";
+
     /**
      * Creates a pdf from a given Path to a .tex file.
      * 
@@ -64,9 +73,53 @@ public abstract class PdfCreator {
      */
     public static void createPdfFromPath(Path pathToTexFile, Path outputDir)
             throws IOException {
+        createPdfFromPath(pathToTexFile, outputDir, null);
+    }
+
+    /**
+     * Creates a pdf from a given Path to a .tex file in the given output
+     * directory, using a precompiled format instead of the regular LaTeX
+     * one.
+     * 
+     * @param pathToTexFile
+     *            A Path to a .tex file.
+     * @param outputDir
+     *            the output directory
+     * @param format
+     *            the format file without its extension, null for the
+     *            regular LaTeX format
+     * @throws IOException
+     *             If something goes wrong when executing pdflatex.
+     */
+    static void createPdfFromPath(Path pathToTexFile, Path outputDir,
+            Path format) throws IOException {
+        createPdfFromPath(pathToTexFile, outputDir, format,
+                Paths.get(System.getProperty("user.dir")));
+    }
+
+    /**
+     * Runs pdflatex on a .tex file.
+     * 
+     * @param pathToTexFile
+     *            A Path to a .tex file.
+     * @param outputDir
+     *            the output directory
+     * @param format
+     *            the format file without its extension, null for the
+     *            regular LaTeX format
+     * @param workingDir
+     *            the directory pdflatex runs in
+     * @throws IOException
+     *             If something goes wrong when executing pdflatex.
+     */
+    private static void createPdfFromPath(Path pathToTexFile,
+            Path outputDir, Path format, Path workingDir) throws IOException {
         List<String> compilerInvocation = new LinkedList<>();
 
         compilerInvocation.add("pdflatex");
+        if (format != null) {
+            compilerInvocation.add("-fmt=" + format.toString());
+        }
         compilerInvocation.add("-interaction=batchmode");
         compilerInvocation.add("--output-directory=" + outputDir.toString());
 
@@ -77,24 +130,23 @@ public abstract class PdfCreator {
             compilerInvocation.add(pathToTexFile.toString());
         }
 
-        Process compilerProcess;
-        ProcessBuilder compilerProcessBuilder = new ProcessBuilder(
-                compilerInvocation).redirectErrorStream(true);
-
-        compilerProcessBuilder.directory(new File(System
-                .getProperty("user.dir")));
-        compilerProcess = compilerProcessBuilder.start();
-
-        // we need to consume the output of pdflatex to stop it from
-        // freezing on windows
-        final InputStream stdout = compilerProcess.getInputStream();
-
-        // Fixes a bug with Windows (outputstream buffer is too small)
-        final byte[] devnull = new byte[2048];
-        while (stdout.read(devnull) != -1) {
-            ;
+        // the output of pdflatex is drained while it runs, a full pipe
+        // would stop it from finishing
+        ProcessResult compilerResult;
+        try {
+            compilerResult =
+                    new ProcessRunner(compilerInvocation)
+                            .redirectErrorStream(true).directory(workingDir)
+                            .run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running "
+                    + "pdflatex on " + pathToTexFile);
+        }
+        if (compilerResult.isTimedOut()) {
+            throw new IOException("pdflatex didn't finish in time on "
+                    + pathToTexFile);
         }
-
     }
 
     /**
@@ -117,8 +169,83 @@ public abstract class PdfCreator {
     protected static void createPdfFromSubmission(Submission submission,
             Path outdir, String courseName, String exerciseName)
             throws IOException {
-        createPdfFromPath(TexGenerator.generateTex(submission, outdir,
-                courseName, exerciseName));
+        renderIsolated(submission, outdir, courseName, exerciseName, null);
+    }
+
+    /**
+     * Creates a pdf Report from a given {@link Submission} against the
+     * precompiled preamble of {@link TexFormat}. Falls back to
+     * {@link #createPdfFromSubmission} if there is no precompiled preamble.
+     * 
+     * @param submission
+     *            A SubmissionObj containing the information that the content
+     *            gets generated from.
+     * @param outdir
+     *            the directory where the finished PDF is put.
+     * @param courseName
+     *            the name of the course the exercise belongs to
+     * @param exerciseName
+     *            the name of the exercise
+     * @throws IOException
+     *             If something goes wrong when executing pdflatex.
+     */
+    protected static void createPdfFromSubmissionPrecompiled(
+            Submission submission, Path outdir, String courseName,
+            String exerciseName) throws IOException {
+        Path format = TexFormat.getFormat();
+        if (format == null) {
+            createPdfFromSubmission(submission, outdir, courseName,
+                    exerciseName);
+            return;
+        }
+        renderIsolated(submission, outdir, courseName, exerciseName, format);
+    }
+
+    /**
+     * Renders a scorecard in a scratch directory of its own, so several
+     * scorecards can be rendered at the same time without sharing aux and
+     * log files. The finished PDF is moved into the output directory in one
+     * step, a half written PDF never shows up there.
+     * 
+     * @param submission
+     *            A SubmissionObj containing the information that the content
+     *            gets generated from.
+     * @param outdir
+     *            the directory where the finished PDF is put.
+     * @param courseName
+     *            the name of the course the exercise belongs to
+     * @param exerciseName
+     *            the name of the exercise
+     * @param format
+     *            the precompiled preamble without its extension, null to
+     *            write the preamble into the scorecard
+     * @throws IOException
+     *             If pdflatex fails or doesn't produce a PDF, the scratch
+     *             directory is left behind then.
+     */
+    private static void renderIsolated(Submission submission, Path outdir,
+            String courseName, String exerciseName, Path format)
+            throws IOException {
+        // the scratch directory is on the same file system as the output
+        // directory, so the PDF can be moved atomically
+        Path scratch = Files.createTempDirectory(outdir, SCRATCH_PREFIX);
+        Path texFile =
+                TexGenerator.generateTex(submission, scratch, courseName,
+                        exerciseName, format == null);
+        createPdfFromPath(texFile, scratch, format, scratch);
+
+        String baseName =
+                FilenameUtils.removeExtension(texFile.getFileName()
+                        .toString());
+        Path pdf = scratch.resolve(baseName + ".pdf");
+        if (!Files.exists(pdf)) {
+            // the scratch directory is kept to look into the log
+            throw new IOException("pdflatex didn't create a PDF, see "
+                    + scratch.resolve(baseName + ".log"));
+        }
+        Files.move(pdf, outdir.resolve(pdf.getFileName()),
+                StandardCopyOption.ATOMIC_MOVE);
+        FileUtils.deleteQuietly(scratch.toFile());
     }
 
 }
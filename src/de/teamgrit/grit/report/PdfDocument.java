@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.report;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A minimal PDF writer. Pages are drawn with the standard fonts every PDF
+ * viewer has built in, so no fonts need to be embedded, and text is encoded
+ * in WinAnsi, characters outside of it are replaced by a question mark.
+ *
+ * <p>
+ * Every page is written to the {@link PdfOutput} as soon as it is finished,
+ * only the page being drawn is kept in memory. Several documents can draw
+ * into the same output, one after another.
+ * </p>
+ */
+final class PdfDocument implements Closeable {
+
+    /** Width of an A4 page in points. */
+    static final float PAGE_WIDTH = 595;
+
+    /** Height of an A4 page in points. */
+    static final float PAGE_HEIGHT = 842;
+
+    /**
+     * The fonts a document can use.
+     */
+    enum Font {
+        /** Helvetica. */
+        REGULAR("Helvetica", HELVETICA_WIDTHS),
+        /** Helvetica bold. */
+        BOLD("Helvetica-Bold", HELVETICA_BOLD_WIDTHS),
+        /** Courier, every character is 600/1000 em wide. */
+        MONOSPACE("Courier", null);
+
+        private final String m_baseFont;
+        private final int[] m_widths;
+
+        /**
+         * Creates a font.
+         *
+         * @param baseFont
+         *            the name of the standard font
+         * @param widths
+         *            the widths of the characters from space to tilde in
+         *            1/1000 em, null for a monospaced font
+         */
+        Font(String baseFont, int[] widths) {
+            m_baseFont = baseFont;
+            m_widths = widths;
+        }
+
+        /**
+         * Gets the width of a character.
+         *
+         * @param c
+         *            the character, already encoded
+         * @return the width in 1/1000 em
+         */
+        private int getWidth(int c) {
+            if (m_widths == null) {
+                return MONOSPACE_WIDTH;
+            }
+            if ((c >= FIRST_WIDTH) && (c < FIRST_WIDTH + m_widths.length)) {
+                return m_widths[c - FIRST_WIDTH];
+            }
+            return DEFAULT_WIDTH;
+        }
+    }
+
+    /* character widths of the standard fonts, from space to tilde */
+    private static final int FIRST_WIDTH = ' ';
+    private static final int MONOSPACE_WIDTH = 600;
+    private static final int DEFAULT_WIDTH = 556;
+    private static final int[] HELVETICA_WIDTHS = { 278, 278, 355, 556, 556,
+            889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278, 556, 556,
+            556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584,
+            556, 1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667,
+            556, 833, 722, 778, 667, 778, 722, 667, 611, 722, 667, 944, 667,
+            667, 611, 278, 278, 278, 469, 556, 333, 556, 556, 500, 556, 556,
+            278, 556, 556, 222, 222, 500, 222, 833, 556, 556, 556, 556, 333,
+            500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584 };
+    private static final int[] HELVETICA_BOLD_WIDTHS = { 278, 333, 474, 556,
+            556, 889, 722, 238, 333, 333, 389, 584, 278, 333, 278, 278, 556,
+            556, 556, 556, 556, 556, 556, 556, 556, 556, 333, 333, 584, 584,
+            584, 611, 975, 722, 722, 722, 722, 667, 611, 778, 722, 278, 556,
+            722, 611, 833, 722, 778, 667, 778, 722, 667, 611, 722, 667, 944,
+            667, 667, 611, 333, 278, 333, 584, 556, 333, 556, 611, 556, 611,
+            556, 333, 611, 611, 278, 278, 556, 278, 889, 611, 611, 611, 611,
+            389, 556, 333, 611, 556, 778, 556, 556, 500, 389, 280, 389, 584 };
+
+    /* characters WinAnsi has between 0x80 and 0x9F, and their codes */
+    private static final String WIN_ANSI_EXTRAS =
+            "\u20AC\u201A\u201E\u2026\u2018\u2019\u201C\u201D\u2022"
+                    + "\u2013\u2014";
+    private static final byte[] WIN_ANSI_CODES = { (byte) 0x80, (byte) 0x82,
+            (byte) 0x84, (byte) 0x85, (byte) 0x91, (byte) 0x92, (byte) 0x93,
+            (byte) 0x94, (byte) 0x95, (byte) 0x96, (byte) 0x97 };
+
+    private final PdfOutput m_output;
+    private final boolean m_ownsOutput;
+
+    /* the numbers of the font objects, indexed by the ordinal of the font */
+    private final int[] m_fonts = new int[Font.values().length];
+
+    private ByteArrayOutputStream m_content = null;
+
+    /**
+     * Starts a document of its own.
+     *
+     * @param out
+     *            the stream the document is written to, closed with the
+     *            document
+     * @throws IOException
+     *             if writing fails
+     */
+    PdfDocument(OutputStream out) throws IOException {
+        this(new PdfOutput(out), true);
+    }
+
+    /**
+     * Starts a document that draws its pages into an output shared with
+     * other content. Closing the document doesn't close the output.
+     *
+     * @param output
+     *            the output the pages are added to
+     * @throws IOException
+     *             if writing fails
+     */
+    PdfDocument(PdfOutput output) throws IOException {
+        this(output, false);
+    }
+
+    /**
+     * Starts a document and writes its fonts.
+     *
+     * @param output
+     *            the output the pages are added to
+     * @param ownsOutput
+     *            true to close the output with the document
+     * @throws IOException
+     *             if writing fails
+     */
+    private PdfDocument(PdfOutput output, boolean ownsOutput)
+            throws IOException {
+        m_output = output;
+        m_ownsOutput = ownsOutput;
+        for (Font font : Font.values()) {
+            m_fonts[font.ordinal()] = m_output.allocate();
+            m_output.beginObject(m_fonts[font.ordinal()]);
+            m_output.write("<< /Type /Font /Subtype /Type1 /BaseFont /"
+                    + font.m_baseFont + " /Encoding /WinAnsiEncoding >>");
+            m_output.endObject();
+        }
+    }
+
+    /**
+     * Gets the width of a text.
+     *
+     * @param font
+     *            the font
+     * @param size
+     *            the font size in points
+     * @param text
+     *            the text
+     * @return the width in points
+     */
+    static float getWidth(Font font, float size, String text) {
+        int width = 0;
+        for (byte c : encode(text)) {
+            width += font.getWidth(c & 0xFF);
+        }
+        return (width * size) / 1000;
+    }
+
+    /**
+     * Starts a new page, the previous one has to be finished.
+     */
+    void beginPage() {
+        m_content = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Finishes the current page and writes it to the stream.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    void endPage() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater =
+                new DeflaterOutputStream(compressed)) {
+            m_content.writeTo(deflater);
+        }
+        m_content = null;
+
+        int contents = m_output.allocate();
+        m_output.beginObject(contents);
+        m_output.write("<< /Length " + compressed.size()
+                + " /Filter /FlateDecode >>\nstream\n");
+        m_output.write(compressed.toByteArray());
+        m_output.write("\nendstream");
+        m_output.endObject();
+
+        StringBuilder fonts = new StringBuilder();
+        for (Font font : Font.values()) {
+            fonts.append(" /F").append(font.ordinal()).append(' ')
+                    .append(m_fonts[font.ordinal()]).append(" 0 R");
+        }
+        int page = m_output.allocate();
+        m_output.beginObject(page);
+        m_output.write("<< /Type /Page /Parent " + m_output.getPageTree()
+                + " 0 R /MediaBox [0 0 " + format(PAGE_WIDTH) + " "
+                + format(PAGE_HEIGHT) + "] /Resources << /Font <<" + fonts
+                + " >> >> /Contents " + contents + " 0 R >>");
+        m_output.endObject();
+        m_output.addPage(page);
+    }
+
+    /**
+     * Draws a text on the current page.
+     *
+     * @param font
+     *            the font
+     * @param size
+     *            the font size in points
+     * @param x
+     *            the left end of the baseline
+     * @param y
+     *            the height of the baseline
+     * @param text
+     *            the text, on a single line
+     */
+    void drawText(Font font, float size, float x, float y, String text) {
+        draw("BT /F" + font.ordinal() + " " + format(size) + " Tf "
+                + format(x) + " " + format(y) + " Td (");
+        for (byte c : encode(text)) {
+            if ((c == '(') || (c == ')') || (c == '\\')) {
+                m_content.write('\\');
+            }
+            m_content.write(c);
+        }
+        draw(") Tj ET\n");
+    }
+
+    /**
+     * Draws a line on the current page.
+     *
+     * @param x1
+     *            x of the start
+     * @param y1
+     *            y of the start
+     * @param x2
+     *            x of the end
+     * @param y2
+     *            y of the end
+     */
+    void drawLine(float x1, float y1, float x2, float y2) {
+        draw(format(x1) + " " + format(y1) + " m " + format(x2) + " "
+                + format(y2) + " l S\n");
+    }
+
+    /**
+     * Draws a rectangle on the current page.
+     *
+     * @param x
+     *            the left edge
+     * @param y
+     *            the bottom edge
+     * @param width
+     *            the width
+     * @param height
+     *            the height
+     * @param filled
+     *            true to fill the rectangle, false to stroke its outline
+     */
+    void drawRectangle(float x, float y, float width, float height,
+            boolean filled) {
+        draw(format(x) + " " + format(y) + " " + format(width) + " "
+                + format(height) + (filled ? " re f\n" : " re S\n"));
+    }
+
+    /**
+     * Sets the color used for text, lines and filled rectangles.
+     *
+     * @param red
+     *            the red part, 0 to 1
+     * @param green
+     *            the green part, 0 to 1
+     * @param blue
+     *            the blue part, 0 to 1
+     */
+    void setColor(float red, float green, float blue) {
+        String color = format(red) + " " + format(green) + " " + format(blue);
+        draw(color + " rg " + color + " RG\n");
+    }
+
+    /**
+     * Finishes the current page if there is one. Closes the output if the
+     * document has one of its own.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (m_content != null) {
+                endPage();
+            }
+        } finally {
+            if (m_ownsOutput) {
+                m_output.close();
+            }
+        }
+    }
+
+    /**
+     * Appends operators to the content of the current page.
+     *
+     * @param operators
+     *            the operators, ASCII only
+     */
+    private void draw(String operators) {
+        byte[] bytes = operators.getBytes(StandardCharsets.US_ASCII);
+        m_content.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encodes a text in WinAnsi. Latin-1 matches WinAnsi above 0xA0, the
+     * common punctuation below is mapped, tabs become two spaces and
+     * everything else that can't be shown becomes a question mark.
+     *
+     * @param text
+     *            the text
+     * @return the encoded text
+     */
+    private static byte[] encode(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\t') {
+                bytes.write(' ');
+                bytes.write(' ');
+            } else if (((c >= ' ') && (c <= '~'))
+                    || ((c >= 0xA0) && (c <= 0xFF))) {
+                bytes.write(c);
+            } else if (WIN_ANSI_EXTRAS.indexOf(c) >= 0) {
+                bytes.write(WIN_ANSI_CODES[WIN_ANSI_EXTRAS.indexOf(c)]);
+            } else if (!Character.isLowSurrogate(c)) {
+                bytes.write('?');
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Formats a number for the content stream, PDF doesn't accept exponents.
+     *
+     * @param value
+     *            the number
+     * @return the number with at most two decimals
+     */
+    private static String format(float value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
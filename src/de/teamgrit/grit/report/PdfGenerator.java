@@ -0,0 +1,656 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.report;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import de.teamgrit.grit.checking.CheckingResult;
+import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.checking.TestOutput;
+import de.teamgrit.grit.preprocess.tokenize.Submission;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
+import de.teamgrit.grit.report.PdfDocument.Font;
+
+/**
+ * This class supplies the static method generatePdf to write the scorecard
+ * of a submission directly as PDF. The scorecard has the same sections as
+ * the one from {@link TexGenerator}, but neither LaTeX nor any other external
+ * program is needed and pages are written as soon as they are full.
+ */
+public final class PdfGenerator {
+
+    private static final float MARGIN = 56;
+    private static final float LEFT = MARGIN;
+    private static final float RIGHT = PdfDocument.PAGE_WIDTH - MARGIN;
+    private static final float TOP = PdfDocument.PAGE_HEIGHT - MARGIN;
+    private static final float BOTTOM = MARGIN;
+
+    private static final float TEXT_SIZE = 10;
+    private static final float HEADER_SIZE = 9;
+    private static final float CODE_SIZE = 7.5f;
+    private static final float NUMBER_SIZE = 6;
+    private static final float LEADING = 1.3f;
+
+    /* the width of the line numbers left of a listing */
+    private static final float NUMBER_WIDTH = 22;
+
+    private static final float[] BLACK = { 0, 0, 0 };
+    private static final float[] GRAY = { 0.5f, 0.5f, 0.5f };
+    private static final float[] GREEN = { 0, 0.6f, 0 };
+    private static final float[] RED = { 0.8f, 0, 0 };
+
+    private static final String PART_PREFIX = ".scorecard-";
+
+    private final PdfDocument m_document;
+    private final String m_courseName;
+    private final String m_exerciseName;
+
+    /* the baseline of the last line drawn on the current page */
+    private float m_y = 0;
+    private int m_page = 0;
+
+    /* the color set last on the current page, to skip setting it again */
+    private float[] m_color = null;
+
+    /**
+     * Creates a generator that draws into a document.
+     * 
+     * @param document
+     *            the document
+     * @param courseName
+     *            the name of the course the exercise belongs to
+     * @param exerciseName
+     *            the name of the exercise
+     */
+    private PdfGenerator(PdfDocument document, String courseName,
+            String exerciseName) {
+        m_document = document;
+        m_courseName = courseName;
+        m_exerciseName = exerciseName;
+    }
+
+    /**
+     * This method creates a PDF scorecard from a Submission instance. The
+     * scorecard is written to a temporary file first and moved into the
+     * output directory in one step.
+     * 
+     * @param submission
+     *            A SubmissionObj containing the information that the content
+     *            gets generated from.
+     * @param outdir
+     *            the output directory
+     * @param courseName
+     *            the name of the course the exercise belongs to
+     * @param exerciseName
+     *            the name of the exercise
+     * @return The Path to the created PDF file.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    public static Path generatePdf(final Submission submission,
+            final Path outdir, final String courseName,
+            final String exerciseName) throws IOException {
+        Path file =
+                outdir.resolve(submission.getStudent().getName()
+                        + ".report.pdf");
+        Path part = Files.createTempFile(outdir, PART_PREFIX, ".part");
+        try {
+            try (PdfDocument document =
+                    new PdfDocument(new BufferedOutputStream(
+                            Files.newOutputStream(part)))) {
+                new PdfGenerator(document, courseName, exerciseName)
+                        .writeScorecard(submission);
+            }
+            Files.move(part, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+        return file;
+    }
+
+    /**
+     * Writes all sections of the scorecard.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeScorecard(Submission submission) throws IOException {
+        writeHeader(submission);
+        writeOverview(submission);
+        writeExtractionProblem(submission);
+        writeTestResult(submission);
+
+        // if there are compile errors, put these in the scorecard instead of
+        // JUnit Test result
+        CheckingResult checkingResult = submission.getCheckingResult();
+        if (!(checkingResult.getCompilerOutput().isCleanCompile())) {
+            writeCompilerErrors(submission);
+        } else {
+            TestOutput testResults = checkingResult.getTestResults();
+            if ((testResults.getPassedTestCount() < testResults.getTestCount())
+                    && testResults.getDidTest()) {
+                writeFailedTests(submission);
+            }
+        }
+
+        writeCompilerOutput(submission);
+        writeSourceCode(submission);
+    }
+
+    /**
+     * Writes the title and the name of the student.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeHeader(Submission submission) throws IOException {
+        newPage();
+        m_y -= 20;
+        writeCentered(Font.BOLD, 20, m_courseName);
+        m_y -= 8;
+        writeCentered(Font.BOLD, 14, m_exerciseName);
+        String date =
+                DateFormat.getDateInstance(DateFormat.LONG, Locale.GERMAN)
+                        .format(new Date());
+        m_y -= TEXT_SIZE * LEADING;
+        m_document.drawText(Font.REGULAR, TEXT_SIZE,
+                RIGHT - PdfDocument.getWidth(Font.REGULAR, TEXT_SIZE, date),
+                m_y, date);
+
+        // the student's line with an empty box for the points
+        float box = 28;
+        m_y -= 2 * TEXT_SIZE * LEADING + box / 2;
+        m_document.drawText(Font.BOLD, 12, LEFT, m_y, "Student "
+                + submission.getStudent().getName() + ":");
+        m_document.drawRectangle(RIGHT - box, m_y - box / 2 + 4, box, box,
+                false);
+        m_y -= box / 2 + TEXT_SIZE * LEADING;
+    }
+
+    /**
+     * Writes the Overview.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeOverview(Submission submission) throws IOException {
+        writeParagraph("Übersicht");
+
+        CheckingResult checkingResult = submission.getCheckingResult();
+        if (checkingResult.getCompilerOutput().isCleanCompile()) {
+            writeRow("Abgabe kompiliert", "JA", BLACK, GREEN);
+        } else {
+            writeRow("Abgabe kompiliert", "NEIN", BLACK, RED);
+        }
+        writeRow("Testergebnis", checkingResult.getTestResults()
+                .getPassedTestCount()
+                + " von "
+                + checkingResult.getTestResults().getTestCount()
+                + " Tests bestanden", BLACK, BLACK);
+    }
+
+    /**
+     * Writes why the archive of the submission wasn't unpacked, if it
+     * wasn't.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeExtractionProblem(Submission submission)
+            throws IOException {
+        String problem = submission.getExtractionProblem();
+        if (problem == null) {
+            return;
+        }
+        writeParagraph("Archiv nicht entpackt");
+        List<String> lines = new ArrayList<>();
+        lines.add(problem);
+        writeListing(lines.iterator(), BLACK, false);
+    }
+
+    /**
+     * Writes the test result.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeTestResult(Submission submission) throws IOException {
+        writeParagraph("Testergebnis");
+
+        TestOutput testResults =
+                submission.getCheckingResult().getTestResults();
+
+        if (testResults.getDidTest() && (testResults.getTestCount() > 0)) {
+            writeRow("Bestandene Tests", "", BLACK, BLACK);
+            drawProgressBar(testResults.getPassedTestCount(),
+                    testResults.getTestCount());
+            List<Result> results = testResults.getResults();
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).wasSuccessful()) {
+                    writeRow("Test " + i, "bestanden", BLACK, GREEN);
+                } else {
+                    writeRow("Test " + i, "fehlgeschlagen", RED, RED);
+                }
+            }
+            newPage();
+        } else {
+            writeText(Font.REGULAR, TEXT_SIZE, BLACK, "Keine Tests vorhanden.");
+        }
+    }
+
+    /**
+     * Writes the compiler errors.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeCompilerErrors(Submission submission)
+            throws IOException {
+        writeParagraph("Compilerfehler");
+        writeListing(submission.getCheckingResult().getCompilerOutput()
+                .getCompilerErrors().iterator(), BLACK, true);
+    }
+
+    /**
+     * Writes the failed tests.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeFailedTests(Submission submission) throws IOException {
+        writeParagraph("Fehlerhafte Tests");
+
+        List<Result> results =
+                submission.getCheckingResult().getTestResults().getResults();
+        for (int i = 0; i < results.size(); i++) {
+            if (!(results.get(i).wasSuccessful())) {
+                writeText(Font.REGULAR, TEXT_SIZE, BLACK, "- Test" + i);
+                List<String> failures = new ArrayList<>();
+                for (Failure fail : results.get(i).getFailures()) {
+                    failures.add(fail.toString());
+                }
+                writeListing(failures.iterator(), RED, true);
+            }
+        }
+    }
+
+    /**
+     * Writes the compiler output.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeCompilerOutput(Submission submission)
+            throws IOException {
+        writeParagraph("Compilerausgabe");
+
+        CompilerOutput compilerOutput =
+                submission.getCheckingResult().getCompilerOutput();
+        writeText(Font.REGULAR, TEXT_SIZE, BLACK, "Warnings");
+        writeListing(compilerOutput.getCompilerWarnings().iterator(), BLACK,
+                true);
+        writeText(Font.REGULAR, TEXT_SIZE, BLACK, "Infos");
+        writeListing(compilerOutput.getCompilerInfos().iterator(), BLACK,
+                true);
+    }
+
+    /**
+     * Writes the source code. Every file is read line by line while it is
+     * drawn.
+     * 
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when reading or writing.
+     */
+    private void writeSourceCode(Submission submission) throws IOException {
+        writeParagraph("Code");
+
+        // the files were listed when the submission was tokenized
+        List<File> sourceFiles = new ArrayList<>();
+        SubmissionManifest manifest = submission.getManifest();
+        if (manifest != null) {
+            for (Path sourceFile : manifest.getFiles()) {
+                sourceFiles.add(sourceFile.toFile());
+            }
+        } else {
+            sourceFiles.addAll(FileUtils.listFiles(submission
+                    .getSourceCodeLocation().toFile(), FileFilterUtils
+                    .fileFileFilter(), TrueFileFilter.INSTANCE));
+        }
+
+        for (File f : sourceFiles) {
+            String fileExtension = FilenameUtils.getExtension(f.toString());
+            if (!fileExtension.matches("[Jj][Aa][Vv][Aa]|([Ll])?[Hh][Ss]"
+                    + "|[Cc]|[Hh]|[Cc][Pp][Pp]")) {
+                // file is not a valid source file
+                continue;
+            }
+
+            writeText(Font.BOLD, TEXT_SIZE, BLACK, f.getName());
+            LineIterator lines = FileUtils.lineIterator(f, "UTF-8");
+            try {
+                writeListing(lines, BLACK, true);
+            } finally {
+                LineIterator.closeQuietly(lines);
+            }
+        }
+    }
+
+    /**
+     * Finishes the current page and starts a new one with the course on the
+     * left and the exercise on the right of its head and the page number at
+     * its foot.
+     * 
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void newPage() throws IOException {
+        if (m_page > 0) {
+            m_document.endPage();
+        }
+        m_page++;
+        m_document.beginPage();
+        m_color = null;
+        setColor(BLACK);
+
+        float head = TOP + 2 * HEADER_SIZE;
+        m_document.drawText(Font.REGULAR, HEADER_SIZE, LEFT, head,
+                m_courseName);
+        String assignment = "Assignment " + m_exerciseName;
+        m_document.drawText(Font.REGULAR, HEADER_SIZE, RIGHT
+                - PdfDocument.getWidth(Font.REGULAR, HEADER_SIZE, assignment),
+                head, assignment);
+        m_document.drawLine(LEFT, head - 4, RIGHT, head - 4);
+
+        String page = "Page " + m_page;
+        m_document.drawText(Font.REGULAR, HEADER_SIZE, RIGHT
+                - PdfDocument.getWidth(Font.REGULAR, HEADER_SIZE, page),
+                BOTTOM - 2 * HEADER_SIZE, page);
+        m_y = TOP;
+    }
+
+    /**
+     * Makes sure there is room for the next line, starts a new page if there
+     * isn't, and moves down to the baseline of the line.
+     * 
+     * @param size
+     *            the font size of the line
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void nextLine(float size) throws IOException {
+        if (m_y - size * LEADING < BOTTOM) {
+            newPage();
+        }
+        m_y -= size * LEADING;
+    }
+
+    /**
+     * Writes the heading of a paragraph.
+     * 
+     * @param title
+     *            the heading
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeParagraph(String title) throws IOException {
+        m_y -= TEXT_SIZE * LEADING / 2;
+        writeText(Font.BOLD, 11, BLACK, title);
+    }
+
+    /**
+     * Writes a text, broken into lines at spaces where it is too wide.
+     * 
+     * @param font
+     *            the font
+     * @param size
+     *            the font size
+     * @param color
+     *            the color
+     * @param text
+     *            the text
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeText(Font font, float size, float[] color, String text)
+            throws IOException {
+        for (String line : wrap(font, size, text, RIGHT - LEFT)) {
+            nextLine(size);
+            setColor(color);
+            m_document.drawText(font, size, LEFT, m_y, line);
+        }
+        setColor(BLACK);
+    }
+
+    /**
+     * Writes a line with one text on the left and one on the right.
+     * 
+     * @param left
+     *            the text on the left
+     * @param right
+     *            the text on the right
+     * @param leftColor
+     *            the color of the left text
+     * @param rightColor
+     *            the color of the right text
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeRow(String left, String right, float[] leftColor,
+            float[] rightColor) throws IOException {
+        nextLine(TEXT_SIZE);
+        setColor(leftColor);
+        m_document.drawText(Font.REGULAR, TEXT_SIZE, LEFT, m_y, left);
+        setColor(rightColor);
+        m_document.drawText(Font.REGULAR, TEXT_SIZE, RIGHT
+                - PdfDocument.getWidth(Font.REGULAR, TEXT_SIZE, right), m_y,
+                right);
+        setColor(BLACK);
+    }
+
+    /**
+     * Writes a centered line.
+     * 
+     * @param font
+     *            the font
+     * @param size
+     *            the font size
+     * @param text
+     *            the text
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeCentered(Font font, float size, String text)
+            throws IOException {
+        nextLine(size);
+        float width = PdfDocument.getWidth(font, size, text);
+        m_document.drawText(font, size, (LEFT + RIGHT - width) / 2, m_y, text);
+    }
+
+    /**
+     * Draws a bar on the right of the last line, green for the passed and red
+     * for the failed tests, with a tick for each test.
+     * 
+     * @param passed
+     *            the number of passed tests
+     * @param total
+     *            the number of tests, at least one
+     */
+    private void drawProgressBar(int passed, int total) {
+        float width = 150;
+        float height = TEXT_SIZE * 0.7f;
+        float x = RIGHT - width;
+        float filled = (width * passed) / total;
+
+        setColor(GREEN);
+        m_document.drawRectangle(x, m_y, filled, height, true);
+        setColor(RED);
+        m_document.drawRectangle(x + filled, m_y, width - filled, height,
+                true);
+        setColor(BLACK);
+        m_document.drawRectangle(x, m_y, width, height, false);
+        for (int i = 1; i < total; i++) {
+            float tick = x + (width * i) / total;
+            m_document.drawLine(tick, m_y, tick, m_y + height / 3);
+        }
+    }
+
+    /**
+     * Writes lines in a monospaced font with a rule on their left. Lines
+     * that are too wide are broken.
+     * 
+     * @param lines
+     *            the lines, consumed while they are written
+     * @param color
+     *            the color of the lines
+     * @param numbered
+     *            true to number the lines
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private void writeListing(Iterator<String> lines, float[] color,
+            boolean numbered) throws IOException {
+        float x = LEFT + NUMBER_WIDTH;
+        float charWidth = PdfDocument.getWidth(Font.MONOSPACE, CODE_SIZE, " ");
+        int columns = Math.max(1, (int) ((RIGHT - x - 4) / charWidth));
+        int number = 1;
+        while (lines.hasNext()) {
+            String line = lines.next();
+            boolean first = true;
+            do {
+                int end = Math.min(columns, line.length());
+                nextLine(CODE_SIZE);
+                if (numbered && first) {
+                    String label = Integer.toString(number);
+                    setColor(GRAY);
+                    m_document.drawText(Font.REGULAR, NUMBER_SIZE, x - 5
+                            - PdfDocument.getWidth(Font.REGULAR, NUMBER_SIZE,
+                                    label), m_y, label);
+                }
+                setColor(BLACK);
+                m_document.drawLine(x - 2, m_y - 2, x - 2, m_y + CODE_SIZE);
+                setColor(color);
+                m_document.drawText(Font.MONOSPACE, CODE_SIZE, x + 2, m_y,
+                        line.substring(0, end));
+                line = line.substring(end);
+                first = false;
+            } while (!line.isEmpty());
+            number++;
+        }
+        setColor(BLACK);
+    }
+
+    /**
+     * Breaks a text into lines that fit into a width. Lines are broken at
+     * spaces, words that don't fit on a line of their own are cut.
+     * 
+     * @param font
+     *            the font
+     * @param size
+     *            the font size
+     * @param text
+     *            the text
+     * @param width
+     *            the width of a line
+     * @return the lines
+     */
+    private static List<String> wrap(Font font, float size, String text,
+            float width) {
+        List<String> lines = new ArrayList<>();
+        for (String paragraph : text.split("\r?\n", -1)) {
+            StringBuilder line = new StringBuilder();
+            for (String word : paragraph.split(" ")) {
+                String candidate =
+                        (line.length() == 0) ? word : line + " " + word;
+                if (PdfDocument.getWidth(font, size, candidate) <= width) {
+                    line.setLength(0);
+                    line.append(candidate);
+                    continue;
+                }
+                if (line.length() > 0) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+                // cut words that are wider than a whole line
+                while (PdfDocument.getWidth(font, size, word) > width) {
+                    int end = word.length() - 1;
+                    while ((end > 1)
+                            && (PdfDocument.getWidth(font, size,
+                                    word.substring(0, end)) > width)) {
+                        end--;
+                    }
+                    lines.add(word.substring(0, end));
+                    word = word.substring(end);
+                }
+                line.append(word);
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Sets the color of everything drawn next.
+     * 
+     * @param color
+     *            the color as red, green and blue
+     */
+    private void setColor(float[] color) {
+        if (color == m_color) {
+            return;
+        }
+        m_color = color;
+        m_document.setColor(color[0], color[1], color[2]);
+    }
+}
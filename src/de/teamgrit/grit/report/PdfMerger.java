@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.report;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.teamgrit.grit.report.PdfReader.Name;
+import de.teamgrit.grit.report.PdfReader.Page;
+import de.teamgrit.grit.report.PdfReader.Raw;
+import de.teamgrit.grit.report.PdfReader.Reference;
+import de.teamgrit.grit.report.PdfReader.Stream;
+
+/**
+ * Appends the pages of PDFs to a {@link PdfOutput}. Every page is copied
+ * together with the objects it uses, renumbered, and without the page tree
+ * of the PDF it came from. Stream data is copied without decoding it. The
+ * objects of a PDF are written before the next one is read, so only one
+ * input is in memory at a time.
+ */
+final class PdfMerger {
+
+    private static final byte[] NULL = "null"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final PdfOutput m_output;
+
+    /* state of the PDF being appended */
+    private PdfReader m_reader = null;
+    private Set<Integer> m_pageTreeNodes = null;
+    private final Map<Integer, Integer> m_numbers = new HashMap<>();
+    private final Deque<Integer> m_pending = new ArrayDeque<>();
+
+    /**
+     * Creates a merger.
+     *
+     * @param output
+     *            the output the pages are appended to
+     */
+    PdfMerger(PdfOutput output) {
+        m_output = output;
+    }
+
+    /**
+     * Appends all pages of a PDF.
+     *
+     * @param reader
+     *            the PDF
+     * @throws IOException
+     *             if the PDF is broken or writing fails
+     */
+    void append(PdfReader reader) throws IOException {
+        List<Page> pages = reader.getPages();
+        m_reader = reader;
+        m_pageTreeNodes = reader.getPageTreeNodes();
+        m_numbers.clear();
+        m_pending.clear();
+        try {
+            for (Page page : pages) {
+                if (m_numbers.containsKey(page.getNumber())) {
+                    continue;
+                }
+                int number = m_output.allocate();
+                m_numbers.put(page.getNumber(), number);
+
+                Map<String, Object> dictionary =
+                        new LinkedHashMap<>(page.getDictionary());
+                dictionary.put("Parent",
+                        new Raw((m_output.getPageTree() + " 0 R")
+                                .getBytes(StandardCharsets.US_ASCII)));
+                writeObject(number, dictionary);
+                m_output.addPage(number);
+            }
+            while (!m_pending.isEmpty()) {
+                int original = m_pending.poll();
+                writeObject(m_numbers.get(original),
+                        reader.getObject(original));
+            }
+        } finally {
+            m_reader = null;
+            m_pageTreeNodes = null;
+        }
+    }
+
+    /**
+     * Writes a copied object.
+     *
+     * @param number
+     *            the number of the object in the output
+     * @param object
+     *            the object from the input
+     * @throws IOException
+     *             if a referenced object is broken or writing fails
+     */
+    private void writeObject(int number, Object object) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if (object instanceof Stream) {
+            Stream stream = (Stream) object;
+            Map<String, Object> dictionary =
+                    new LinkedHashMap<>(stream.getDictionary());
+            // the length may have been an indirect object
+            dictionary.put("Length", Long.valueOf(stream.getData().length));
+            writeValue(dictionary, buffer);
+            m_output.beginObject(number);
+            m_output.write(buffer.toByteArray());
+            m_output.write("\nstream\n");
+            m_output.write(stream.getData());
+            m_output.write("\nendstream");
+        } else {
+            writeValue(object, buffer);
+            m_output.beginObject(number);
+            m_output.write(buffer.toByteArray());
+        }
+        m_output.endObject();
+    }
+
+    /**
+     * Writes a direct object. Referenced objects get a number in the output
+     * and are queued to be copied; references into the page tree of the
+     * input become null.
+     *
+     * @param value
+     *            the object
+     * @param out
+     *            the buffer the object is written to
+     * @throws IOException
+     *             if the object is a stream
+     */
+    private void writeValue(Object value, ByteArrayOutputStream out)
+            throws IOException {
+        if (value instanceof Map) {
+            out.write('<');
+            out.write('<');
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writeValue(new Name((String) entry.getKey()), out);
+                out.write(' ');
+                writeValue(entry.getValue(), out);
+                out.write(' ');
+            }
+            out.write('>');
+            out.write('>');
+        } else if (value instanceof List) {
+            out.write('[');
+            for (Object element : (List<?>) value) {
+                writeValue(element, out);
+                out.write(' ');
+            }
+            out.write(']');
+        } else if (value instanceof Reference) {
+            int original = ((Reference) value).getNumber();
+            if (m_pageTreeNodes.contains(original)) {
+                out.write(NULL);
+                return;
+            }
+            Integer number = m_numbers.get(original);
+            if (number == null) {
+                number = m_output.allocate();
+                m_numbers.put(original, number);
+                m_pending.add(original);
+            }
+            write(number + " 0 R", out);
+        } else if (value instanceof Name) {
+            out.write('/');
+            out.write(((Name) value).getName().getBytes(
+                    StandardCharsets.ISO_8859_1));
+        } else if (value instanceof Raw) {
+            out.write(((Raw) value).getBytes());
+        } else if (value instanceof Long) {
+            write(value.toString(), out);
+        } else if (value == null) {
+            out.write(NULL);
+        } else {
+            throw new IOException("Can't copy a nested " + value.getClass());
+        }
+    }
+
+    /**
+     * Writes ASCII text to a buffer.
+     *
+     * @param text
+     *            the text
+     * @param out
+     *            the buffer
+     * @throws IOException
+     *             never, the buffer is in memory
+     */
+    private static void write(String text, ByteArrayOutputStream out)
+            throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
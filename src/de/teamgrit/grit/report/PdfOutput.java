@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The file structure of a PDF being written: numbers the objects, records
+ * where they start and collects the pages. Objects go to the stream right
+ * away, only their offsets are kept. The page tree, the catalog and the
+ * cross reference table are written when the output is closed.
+ */
+final class PdfOutput implements Closeable {
+
+    /* objects with fixed numbers, written last */
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+
+    private final OutputStream m_out;
+    private long m_position = 0;
+
+    /* the offsets of the objects, index is the object number minus one */
+    private final List<Long> m_offsets = new ArrayList<>();
+    private final List<Integer> m_pages = new ArrayList<>();
+
+    /**
+     * Starts a PDF.
+     *
+     * @param out
+     *            the stream the PDF is written to, closed with the output
+     * @throws IOException
+     *             if writing fails
+     */
+    PdfOutput(OutputStream out) throws IOException {
+        m_out = out;
+        write("%PDF-1.4\n");
+        // a comment with binary characters marks the file as binary
+        write(new byte[] { '%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF,
+                (byte) 0xD3, '\n' });
+        allocate();
+        allocate();
+    }
+
+    /**
+     * Reserves the number of an object that is written later.
+     *
+     * @return the object number
+     */
+    int allocate() {
+        m_offsets.add(null);
+        return m_offsets.size();
+    }
+
+    /**
+     * Gets the number of the page tree, the parent of all pages.
+     *
+     * @return the object number
+     */
+    int getPageTree() {
+        return PAGES;
+    }
+
+    /**
+     * Starts an object and records its offset.
+     *
+     * @param number
+     *            the number from {@link #allocate()}
+     * @throws IOException
+     *             if writing fails
+     */
+    void beginObject(int number) throws IOException {
+        m_offsets.set(number - 1, m_position);
+        write(number + " 0 obj\n");
+    }
+
+    /**
+     * Ends an object.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    void endObject() throws IOException {
+        write("\nendobj\n");
+    }
+
+    /**
+     * Adds a written page to the end of the document.
+     *
+     * @param number
+     *            the object number of the page
+     */
+    void addPage(int number) {
+        m_pages.add(number);
+    }
+
+    /**
+     * Writes ASCII text.
+     *
+     * @param text
+     *            the text
+     * @throws IOException
+     *             if writing fails
+     */
+    void write(String text) throws IOException {
+        write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param bytes
+     *            the bytes
+     * @throws IOException
+     *             if writing fails
+     */
+    void write(byte[] bytes) throws IOException {
+        m_out.write(bytes);
+        m_position += bytes.length;
+    }
+
+    /**
+     * Writes the page tree, the catalog and the cross reference table and
+     * closes the stream.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            StringBuilder kids = new StringBuilder();
+            for (int page : m_pages) {
+                kids.append(page).append(" 0 R ");
+            }
+            beginObject(PAGES);
+            write("<< /Type /Pages /Kids [ " + kids + "] /Count "
+                    + m_pages.size() + " >>");
+            endObject();
+            beginObject(CATALOG);
+            write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>");
+            endObject();
+
+            long xref = m_position;
+            StringBuilder table = new StringBuilder();
+            table.append("xref\n0 ").append(m_offsets.size() + 1)
+                    .append("\n0000000000 65535 f \n");
+            for (Long offset : m_offsets) {
+                if (offset == null) {
+                    // reserved but never written
+                    table.append("0000000000 65535 f \n");
+                } else {
+                    table.append(String.format(Locale.ROOT,
+                            "%010d 00000 n \n", offset));
+                }
+            }
+            table.append("trailer\n<< /Size ").append(m_offsets.size() + 1)
+                    .append(" /Root ").append(CATALOG)
+                    .append(" 0 R >>\nstartxref\n").append(xref)
+                    .append("\n%%EOF\n");
+            write(table.toString());
+        } finally {
+            m_out.close();
+        }
+    }
+}
@@ -0,0 +1,1303 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.report;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the objects and the pages of a PDF, enough to copy its pages into
+ * another PDF with {@link PdfMerger}. Cross reference tables and streams,
+ * object streams and incremental updates are understood; a PDF with a broken
+ * cross reference table is read by scanning it for objects. Content is not
+ * interpreted, only the object structure.
+ *
+ * <p>
+ * Dictionaries are read into maps keyed by the name without its slash,
+ * arrays into lists, integers into {@link Long}s. Everything that is only
+ * copied, like strings and real numbers, is kept as it was written.
+ * </p>
+ */
+final class PdfReader {
+
+    /* page attributes a page inherits from the page tree */
+    private static final String[] INHERITABLE = { "Resources", "MediaBox",
+            "CropBox", "Rotate" };
+
+    private static final Pattern OBJECT = Pattern
+            .compile("(?<![0-9])(\\d+)\\s+(\\d+)\\s+obj\\b");
+
+    private final byte[] m_data;
+
+    /* where objects start and which object streams hold the others */
+    private final Map<Integer, Long> m_offsets = new HashMap<>();
+    private final Map<Integer, int[]> m_compressed = new HashMap<>();
+    private final Set<Integer> m_known = new HashSet<>();
+
+    private final Map<Integer, Object> m_objects = new HashMap<>();
+    private Map<String, Object> m_trailer = null;
+
+    private final Set<Integer> m_pageTreeNodes = new HashSet<>();
+
+    /**
+     * Reads the structure of a PDF.
+     *
+     * @param data
+     *            the PDF
+     * @throws IOException
+     *             if the PDF can't be read or is encrypted
+     */
+    PdfReader(byte[] data) throws IOException {
+        m_data = data;
+        try {
+            readCrossReferences();
+        } catch (IOException | RuntimeException e) {
+            reconstruct();
+        }
+        if (m_trailer.get("Encrypt") != null) {
+            throw new IOException("The PDF is encrypted");
+        }
+    }
+
+    /**
+     * Reads the structure of a PDF file.
+     *
+     * @param file
+     *            the PDF file
+     * @return the reader
+     * @throws IOException
+     *             if the PDF can't be read or is encrypted
+     */
+    static PdfReader read(Path file) throws IOException {
+        try {
+            return new PdfReader(Files.readAllBytes(file));
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Could not read " + file + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the pages in the order they are shown. The attributes a page
+     * inherits from the page tree are copied into its dictionary.
+     *
+     * @return the pages
+     * @throws IOException
+     *             if the page tree is broken
+     */
+    List<Page> getPages() throws IOException {
+        Object catalog = resolve(m_trailer.get("Root"));
+        if (!(catalog instanceof Map)) {
+            throw new IOException("The PDF has no catalog");
+        }
+        Object root = ((Map<?, ?>) catalog).get("Pages");
+        if (!(root instanceof Reference)) {
+            throw new IOException("The PDF has no page tree");
+        }
+        List<Page> pages = new ArrayList<>();
+        m_pageTreeNodes.clear();
+        collectPages((Reference) root, new HashMap<String, Object>(), pages,
+                new HashSet<Integer>());
+        return pages;
+    }
+
+    /**
+     * Gets the objects that make up the page tree above the pages. Only
+     * valid after {@link #getPages()}.
+     *
+     * @return the object numbers
+     */
+    Set<Integer> getPageTreeNodes() {
+        return m_pageTreeNodes;
+    }
+
+    /**
+     * Gets an indirect object.
+     *
+     * @param number
+     *            the object number
+     * @return the object or null if there is no such object
+     * @throws IOException
+     *             if the object can't be parsed
+     */
+    Object getObject(int number) throws IOException {
+        if (m_objects.containsKey(number)) {
+            return m_objects.get(number);
+        }
+        Object object = null;
+        Long offset = m_offsets.get(number);
+        int[] compressed = m_compressed.get(number);
+        if (offset != null) {
+            Parser parser = new Parser(m_data, offset.intValue());
+            if (parser.readInteger() != number) {
+                throw new IOException("Object " + number
+                        + " isn't where the cross reference table says");
+            }
+            parser.readInteger();
+            object = parser.readIndirectObject();
+        } else if (compressed != null) {
+            readObjectStream(compressed[0]);
+            object = m_objects.get(number);
+        }
+        m_objects.put(number, object);
+        return object;
+    }
+
+    /**
+     * Decodes the data of a stream.
+     *
+     * @param stream
+     *            the stream
+     * @return the decoded data
+     * @throws IOException
+     *             if the stream uses a filter other than FlateDecode
+     */
+    byte[] decode(Stream stream) throws IOException {
+        Object filter = resolve(stream.getDictionary().get("Filter"));
+        Object parameters = resolve(stream.getDictionary().get("DecodeParms"));
+        if ((filter instanceof List) && (((List<?>) filter).size() == 1)) {
+            filter = resolve(((List<?>) filter).get(0));
+            if (parameters instanceof List) {
+                parameters = resolve(((List<?>) parameters).get(0));
+            }
+        }
+        if (filter == null) {
+            return stream.getData();
+        }
+        if (!new Name("FlateDecode").equals(filter)) {
+            throw new IOException("Unsupported filter " + filter);
+        }
+        byte[] data = inflate(stream.getData());
+        if (parameters instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) parameters;
+            int predictor = getInt(map, "Predictor", 1);
+            if (predictor >= 10) {
+                data =
+                        unpredict(data, getInt(map, "Colors", 1),
+                                getInt(map, "BitsPerComponent", 8),
+                                getInt(map, "Columns", 1));
+            } else if (predictor != 1) {
+                throw new IOException("Unsupported predictor " + predictor);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Resolves a reference.
+     *
+     * @param value
+     *            a value that may be a reference
+     * @return the referenced object or the value itself
+     * @throws IOException
+     *             if the object can't be parsed
+     */
+    Object resolve(Object value) throws IOException {
+        if (value instanceof Reference) {
+            return getObject(((Reference) value).getNumber());
+        }
+        return value;
+    }
+
+    /**
+     * Walks the page tree below a node.
+     *
+     * @param node
+     *            the node
+     * @param inherited
+     *            the inheritable attributes of the nodes above
+     * @param pages
+     *            the list the pages are added to
+     * @param visited
+     *            the nodes seen so far, to detect cycles
+     * @throws IOException
+     *             if the page tree is broken
+     */
+    private void collectPages(Reference node, Map<String, Object> inherited,
+            List<Page> pages, Set<Integer> visited) throws IOException {
+        if (!visited.add(node.getNumber())) {
+            throw new IOException("The page tree has a cycle");
+        }
+        Object object = getObject(node.getNumber());
+        if (!(object instanceof Map)) {
+            throw new IOException("Page " + node.getNumber()
+                    + " isn't a dictionary");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> dictionary = (Map<String, Object>) object;
+        Object kids = resolve(dictionary.get("Kids"));
+        if (kids instanceof List) {
+            m_pageTreeNodes.add(node.getNumber());
+            Map<String, Object> inherit = new HashMap<>(inherited);
+            for (String key : INHERITABLE) {
+                if (dictionary.containsKey(key)) {
+                    inherit.put(key, dictionary.get(key));
+                }
+            }
+            for (Object kid : (List<?>) kids) {
+                if (kid instanceof Reference) {
+                    collectPages((Reference) kid, inherit, pages, visited);
+                }
+            }
+        } else {
+            Map<String, Object> page = new LinkedHashMap<>(dictionary);
+            for (Map.Entry<String, Object> attribute : inherited.entrySet()) {
+                if (!page.containsKey(attribute.getKey())) {
+                    page.put(attribute.getKey(), attribute.getValue());
+                }
+            }
+            pages.add(new Page(node.getNumber(), page));
+        }
+    }
+
+    /**
+     * Reads the cross reference sections, starting with the newest one.
+     *
+     * @throws IOException
+     *             if a section is broken
+     */
+    private void readCrossReferences() throws IOException {
+        int startxref = lastIndexOf("startxref");
+        if (startxref < 0) {
+            throw new IOException("No startxref");
+        }
+        long offset =
+                new Parser(m_data, startxref + "startxref".length())
+                        .readInteger();
+        Set<Long> visited = new HashSet<>();
+        while ((offset >= 0) && visited.add(offset)) {
+            Parser parser = new Parser(m_data, (int) offset);
+            Map<String, Object> trailer;
+            if (parser.skipKeyword("xref")) {
+                trailer = readCrossReferenceTable(parser);
+                // hybrid files keep the objects of object streams apart
+                Object stream = trailer.get("XRefStm");
+                if (stream instanceof Long) {
+                    readCrossReferenceStream(new Parser(m_data,
+                            ((Long) stream).intValue()));
+                }
+            } else {
+                trailer = readCrossReferenceStream(parser);
+            }
+            if (m_trailer == null) {
+                m_trailer = trailer;
+            }
+            Object previous = trailer.get("Prev");
+            offset = (previous instanceof Long) ? (Long) previous : -1;
+        }
+        if ((m_trailer == null) || !(getObject(getRoot()) instanceof Map)) {
+            throw new IOException("The cross reference table is broken");
+        }
+    }
+
+    /**
+     * Reads a cross reference table and the trailer after it.
+     *
+     * @param parser
+     *            a parser placed behind the xref keyword
+     * @return the trailer
+     * @throws IOException
+     *             if the table is broken
+     */
+    private Map<String, Object> readCrossReferenceTable(Parser parser)
+            throws IOException {
+        while (!parser.skipKeyword("trailer")) {
+            long first = parser.readInteger();
+            long count = parser.readInteger();
+            for (long i = 0; i < count; i++) {
+                long offset = parser.readInteger();
+                parser.readInteger();
+                boolean used = "n".equals(parser.readKeyword());
+                addEntry((int) (first + i), used ? offset : null, null);
+            }
+        }
+        return asDictionary(parser.readObject());
+    }
+
+    /**
+     * Reads a cross reference stream.
+     *
+     * @param parser
+     *            a parser placed at the stream object
+     * @return the dictionary of the stream, which is the trailer
+     * @throws IOException
+     *             if the stream is broken
+     */
+    private Map<String, Object> readCrossReferenceStream(Parser parser)
+            throws IOException {
+        parser.readInteger();
+        parser.readInteger();
+        Object object = parser.readIndirectObject();
+        if (!(object instanceof Stream)) {
+            throw new IOException("No cross reference stream");
+        }
+        Stream stream = (Stream) object;
+        Map<String, Object> dictionary = stream.getDictionary();
+        byte[] data = decode(stream);
+        List<?> widths = (List<?>) dictionary.get("W");
+        int[] width = new int[3];
+        for (int i = 0; i < 3; i++) {
+            width[i] = ((Long) widths.get(i)).intValue();
+        }
+        List<?> index = (List<?>) dictionary.get("Index");
+        if (index == null) {
+            index = Arrays.asList(0L, dictionary.get("Size"));
+        }
+
+        int position = 0;
+        for (int section = 0; section + 1 < index.size(); section += 2) {
+            long first = (Long) index.get(section);
+            long count = (Long) index.get(section + 1);
+            for (long i = 0; i < count; i++) {
+                long[] fields = new long[3];
+                for (int field = 0; field < 3; field++) {
+                    for (int b = 0; b < width[field]; b++) {
+                        fields[field] =
+                                (fields[field] << 8)
+                                        | (data[position++] & 0xFF);
+                    }
+                }
+                // the type defaults to 1 if it has no width
+                long type = (width[0] == 0) ? 1 : fields[0];
+                int number = (int) (first + i);
+                if (type == 1) {
+                    addEntry(number, fields[1], null);
+                } else if (type == 2) {
+                    addEntry(number, null, new int[] { (int) fields[1],
+                            (int) fields[2] });
+                } else {
+                    addEntry(number, null, null);
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Records where an object is, unless a newer section knows it already.
+     *
+     * @param number
+     *            the object number
+     * @param offset
+     *            the offset of the object, null if it isn't in the file
+     *            itself
+     * @param compressed
+     *            the number of the object stream holding the object and the
+     *            index in it, null if it isn't in an object stream
+     */
+    private void addEntry(int number, Long offset, int[] compressed) {
+        if (!m_known.add(number)) {
+            return;
+        }
+        if (offset != null) {
+            m_offsets.put(number, offset);
+        } else if (compressed != null) {
+            m_compressed.put(number, compressed);
+        }
+    }
+
+    /**
+     * Finds the objects by scanning the whole file, for PDFs whose cross
+     * reference table is missing or wrong.
+     *
+     * @throws IOException
+     *             if the PDF has no catalog
+     */
+    private void reconstruct() throws IOException {
+        m_offsets.clear();
+        m_compressed.clear();
+        m_known.clear();
+        m_objects.clear();
+        m_trailer = null;
+
+        Matcher matcher =
+                OBJECT.matcher(new String(m_data, StandardCharsets.ISO_8859_1));
+        while (matcher.find()) {
+            // later objects replace earlier ones, as in incremental updates
+            m_offsets.put(Integer.parseInt(matcher.group(1)),
+                    (long) matcher.start());
+        }
+
+        Reference root = null;
+        Name catalog = new Name("Catalog");
+        List<Integer> numbers = new ArrayList<>(m_offsets.keySet());
+        for (int number : numbers) {
+            Object object = getObjectQuietly(number);
+            if ((object instanceof Stream)
+                    && new Name("ObjStm").equals(((Stream) object)
+                            .getDictionary().get("Type"))) {
+                addCompressedObjects(number, (Stream) object);
+            }
+        }
+        for (int number : new ArrayList<>(m_compressed.keySet())) {
+            getObjectQuietly(number);
+        }
+        for (Map.Entry<Integer, Object> object : m_objects.entrySet()) {
+            if ((object.getValue() instanceof Map)
+                    && catalog.equals(((Map<?, ?>) object.getValue())
+                            .get("Type"))) {
+                root = new Reference(object.getKey(), 0);
+            }
+        }
+        if (root == null) {
+            throw new IOException("The PDF has no catalog");
+        }
+        m_trailer = new HashMap<>();
+        m_trailer.put("Root", root);
+    }
+
+    /**
+     * Gets an object, for scanning a broken PDF.
+     *
+     * @param number
+     *            the object number
+     * @return the object or null if it can't be parsed
+     */
+    private Object getObjectQuietly(int number) {
+        try {
+            return getObject(number);
+        } catch (IOException | RuntimeException e) {
+            m_objects.put(number, null);
+            return null;
+        }
+    }
+
+    /**
+     * Records the objects of an object stream that weren't found in the file
+     * itself.
+     *
+     * @param number
+     *            the number of the object stream
+     * @param stream
+     *            the object stream
+     */
+    private void addCompressedObjects(int number, Stream stream) {
+        try {
+            Parser parser = new Parser(decode(stream), 0);
+            int count = getInt(stream.getDictionary(), "N", 0);
+            for (int i = 0; i < count; i++) {
+                int object = (int) parser.readInteger();
+                parser.readInteger();
+                if (!m_offsets.containsKey(object)) {
+                    m_compressed.put(object, new int[] { number, i });
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the objects of a broken stream are just missing
+        }
+    }
+
+    /**
+     * Reads the objects of an object stream that belong to it according to
+     * the cross reference sections.
+     *
+     * @param number
+     *            the number of the object stream
+     * @throws IOException
+     *             if the stream is broken
+     */
+    private void readObjectStream(int number) throws IOException {
+        Object object = getObject(number);
+        if (!(object instanceof Stream)) {
+            throw new IOException("Object stream " + number + " is missing");
+        }
+        Stream stream = (Stream) object;
+        byte[] data = decode(stream);
+        int count = getInt(stream.getDictionary(), "N", 0);
+        int first = getInt(stream.getDictionary(), "First", 0);
+        Parser header = new Parser(data, 0);
+        for (int i = 0; i < count; i++) {
+            int compressed = (int) header.readInteger();
+            int offset = (int) header.readInteger();
+            int[] location = m_compressed.get(compressed);
+            if ((location != null) && (location[0] == number)
+                    && !m_objects.containsKey(compressed)) {
+                m_objects.put(compressed,
+                        new Parser(data, first + offset).readObject());
+            }
+        }
+    }
+
+    /**
+     * Gets the number of the catalog.
+     *
+     * @return the object number
+     * @throws IOException
+     *             if the trailer has no catalog
+     */
+    private int getRoot() throws IOException {
+        Object root = m_trailer.get("Root");
+        if (!(root instanceof Reference)) {
+            throw new IOException("The trailer has no catalog");
+        }
+        return ((Reference) root).getNumber();
+    }
+
+    /**
+     * Finds the last occurrence of a keyword in the file.
+     *
+     * @param keyword
+     *            the keyword
+     * @return its offset or -1 if it doesn't occur
+     */
+    private int lastIndexOf(String keyword) {
+        byte[] bytes = keyword.getBytes(StandardCharsets.US_ASCII);
+        for (int i = m_data.length - bytes.length; i >= 0; i--) {
+            if (matches(m_data, i, bytes)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets an integer from a dictionary.
+     *
+     * @param dictionary
+     *            the dictionary
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value if the key is missing
+     * @return the integer
+     * @throws IOException
+     *             if the value is a reference that can't be resolved
+     */
+    private int getInt(Map<?, ?> dictionary, String key, int defaultValue)
+            throws IOException {
+        Object value = resolve(dictionary.get(key));
+        return (value instanceof Long) ? ((Long) value).intValue()
+                : defaultValue;
+    }
+
+    /**
+     * Casts an object to a dictionary.
+     *
+     * @param object
+     *            the object
+     * @return the dictionary
+     * @throws IOException
+     *             if the object isn't a dictionary
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asDictionary(Object object)
+            throws IOException {
+        if (!(object instanceof Map)) {
+            throw new IOException("Expected a dictionary");
+        }
+        return (Map<String, Object>) object;
+    }
+
+    /**
+     * Inflates zlib data. Data after the end of the zlib stream and a
+     * missing end are tolerated, writers get this wrong now and then.
+     *
+     * @param data
+     *            the compressed data
+     * @return the inflated data
+     * @throws IOException
+     *             if the data isn't zlib data
+     */
+    private static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if ((length == 0)
+                        && (inflater.needsInput() || inflater
+                                .needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Broken compressed stream", e);
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reverses the PNG predictors applied to every row of the data.
+     *
+     * @param data
+     *            the predicted data, every row starts with its predictor
+     * @param colors
+     *            the number of components per sample
+     * @param bitsPerComponent
+     *            the bits of a component
+     * @param columns
+     *            the number of samples in a row
+     * @return the data without predictors
+     * @throws IOException
+     *             if a row uses an unknown predictor
+     */
+    private static byte[] unpredict(byte[] data, int colors,
+            int bitsPerComponent, int columns) throws IOException {
+        int sampleLength = Math.max(1, (colors * bitsPerComponent + 7) / 8);
+        int rowLength = (colors * bitsPerComponent * columns + 7) / 8;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        byte[] prior = new byte[rowLength];
+        for (int row = 0; row + rowLength < data.length; row += rowLength + 1) {
+            int predictor = data[row];
+            byte[] current =
+                    Arrays.copyOfRange(data, row + 1, row + 1 + rowLength);
+            for (int i = 0; i < rowLength; i++) {
+                int left =
+                        (i >= sampleLength) ? current[i - sampleLength] & 0xFF
+                                : 0;
+                int up = prior[i] & 0xFF;
+                int upLeft =
+                        (i >= sampleLength) ? prior[i - sampleLength] & 0xFF
+                                : 0;
+                switch (predictor) {
+                case 0:
+                    break;
+                case 1:
+                    current[i] += left;
+                    break;
+                case 2:
+                    current[i] += up;
+                    break;
+                case 3:
+                    current[i] += (left + up) / 2;
+                    break;
+                case 4:
+                    current[i] += paeth(left, up, upLeft);
+                    break;
+                default:
+                    throw new IOException("Unknown PNG predictor "
+                            + predictor);
+                }
+            }
+            out.write(current, 0, rowLength);
+            prior = current;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The Paeth predictor of PNG.
+     *
+     * @param left
+     *            the byte to the left
+     * @param up
+     *            the byte above
+     * @param upLeft
+     *            the byte above to the left
+     * @return the one of the three closest to their gradient
+     */
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if ((distanceLeft <= distanceUp) && (distanceLeft <= distanceUpLeft)) {
+            return left;
+        }
+        return (distanceUp <= distanceUpLeft) ? up : upLeft;
+    }
+
+    /**
+     * Checks whether bytes occur at a position.
+     *
+     * @param data
+     *            the data
+     * @param position
+     *            the position
+     * @param bytes
+     *            the bytes
+     * @return true if the data has the bytes at the position
+     */
+    private static boolean matches(byte[] data, int position, byte[] bytes) {
+        if ((position < 0) || (position + bytes.length > data.length)) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (data[position + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads objects from a byte array, the file itself or the decoded data of
+     * an object stream.
+     */
+    private final class Parser {
+
+        private final byte[] m_bytes;
+        private int m_position;
+
+        /**
+         * Creates a parser.
+         *
+         * @param bytes
+         *            the data
+         * @param position
+         *            where parsing starts
+         */
+        Parser(byte[] bytes, int position) {
+            m_bytes = bytes;
+            m_position = position;
+        }
+
+        /**
+         * Reads an indirect object whose number and generation were read
+         * already, a stream if the object is followed by one.
+         *
+         * @return the object
+         * @throws IOException
+         *             if the object is broken
+         */
+        Object readIndirectObject() throws IOException {
+            if (!skipKeyword("obj")) {
+                throw new IOException("Expected an object");
+            }
+            Object object = readObject();
+            if (!(object instanceof Map) || !skipKeyword("stream")) {
+                return object;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> dictionary = (Map<String, Object>) object;
+
+            // the keyword is followed by CRLF or LF, some writers use CR
+            if ((m_position < m_bytes.length)
+                    && (m_bytes[m_position] == '\r')) {
+                m_position++;
+            }
+            if ((m_position < m_bytes.length)
+                    && (m_bytes[m_position] == '\n')) {
+                m_position++;
+            }
+            int start = m_position;
+            int end = -1;
+            Object length = resolveQuietly(dictionary.get("Length"));
+            if ((length instanceof Long)
+                    && (start + (Long) length <= m_bytes.length)
+                    && isEndStream(start + ((Long) length).intValue())) {
+                end = start + ((Long) length).intValue();
+            } else {
+                // the length is wrong, the data ends before endstream
+                end = indexOf("endstream", start);
+                if (end < 0) {
+                    throw new IOException("Stream without end");
+                }
+                if ((end > start) && (m_bytes[end - 1] == '\n')) {
+                    end--;
+                }
+                if ((end > start) && (m_bytes[end - 1] == '\r')) {
+                    end--;
+                }
+            }
+            m_position = end;
+            skipKeyword("endstream");
+            return new Stream(dictionary, Arrays.copyOfRange(m_bytes, start,
+                    end));
+        }
+
+        /**
+         * Reads a direct object.
+         *
+         * @return the object
+         * @throws IOException
+         *             if there is no valid object
+         */
+        Object readObject() throws IOException {
+            skipSpace();
+            if (m_position >= m_bytes.length) {
+                throw new IOException("Unexpected end of data");
+            }
+            int start = m_position;
+            int c = m_bytes[m_position];
+            if (c == '/') {
+                m_position++;
+                return new Name(new String(readToken(),
+                        StandardCharsets.ISO_8859_1));
+            } else if (c == '[') {
+                m_position++;
+                List<Object> array = new ArrayList<>();
+                while (!skip(']')) {
+                    array.add(readObject());
+                }
+                return array;
+            } else if ((c == '<') && (peek(1) == '<')) {
+                m_position += 2;
+                Map<String, Object> dictionary = new LinkedHashMap<>();
+                while (!skip('>')) {
+                    Object key = readObject();
+                    if (!(key instanceof Name)) {
+                        throw new IOException("Expected a name");
+                    }
+                    dictionary.put(((Name) key).getName(), readObject());
+                }
+                if (!skip('>')) {
+                    throw new IOException("Expected >>");
+                }
+                return dictionary;
+            } else if (c == '<') {
+                while ((m_position < m_bytes.length)
+                        && (m_bytes[m_position] != '>')) {
+                    m_position++;
+                }
+                m_position++;
+                return new Raw(Arrays.copyOfRange(m_bytes, start,
+                        Math.min(m_position, m_bytes.length)));
+            } else if (c == '(') {
+                readLiteralString();
+                return new Raw(Arrays.copyOfRange(m_bytes, start, m_position));
+            }
+
+            byte[] token = readToken();
+            if (token.length == 0) {
+                throw new IOException("Unexpected character " + (char) c);
+            }
+            String text = new String(token, StandardCharsets.ISO_8859_1);
+            if (!text.matches("[+-]?\\d{1,18}")) {
+                return new Raw(token);
+            }
+            Long value = Long.valueOf(text.startsWith("+") ? text
+                    .substring(1) : text);
+
+            // an integer may be the start of a reference
+            int afterValue = m_position;
+            skipSpace();
+            byte[] generation = readToken();
+            skipSpace();
+            if ((generation.length > 0)
+                    && new String(generation, StandardCharsets.ISO_8859_1)
+                            .matches("\\d{1,5}") && (peek(0) == 'R')
+                    && isDelimiter(peek(1))) {
+                m_position++;
+                return new Reference(value.intValue(), Integer.parseInt(
+                        new String(generation, StandardCharsets.ISO_8859_1)));
+            }
+            m_position = afterValue;
+            return value;
+        }
+
+        /**
+         * Reads an integer.
+         *
+         * @return the integer
+         * @throws IOException
+         *             if there is no integer
+         */
+        long readInteger() throws IOException {
+            skipSpace();
+            String token =
+                    new String(readToken(), StandardCharsets.ISO_8859_1);
+            if (!token.matches("\\d{1,18}")) {
+                throw new IOException("Expected an integer instead of "
+                        + token);
+            }
+            return Long.parseLong(token);
+        }
+
+        /**
+         * Reads a keyword.
+         *
+         * @return the keyword, empty if there is none
+         */
+        String readKeyword() {
+            skipSpace();
+            return new String(readToken(), StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Skips a keyword if it comes next.
+         *
+         * @param keyword
+         *            the keyword
+         * @return true if the keyword was skipped
+         */
+        boolean skipKeyword(String keyword) {
+            int start = m_position;
+            if (keyword.equals(readKeyword())) {
+                return true;
+            }
+            m_position = start;
+            return false;
+        }
+
+        /**
+         * Skips a delimiter if it comes next.
+         *
+         * @param delimiter
+         *            the delimiter
+         * @return true if the delimiter was skipped
+         */
+        private boolean skip(char delimiter) {
+            skipSpace();
+            if (peek(0) == delimiter) {
+                m_position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Skips white space and comments.
+         */
+        private void skipSpace() {
+            while (m_position < m_bytes.length) {
+                int c = m_bytes[m_position];
+                if (c == '%') {
+                    while ((m_position < m_bytes.length)
+                            && (m_bytes[m_position] != '\n')
+                            && (m_bytes[m_position] != '\r')) {
+                        m_position++;
+                    }
+                } else if (isSpace(c)) {
+                    m_position++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads regular characters up to the next delimiter or white space.
+         *
+         * @return the characters
+         */
+        private byte[] readToken() {
+            int start = m_position;
+            while ((m_position < m_bytes.length)
+                    && !isDelimiter(m_bytes[m_position] & 0xFF)) {
+                m_position++;
+            }
+            return Arrays.copyOfRange(m_bytes, start, m_position);
+        }
+
+        /**
+         * Skips a literal string with its balanced parentheses and escapes.
+         *
+         * @throws IOException
+         *             if the string doesn't end
+         */
+        private void readLiteralString() throws IOException {
+            int depth = 0;
+            do {
+                if (m_position >= m_bytes.length) {
+                    throw new IOException("String without end");
+                }
+                int c = m_bytes[m_position++];
+                if (c == '\\') {
+                    m_position++;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+
+        /**
+         * Checks whether endstream follows a position, after white space.
+         *
+         * @param position
+         *            the position
+         * @return true if endstream follows
+         */
+        private boolean isEndStream(int position) {
+            int i = position;
+            while ((i < m_bytes.length) && isSpace(m_bytes[i])) {
+                i++;
+            }
+            return matches(m_bytes, i,
+                    "endstream".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Finds a keyword.
+         *
+         * @param keyword
+         *            the keyword
+         * @param from
+         *            where the search starts
+         * @return the offset of the keyword or -1 if it doesn't occur
+         */
+        private int indexOf(String keyword, int from) {
+            byte[] bytes = keyword.getBytes(StandardCharsets.US_ASCII);
+            for (int i = from; i + bytes.length <= m_bytes.length; i++) {
+                if (matches(m_bytes, i, bytes)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Resolves a reference, for stream lengths that may point to objects
+         * not known yet.
+         *
+         * @param value
+         *            the value
+         * @return the resolved value or null if it can't be resolved
+         */
+        private Object resolveQuietly(Object value) {
+            try {
+                return resolve(value);
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Looks ahead.
+         *
+         * @param offset
+         *            the distance from the current position
+         * @return the byte there or -1 at the end
+         */
+        private int peek(int offset) {
+            int position = m_position + offset;
+            return (position < m_bytes.length) ? m_bytes[position] & 0xFF
+                    : -1;
+        }
+    }
+
+    /**
+     * Checks for white space.
+     *
+     * @param c
+     *            the byte
+     * @return true if the byte is white space
+     */
+    private static boolean isSpace(int c) {
+        return (c == ' ') || (c == '\n') || (c == '\r') || (c == '\t')
+                || (c == '\f') || (c == 0);
+    }
+
+    /**
+     * Checks for a byte that ends a token.
+     *
+     * @param c
+     *            the byte, -1 at the end of the data
+     * @return true if the byte is white space, a delimiter or the end
+     */
+    private static boolean isDelimiter(int c) {
+        return (c < 0) || isSpace(c) || ("()<>[]{}/%".indexOf(c) >= 0);
+    }
+
+    /**
+     * A page and its number.
+     */
+    static final class Page {
+
+        private final int m_number;
+        private final Map<String, Object> m_dictionary;
+
+        /**
+         * Creates a page.
+         *
+         * @param number
+         *            the object number
+         * @param dictionary
+         *            the page with the inherited attributes
+         */
+        Page(int number, Map<String, Object> dictionary) {
+            m_number = number;
+            m_dictionary = dictionary;
+        }
+
+        /**
+         * Gets the object number.
+         *
+         * @return the object number
+         */
+        int getNumber() {
+            return m_number;
+        }
+
+        /**
+         * Gets the page dictionary with the inherited attributes.
+         *
+         * @return the dictionary
+         */
+        Map<String, Object> getDictionary() {
+            return m_dictionary;
+        }
+    }
+
+    /**
+     * A reference to an indirect object.
+     */
+    static final class Reference {
+
+        private final int m_number;
+        private final int m_generation;
+
+        /**
+         * Creates a reference.
+         *
+         * @param number
+         *            the object number
+         * @param generation
+         *            the generation
+         */
+        Reference(int number, int generation) {
+            m_number = number;
+            m_generation = generation;
+        }
+
+        /**
+         * Gets the object number.
+         *
+         * @return the object number
+         */
+        int getNumber() {
+            return m_number;
+        }
+
+        @Override
+        public String toString() {
+            return m_number + " " + m_generation + " R";
+        }
+    }
+
+    /**
+     * A name.
+     */
+    static final class Name {
+
+        private final String m_name;
+
+        /**
+         * Creates a name.
+         *
+         * @param name
+         *            the name without its slash
+         */
+        Name(String name) {
+            m_name = name;
+        }
+
+        /**
+         * Gets the name.
+         *
+         * @return the name without its slash
+         */
+        String getName() {
+            return m_name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Name) && m_name.equals(((Name) obj).m_name);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "/" + m_name;
+        }
+    }
+
+    /**
+     * A token that is copied as it was written.
+     */
+    static final class Raw {
+
+        private final byte[] m_bytes;
+
+        /**
+         * Creates a token.
+         *
+         * @param bytes
+         *            the token
+         */
+        Raw(byte[] bytes) {
+            m_bytes = bytes;
+        }
+
+        /**
+         * Gets the token.
+         *
+         * @return the token
+         */
+        byte[] getBytes() {
+            return m_bytes;
+        }
+    }
+
+    /**
+     * A stream with its still encoded data.
+     */
+    static final class Stream {
+
+        private final Map<String, Object> m_dictionary;
+        private final byte[] m_data;
+
+        /**
+         * Creates a stream.
+         *
+         * @param dictionary
+         *            the stream dictionary
+         * @param data
+         *            the encoded data
+         */
+        Stream(Map<String, Object> dictionary, byte[] data) {
+            m_dictionary = dictionary;
+            m_data = data;
+        }
+
+        /**
+         * Gets the stream dictionary.
+         *
+         * @return the dictionary
+         */
+        Map<String, Object> getDictionary() {
+            return m_dictionary;
+        }
+
+        /**
+         * Gets the encoded data.
+         *
+         * @return the data
+         */
+        byte[] getData() {
+            return m_data;
+        }
+    }
+}
@@ -72,6 +72,7 @@ public final class PlainGenerator  {
 
         writeHeader(outputFile, submission, courseName, exerciseName);
         writeOverview(outputFile, submission);
+        writeExtractionProblem(outputFile, submission);
         writeTestResult(outputFile, submission);
 
         // if there are compile errors, put these in the text file instead of
@@ -238,6 +239,31 @@ public final class PlainGenerator  {
         writer.close();
     }
 
+    /**
+     * Writes why the archive of the submission wasn't unpacked, if it
+     * wasn't.
+     * 
+     * @param file
+     *            File the problem gets written into.
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private static void writeExtractionProblem(File file,
+            Submission submission) throws IOException {
+        String problem = submission.getExtractionProblem();
+        if (problem == null) {
+            return;
+        }
+        FileWriterWithEncoding writer = new FileWriterWithEncoding(file,
+                "UTF-8", true);
+
+        writer.append("Archiv nicht entpackt: " + problem + "\n");
+
+        writer.close();
+    }
+
     /**
      * Writes the test result into the text file.
      * 
@@ -13,7 +13,7 @@ import de.teamgrit.grit.preprocess.tokenize.Submission;
 public class ReportGenerator {
 
     public enum ReportType {
-        PDF, PLAIN
+        PDF, PDF_PRECOMPILED, PDF_DIRECT, PLAIN
     }
 
     public static void generateReport(
@@ -24,6 +24,14 @@ public class ReportGenerator {
             PdfCreator.createPdfFromSubmission(submission,
                     targetLocation, courseName, exerciseName);
             break;
+        case PDF_PRECOMPILED:
+            PdfCreator.createPdfFromSubmissionPrecompiled(submission,
+                    targetLocation, courseName, exerciseName);
+            break;
+        case PDF_DIRECT:
+            PdfGenerator.generatePdf(submission, targetLocation, courseName,
+                    exerciseName);
+            break;
         case PLAIN:
             PlainGenerator
                     .generatePlain(submission, targetLocation, courseName,
@@ -38,4 +46,12 @@ public class ReportGenerator {
         PdfConcatenator.concatPDFS(folderWithPdfs, outPath, exerciseName,
                 studentsWithoutSubmissions);
     }
+
+    public static void concatenatePdfReports(
+            Path folderWithPdfs, Path outPath, String exerciseName,
+            List<Student> studentsWithoutSubmissions, boolean nativeMerge)
+            throws IOException {
+        PdfConcatenator.concatPDFS(folderWithPdfs, outPath, exerciseName,
+                studentsWithoutSubmissions, nativeMerge);
+    }
 }
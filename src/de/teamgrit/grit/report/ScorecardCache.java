@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import de.teamgrit.grit.checking.CheckingResult;
+import de.teamgrit.grit.checking.CompilerOutput;
+import de.teamgrit.grit.checking.TestOutput;
+import de.teamgrit.grit.preprocess.tokenize.Submission;
+import de.teamgrit.grit.report.ReportGenerator.ReportType;
+import de.teamgrit.grit.util.hashing.SHA1Generator;
+
+/**
+ * An on-disk cache for rendered PDF scorecards. Entries are addressed by
+ * everything a scorecard is rendered from: the hash of the submission, the
+ * test suite, the report template, the names and the date printed on it and
+ * the checking result. When an exercise is processed again on the same day,
+ * e.g. after the tests were fixed, only the scorecards whose inputs changed
+ * have to be rendered; on a later day all of them get the new date.
+ */
+public class ScorecardCache {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    /* bump whenever the scorecard generators change their output */
+    private static final int TEMPLATE_VERSION = 1;
+
+    private static final String EXTENSION = "pdf";
+
+    private final Path m_cacheLocation;
+
+    /**
+     * Creates a cache that stores its entries in the given directory.
+     *
+     * @param cacheLocation
+     *            the directory holding the cache entries, created if needed
+     */
+    public ScorecardCache(Path cacheLocation) {
+        m_cacheLocation = cacheLocation;
+    }
+
+    /**
+     * Combines the inputs of a scorecard into a cache key.
+     *
+     * @param submission
+     *            the checked submission
+     * @param testSuiteHash
+     *            the hash of the test suite the submission was tested with,
+     *            see {@code CompileChecker.getTestSuiteHash()}
+     * @param courseName
+     *            the name of the course the exercise belongs to
+     * @param exerciseName
+     *            the name of the exercise
+     * @param type
+     *            the kind of scorecard
+     * @return the key or null if the scorecard can't be cached
+     */
+    public static String createKey(Submission submission,
+            String testSuiteHash, String courseName, String exerciseName,
+            ReportType type) {
+        if ((submission.getSHA1Hash() == null) || (testSuiteHash == null)
+                || (submission.getCheckingResult() == null)
+                || (type == ReportType.PLAIN)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(submission.getSHA1Hash()).append('\n');
+        key.append(testSuiteHash).append('\n');
+        key.append(TEMPLATE_VERSION).append(':').append(type).append(':')
+                .append(getPreambleHash()).append('\n');
+        // the scorecards print the day they were rendered on
+        key.append(new SimpleDateFormat("yyyy-MM-dd").format(new Date()))
+                .append('\n');
+        key.append(courseName).append('\u0000').append(exerciseName)
+                .append('\u0000').append(submission.getStudent().getName())
+                .append('\n');
+        key.append(submission.getExtractionProblem()).append('\n');
+        appendCheckingResult(key, submission.getCheckingResult());
+        return SHA1Generator.calculateSHA1Hash(key.toString());
+    }
+
+    /**
+     * Looks up a scorecard. On a hit, the cached scorecard is copied into the
+     * output directory under the name the generators use.
+     *
+     * @param key
+     *            the key created by {@link #createKey}
+     * @param submission
+     *            the submission the scorecard belongs to
+     * @param outdir
+     *            the directory the scorecards are rendered to
+     * @return true if the scorecard was restored
+     */
+    public boolean load(String key, Submission submission, Path outdir) {
+        Path entry = m_cacheLocation.resolve(key + "." + EXTENSION);
+        if (!Files.isRegularFile(entry)) {
+            return false;
+        }
+        try {
+            Files.copy(entry, getScorecard(submission, outdir),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warning("Ignoring unreadable scorecard cache entry "
+                    + entry + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stores a rendered scorecard. The entry is copied to a temporary file
+     * and moved into place, so concurrent readers never see half written
+     * entries.
+     *
+     * @param key
+     *            the key created by {@link #createKey}
+     * @param submission
+     *            the submission the scorecard belongs to
+     * @param outdir
+     *            the directory the scorecard was rendered to
+     */
+    public void store(String key, Submission submission, Path outdir) {
+        Path scorecard = getScorecard(submission, outdir);
+        Path entry = m_cacheLocation.resolve(key + "." + EXTENSION);
+        if (!Files.isRegularFile(scorecard) || Files.exists(entry)) {
+            return;
+        }
+        Path temp =
+                m_cacheLocation.resolve(".tmp-" + UUID.randomUUID().toString());
+        try {
+            Files.createDirectories(m_cacheLocation);
+            Files.copy(scorecard, temp);
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry);
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Could not store scorecard cache entry " + key
+                    + ": " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                LOGGER.fine("Could not delete " + temp + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes all entries that weren't used by the last run, they belong to
+     * submissions, tests or templates that have changed since.
+     *
+     * @param keys
+     *            the keys of the entries to keep
+     */
+    public void retainOnly(Set<String> keys) {
+        File[] entries = m_cacheLocation.toFile().listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            String name = entry.getName();
+            if (EXTENSION.equals(FilenameUtils.getExtension(name))
+                    && !keys.contains(FilenameUtils.getBaseName(name))
+                    && !entry.delete()) {
+                LOGGER.warning("Could not delete outdated scorecard "
+                        + entry);
+            }
+        }
+    }
+
+    /**
+     * Gets the file the generators render the scorecard of a submission to.
+     *
+     * @param submission
+     *            the submission
+     * @param outdir
+     *            the directory the scorecards are rendered to
+     * @return the scorecard
+     */
+    private static Path getScorecard(Submission submission, Path outdir) {
+        return outdir.resolve(submission.getStudent().getName()
+                + ".report.pdf");
+    }
+
+    /**
+     * Appends everything of a checking result that is shown on a scorecard,
+     * so a flaky test renders the scorecard again.
+     *
+     * @param key
+     *            the key being built
+     * @param result
+     *            the checking result
+     */
+    private static void appendCheckingResult(StringBuilder key,
+            CheckingResult result) {
+        CompilerOutput compilerOutput = result.getCompilerOutput();
+        if (compilerOutput != null) {
+            key.append(compilerOutput.isCleanCompile()).append('\n');
+            for (String error : compilerOutput.getCompilerErrors()) {
+                key.append("E:").append(error).append('\n');
+            }
+            for (String warning : compilerOutput.getCompilerWarnings()) {
+                key.append("W:").append(warning).append('\n');
+            }
+            for (String info : compilerOutput.getCompilerInfos()) {
+                key.append("I:").append(info).append('\n');
+            }
+        }
+        TestOutput testOutput = result.getTestResults();
+        if (testOutput != null) {
+            key.append(testOutput.getDidTest()).append(':')
+                    .append(testOutput.getPassedTestCount()).append(':')
+                    .append(testOutput.getTestCount()).append('\n');
+            for (Result test : testOutput.getResults()) {
+                key.append(test.wasSuccessful()).append('\n');
+                for (Failure failure : test.getFailures()) {
+                    key.append("F:").append(failure).append('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes the LaTeX preamble, changing it changes all scorecards.
+     *
+     * @return the hash, empty if the preamble can't be read
+     */
+    private static String getPreambleHash() {
+        Path preamble = TexFormat.getPreamble();
+        try {
+            if (Files.isRegularFile(preamble)) {
+                return SHA1Generator.calculateSHA1HashOfFile(preamble);
+            }
+        } catch (IOException e) {
+            LOGGER.fine("Could not hash " + preamble + ": " + e.getMessage());
+        }
+        return "";
+    }
+}
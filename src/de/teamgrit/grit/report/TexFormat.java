@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.report;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import de.teamgrit.grit.util.process.ProcessResult;
+import de.teamgrit.grit.util.process.ProcessRunner;
+
+/**
+ * The report preamble precompiled into a LaTeX format file. Loading the
+ * format restores the state after the preamble (document class, listings,
+ * babel, fonts) at once, instead of reading all packages again for every
+ * scorecard.
+ *
+ * <p>
+ * The format is dumped once per start of GRIT, into a temporary directory,
+ * since it only works with the TeX installation it was made with. If
+ * dumping fails, scorecards are rendered with the full preamble.
+ * </p>
+ */
+final class TexFormat {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    private static final String FORMAT_NAME = "grit-report";
+
+    private static boolean s_dumped = false;
+    private static Path s_format = null;
+
+    /**
+     * This is a static class, so no instances required.
+     */
+    private TexFormat() {
+    }
+
+    /**
+     * Gets the precompiled preamble, dumps it on the first call.
+     *
+     * @return the format file without its extension, as pdflatex expects it
+     *         for -fmt, or null if the format couldn't be dumped
+     */
+    static synchronized Path getFormat() {
+        if (!s_dumped) {
+            s_dumped = true;
+            s_format = dumpFormat();
+        }
+        return s_format;
+    }
+
+    /**
+     * Gets the preamble every scorecard starts with.
+     *
+     * @return the path of the preamble
+     */
+    static Path getPreamble() {
+        return Paths.get(System.getProperty("user.dir"), "res", "tex",
+                "report_preamble.tex");
+    }
+
+    /**
+     * Runs pdflatex in initex mode on the preamble and dumps the state after
+     * it.
+     *
+     * @return the format file without its extension or null on failure
+     */
+    private static Path dumpFormat() {
+        try {
+            final Path directory = Files.createTempDirectory("grit-tex");
+            // delete-on-exit only covers what exists when it is registered,
+            // so the whole directory is removed by a hook
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread("grit-tex-cleanup") {
+                        @Override
+                        public void run() {
+                            FileUtils.deleteQuietly(directory.toFile());
+                        }
+                    });
+            Files.copy(getPreamble(), directory.resolve(FORMAT_NAME + ".tex"));
+
+            // load the regular LaTeX format, read the preamble and dump
+            List<String> command = new ArrayList<>();
+            command.add("pdflatex");
+            command.add("-ini");
+            command.add("-interaction=batchmode");
+            command.add("-jobname=" + FORMAT_NAME);
+            command.add("&pdflatex " + FORMAT_NAME + ".tex\\dump");
+            ProcessResult result =
+                    new ProcessRunner(command).directory(directory).run();
+
+            Path format = directory.resolve(FORMAT_NAME + ".fmt");
+            if ((result.getExitValue() != 0) || !Files.exists(format)) {
+                LOGGER.warning("Could not precompile the report preamble, "
+                        + "see " + directory.resolve(FORMAT_NAME + ".log"));
+                return null;
+            }
+            LOGGER.info("Precompiled the report preamble into " + format);
+            return directory.resolve(FORMAT_NAME);
+        } catch (IOException e) {
+            LOGGER.warning("Could not precompile the report preamble: "
+                    + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -21,7 +21,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -33,6 +34,7 @@ import org.junit.runner.notification.Failure;
 import de.teamgrit.grit.checking.CheckingResult;
 import de.teamgrit.grit.checking.TestOutput;
 import de.teamgrit.grit.preprocess.tokenize.Submission;
+import de.teamgrit.grit.preprocess.tokenize.SubmissionManifest;
 
 /**
  * This class supplies the static method generateCard to generate a .tex file
@@ -67,6 +69,34 @@ class TexGenerator {
     public static Path generateTex(final Submission submission,
             final Path outdir, final String courseName,
             final String exerciseName) throws IOException {
+        return generateTex(submission, outdir, courseName, exerciseName,
+                true);
+    }
+
+    /**
+     * This method creates a TeX file from a Submission instance, optionally
+     * without the preamble. Such a file has to be compiled with the
+     * precompiled preamble from {@link TexFormat}.
+     * 
+     * @param submission
+     *            A SubmissionObj containing the information that the content
+     *            gets generated from.
+     * @param outdir
+     *            the output directory
+     * @param courseName
+     *            the name of the course the exercise belongs to
+     * @param exerciseName
+     *            the name of the exercise
+     * @param withPreamble
+     *            false to leave out the preamble
+     * @return The Path to the created TeX file.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    public static Path generateTex(final Submission submission,
+            final Path outdir, final String courseName,
+            final String exerciseName, final boolean withPreamble)
+            throws IOException {
 
         final File location = outdir.toFile();
 
@@ -77,9 +107,12 @@ class TexGenerator {
         }
         file.createNewFile();
 
-        writePreamble(file);
+        if (withPreamble) {
+            writePreamble(file);
+        }
         writeHeader(file, submission, courseName, exerciseName);
         writeOverview(file, submission);
+        writeExtractionProblem(file, submission);
         writeTestResult(file, submission);
 
         // if there are compile errors, put these in the .tex file instead of
@@ -286,6 +319,35 @@ class TexGenerator {
         writer.close();
     }
 
+    /**
+     * Writes why the archive of the submission wasn't unpacked, if it
+     * wasn't.
+     * 
+     * @param file
+     *            File the problem gets written into.
+     * @param submission
+     *            SubmissionObj the needed information gets taken from.
+     * @throws IOException
+     *             If something goes wrong when writing.
+     */
+    private static void writeExtractionProblem(File file,
+            Submission submission) throws IOException {
+        String problem = submission.getExtractionProblem();
+        if (problem == null) {
+            return;
+        }
+        FileWriterWithEncoding writer = new FileWriterWithEncoding(file,
+                "UTF-8", true);
+
+        writer.append("\\paragraph{Archiv nicht entpackt}~\\\\\n");
+        writer.append("\\begin{lstlisting}[language=bash, breaklines=true, "
+                + "basicstyle=\\color{black}\\footnotesize\\ttfamily]\n");
+        writer.append(problem + "\n");
+        writer.append("\\end{lstlisting}\n");
+
+        writer.close();
+    }
+
     /**
      * Writes the Preamble into the .tex file.
      * 
@@ -295,9 +357,7 @@ class TexGenerator {
      *             If something goes wrong when writing.
      */
     private static void writePreamble(File file) throws IOException {
-        final File preamble = new File(Paths.get(
-                System.getProperty("user.dir"), "res", "tex",
-                "report_preamble.tex").toUri());
+        final File preamble = TexFormat.getPreamble().toFile();
 
         String preambleToString = FileUtils.readFileToString(preamble, "UTF-8");
 
@@ -326,8 +386,20 @@ class TexGenerator {
 
         writer.append("\\paragraph{Code}~\\\\\n");
 
-        for (File f : FileUtils.listFiles(submission.getSourceCodeLocation()
-                .toFile(), FileFilterUtils.fileFileFilter(), TrueFileFilter.INSTANCE)) {
+        // the files were listed when the submission was tokenized
+        List<File> sourceFiles = new ArrayList<>();
+        SubmissionManifest manifest = submission.getManifest();
+        if (manifest != null) {
+            for (Path sourceFile : manifest.getFiles()) {
+                sourceFiles.add(sourceFile.toFile());
+            }
+        } else {
+            sourceFiles.addAll(FileUtils.listFiles(submission
+                    .getSourceCodeLocation().toFile(), FileFilterUtils
+                    .fileFileFilter(), TrueFileFilter.INSTANCE));
+        }
+
+        for (File f : sourceFiles) {
 
             // determines programming language of the file and adjusts the
             // lstlisting according to it
@@ -28,6 +28,8 @@ import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 import org.apache.commons.io.FileUtils;
 
+import de.teamgrit.grit.preprocess.archivehandling.ExtractionLimits;
+
 /**
  * 
  * @author <a href=mailto:gabriel.einsdorf@uni-konstanz.de>Gabriel Einsdorf</a>
@@ -52,6 +54,26 @@ public class Configuration {
     private String m_PASSWORD_ADMIN;
     /* server info */
     private int m_SERVER_PORT;
+    /* processing info */
+    private int m_CHECKING_WORKERS;
+    private int m_SCHEDULER_WORKERS;
+    private int m_EXTRACT_WORKERS;
+    private int m_REPORT_WORKERS;
+    private int m_PIPELINE_QUEUE_SIZE;
+    private long m_EXTRACT_MAX_MEGABYTES;
+    private int m_EXTRACT_MAX_ENTRIES;
+    private int m_EXTRACT_MAX_RATIO;
+    private int m_EXTRACT_MAX_DEPTH;
+    private boolean m_IN_PROCESS_COMPILE;
+    private boolean m_FORKED_TESTING;
+    private int m_TEST_WORKERS;
+    private int m_TEST_JOBS_PER_WORKER;
+    private int m_TEST_MAX_HEAP;
+    private long m_TEST_TIMEOUT;
+    private long m_SUBMISSION_TEST_TIMEOUT;
+    private boolean m_PRECOMPILED_PREAMBLE;
+    private boolean m_DIRECT_PDF;
+    private boolean m_NATIVE_MERGE;
 
     // --------------------------- CONSTRUCTORS ---------------------------
 
@@ -96,6 +118,182 @@ public class Configuration {
         return m_SERVER_PORT;
     }
 
+    /**
+     * Gets the number of submissions that are checked in parallel after the
+     * deadline. A value of zero or less in the config means one worker per
+     * available processor.
+     * 
+     * @return the number of checking workers, at least one
+     */
+    public int getCheckingWorkers() {
+        if (m_CHECKING_WORKERS <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return m_CHECKING_WORKERS;
+    }
+
+    /**
+     * Gets the number of exercises whose polls or post deadline checks may
+     * run at the same time. Each of them checks its submissions with its own
+     * extract, checking, test and report workers, which come on top of this
+     * number. An exercise never runs twice at the same time.
+     * 
+     * @return the number of scheduler workers, at least one
+     */
+    public int getSchedulerWorkers() {
+        return Math.max(1, m_SCHEDULER_WORKERS);
+    }
+
+    /**
+     * Gets the number of submission archives that are unpacked at the same
+     * time. A value of zero or less in the config means one worker per
+     * available processor.
+     * 
+     * @return the number of extracting workers, at least one
+     */
+    public int getExtractWorkers() {
+        if (m_EXTRACT_WORKERS <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return m_EXTRACT_WORKERS;
+    }
+
+    /**
+     * Gets the number of scorecards that are rendered at the same time, each
+     * by a pdflatex process of its own. A value of zero or less in the
+     * config means one worker per available processor.
+     * 
+     * @return the number of report workers, at least one
+     */
+    public int getReportWorkers() {
+        if (m_REPORT_WORKERS <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return m_REPORT_WORKERS;
+    }
+
+    /**
+     * Gets the number of submissions that may wait between two stages of the
+     * checking pipeline. A full queue stalls the stage in front of it.
+     * 
+     * @return the queue size, at least one
+     */
+    public int getPipelineQueueSize() {
+        return Math.max(1, m_PIPELINE_QUEUE_SIZE);
+    }
+
+    /**
+     * Gets the limits the archive of a single submission has to stay within
+     * when it is unpacked.
+     * 
+     * @return the extraction limits
+     */
+    public ExtractionLimits getExtractionLimits() {
+        return new ExtractionLimits(m_EXTRACT_MAX_MEGABYTES * 1024 * 1024,
+                m_EXTRACT_MAX_ENTRIES, m_EXTRACT_MAX_RATIO,
+                m_EXTRACT_MAX_DEPTH);
+    }
+
+    /**
+     * Whether java submissions are compiled inside the running JVM instead of
+     * launching a javac process for every submission.
+     * 
+     * @return true if javac should run in-process
+     */
+    public boolean isInProcessCompile() {
+        return m_IN_PROCESS_COMPILE;
+    }
+
+    /**
+     * Whether java tests are run in separate worker JVMs instead of the
+     * running one.
+     * 
+     * @return true if tests should run in worker JVMs
+     */
+    public boolean isForkedTesting() {
+        return m_FORKED_TESTING;
+    }
+
+    /**
+     * Gets the number of worker JVMs running tests. A value of zero or less in
+     * the config means one worker per checking worker.
+     * 
+     * @return the number of test workers, at least one
+     */
+    public int getTestWorkers() {
+        if (m_TEST_WORKERS <= 0) {
+            return getCheckingWorkers();
+        }
+        return m_TEST_WORKERS;
+    }
+
+    /**
+     * Gets the number of submissions a test worker tests before it is
+     * replaced by a fresh one.
+     * 
+     * @return the number of jobs per worker, at least one
+     */
+    public int getTestJobsPerWorker() {
+        return Math.max(1, m_TEST_JOBS_PER_WORKER);
+    }
+
+    /**
+     * Gets the maximum heap of a test worker.
+     * 
+     * @return the heap size in megabytes
+     */
+    public int getTestMaxHeap() {
+        return m_TEST_MAX_HEAP;
+    }
+
+    /**
+     * Gets the time a single test may take.
+     * 
+     * @return the timeout in milliseconds
+     */
+    public long getTestTimeout() {
+        return m_TEST_TIMEOUT;
+    }
+
+    /**
+     * Gets the time all tests of a submission may take together.
+     * 
+     * @return the timeout in milliseconds
+     */
+    public long getSubmissionTestTimeout() {
+        return m_SUBMISSION_TEST_TIMEOUT;
+    }
+
+    /**
+     * Whether scorecards are rendered against the report preamble
+     * precompiled into a LaTeX format, instead of reading the preamble for
+     * every scorecard.
+     * 
+     * @return true if the preamble should be precompiled
+     */
+    public boolean isPrecompiledPreamble() {
+        return m_PRECOMPILED_PREAMBLE;
+    }
+
+    /**
+     * Whether scorecards are written as PDF directly, without LaTeX.
+     * 
+     * @return true if pdflatex isn't used for scorecards
+     */
+    public boolean isDirectPdf() {
+        return m_DIRECT_PDF;
+    }
+
+    /**
+     * Whether the scorecards are merged by copying their pages, instead of
+     * including them into a LaTeX document with pdfpages.
+     * 
+     * @return true if pdflatex isn't used for merging
+     */
+    public boolean isNativeMerge() {
+        return m_NATIVE_MERGE;
+    }
+
     /**
      * Gets the smtp host.
      * 
@@ -196,6 +394,46 @@ public class Configuration {
         m_PASSWORD_ADMIN = m_config.getString("admin/user/@password");
         /* read server info from configuration xml */
         m_SERVER_PORT = m_config.getInt("server/port/@value");
+        /* read processing info from configuration xml */
+        m_CHECKING_WORKERS =
+                m_config.getInt("processing/checking/@workers", 0);
+        m_SCHEDULER_WORKERS =
+                m_config.getInt("processing/scheduler/@workers", 2);
+        m_EXTRACT_WORKERS =
+                m_config.getInt("processing/pipeline/@extractWorkers", 0);
+        m_REPORT_WORKERS =
+                m_config.getInt("processing/pipeline/@reportWorkers", 0);
+        m_PIPELINE_QUEUE_SIZE =
+                m_config.getInt("processing/pipeline/@queueSize", 16);
+        m_EXTRACT_MAX_MEGABYTES =
+                m_config.getLong("processing/extraction/@maxMegabytes", 100);
+        m_EXTRACT_MAX_ENTRIES =
+                m_config.getInt("processing/extraction/@maxEntries", 10000);
+        m_EXTRACT_MAX_RATIO =
+                m_config.getInt("processing/extraction/@maxRatio", 100);
+        m_EXTRACT_MAX_DEPTH =
+                m_config.getInt("processing/extraction/@maxDepth", 5);
+        m_IN_PROCESS_COMPILE =
+                m_config.getBoolean("processing/compile/@inProcess", true);
+        m_FORKED_TESTING =
+                m_config.getBoolean("processing/testing/@forked", true);
+        m_TEST_WORKERS = m_config.getInt("processing/testing/@workers", 0);
+        m_TEST_JOBS_PER_WORKER =
+                m_config.getInt("processing/testing/@jobsPerWorker", 50);
+        m_TEST_MAX_HEAP =
+                m_config.getInt("processing/testing/@maxHeap", 256);
+        m_TEST_TIMEOUT =
+                m_config.getLong("processing/testing/@testTimeout", 10000);
+        m_SUBMISSION_TEST_TIMEOUT =
+                m_config.getLong("processing/testing/@submissionTimeout",
+                        120000);
+        m_PRECOMPILED_PREAMBLE =
+                m_config.getBoolean("processing/report/@precompiledPreamble",
+                        true);
+        m_DIRECT_PDF =
+                m_config.getBoolean("processing/report/@directPdf", false);
+        m_NATIVE_MERGE =
+                m_config.getBoolean("processing/report/@nativeMerge", true);
 
     }
 
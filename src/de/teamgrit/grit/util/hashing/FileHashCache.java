@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.hashing;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Remembers the SHA-1 hashes of files together with their size, modification
+ * time and file key (the inode on unix systems). As long as none of these
+ * changed, the stored hash is returned and the file is not read again. The
+ * cache is kept in a file and read on first access.
+ *
+ * <p>
+ * Files modified within the last {@link #MIN_AGE} ms are never stored, since
+ * a second change within the resolution of the file system clock would go
+ * unnoticed.
+ * </p>
+ */
+public class FileHashCache {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    /** Minimal age of a file before its hash is remembered. */
+    private static final long MIN_AGE = 2000;
+
+    private static final Gson GSON = new Gson();
+
+    private static final Type ENTRIES_TYPE =
+            new TypeToken<Map<String, Entry>>() {
+            }.getType();
+
+    private final Path m_cacheFile;
+
+    /* mapping from the absolute paths of files to their entries */
+    private Map<String, Entry> m_entries = null;
+
+    /* the paths looked up since the last save, everything else is dropped */
+    private final Set<String> m_used = new HashSet<>();
+
+    private boolean m_dirty = false;
+
+    /**
+     * The stored hash of a single file.
+     */
+    private static final class Entry {
+        private long size;
+        private long modified;
+        private String fileKey;
+        private String sha1Hash;
+
+        /**
+         * Creates an entry.
+         *
+         * @param attributes
+         *            the attributes of the file when it was hashed
+         * @param hash
+         *            the hash of the file
+         */
+        Entry(BasicFileAttributes attributes, String hash) {
+            size = attributes.size();
+            modified = attributes.lastModifiedTime().toMillis();
+            fileKey = fileKeyOf(attributes);
+            sha1Hash = hash;
+        }
+
+        /**
+         * Checks whether the file still looks like it did when it was
+         * hashed.
+         *
+         * @param attributes
+         *            the current attributes of the file
+         * @return true if the stored hash is still valid
+         */
+        boolean matches(BasicFileAttributes attributes) {
+            String currentKey = fileKeyOf(attributes);
+            return (size == attributes.size())
+                    && (modified == attributes.lastModifiedTime().toMillis())
+                    && ((fileKey == null) ? (currentKey == null) : fileKey
+                            .equals(currentKey));
+        }
+    }
+
+    /**
+     * Creates a cache backed by the given file.
+     *
+     * @param cacheFile
+     *            the file the hashes are kept in
+     */
+    public FileHashCache(Path cacheFile) {
+        m_cacheFile = cacheFile;
+    }
+
+    /**
+     * Looks up the hash of a file.
+     *
+     * @param file
+     *            the file
+     * @param attributes
+     *            the current attributes of the file
+     * @return the stored hash or null if the file changed or is unknown
+     */
+    public synchronized String get(Path file, BasicFileAttributes attributes) {
+        String key = file.toAbsolutePath().toString();
+        m_used.add(key);
+        Entry entry = getEntries().get(key);
+        if ((entry != null) && entry.matches(attributes)) {
+            return entry.sha1Hash;
+        }
+        return null;
+    }
+
+    /**
+     * Remembers the hash of a file.
+     *
+     * @param file
+     *            the file
+     * @param attributes
+     *            the attributes of the file read before it was hashed
+     * @param hash
+     *            the hash of the file
+     */
+    public synchronized void put(Path file, BasicFileAttributes attributes,
+            String hash) {
+        String key = file.toAbsolutePath().toString();
+        if (System.currentTimeMillis()
+                - attributes.lastModifiedTime().toMillis() < MIN_AGE) {
+            getEntries().remove(key);
+            return;
+        }
+        m_used.add(key);
+        getEntries().put(key, new Entry(attributes, hash));
+        m_dirty = true;
+    }
+
+    /**
+     * Writes the hashes to disk. Entries of files that weren't looked up
+     * since the last save are dropped, so the cache doesn't grow with files
+     * that have been deleted. The file is replaced atomically.
+     */
+    public synchronized void save() {
+        if (m_entries == null) {
+            return;
+        }
+        if (m_entries.keySet().retainAll(m_used)) {
+            m_dirty = true;
+        }
+        m_used.clear();
+        if (!m_dirty) {
+            return;
+        }
+        Path temp = m_cacheFile.resolveSibling(m_cacheFile.getFileName()
+                + ".tmp");
+        try {
+            Files.createDirectories(m_cacheFile.getParent());
+            FileUtils.writeStringToFile(temp.toFile(),
+                    GSON.toJson(m_entries, ENTRIES_TYPE), "UTF-8");
+            try {
+                Files.move(temp, m_cacheFile,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, m_cacheFile,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            m_dirty = false;
+        } catch (IOException e) {
+            LOGGER.warning("Could not save file hashes to " + m_cacheFile
+                    + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Turns the file key of a file into a string, since it is only known to
+     * be comparable by equals.
+     *
+     * @param attributes
+     *            the attributes of the file
+     * @return the file key or null if the file system has none
+     */
+    private static String fileKeyOf(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return (fileKey == null) ? null : fileKey.toString();
+    }
+
+    /**
+     * Returns the entries, reading them from disk on first access.
+     *
+     * @return the entries
+     */
+    private Map<String, Entry> getEntries() {
+        if (m_entries != null) {
+            return m_entries;
+        }
+        m_entries = new HashMap<>();
+        if (Files.isRegularFile(m_cacheFile)) {
+            try {
+                Map<String, Entry> entries =
+                        GSON.fromJson(FileUtils.readFileToString(
+                                m_cacheFile.toFile(), "UTF-8"), ENTRIES_TYPE);
+                if (entries != null) {
+                    m_entries.putAll(entries);
+                }
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warning("Could not read file hashes from "
+                        + m_cacheFile + ", starting over: " + e.getMessage());
+            }
+        }
+        return m_entries;
+    }
+}
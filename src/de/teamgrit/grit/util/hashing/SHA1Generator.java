@@ -1,26 +1,65 @@
 package de.teamgrit.grit.util.hashing;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 /**
- * This class provides the ability to generate md5 hashes of a directory.
- * 
+ * This class provides the ability to generate SHA-1 hashes of a directory.
+ * The hash of a directory is a Merkle tree hash: it covers the names and
+ * hashes of its entries in sorted order, so it only depends on the content
+ * of the directory and not on the order the file system lists it in. Empty
+ * folders don't contribute to the hash. The files themselves are hashed in
+ * parallel.
+ *
  * @author <a href="mailto:eike.heinz@uni-konstanz.de">Eike Heinz</a>
- * 
+ *
  */
 public final class SHA1Generator {
     private static final Logger LOGGER = Logger.getLogger("systemlog");
-    private static MessageDigest s_MessageDigest = null;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef"
+            .toCharArray();
+
+    private static final ExecutorService s_hashingPool = Executors
+            .newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "sha1");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
 
     /**
      * This is a static class, so no constructore is needed.
-     * 
+     *
      */
     private SHA1Generator() {
 
@@ -28,7 +67,7 @@ public final class SHA1Generator {
 
     /**
      * Calculates the SHA-1 hash of a folder.
-     * 
+     *
      * @param folder
      *            the folder of which the hash will be calculated
      * @return the hash in a string
@@ -36,72 +75,363 @@ public final class SHA1Generator {
      *             if a file can not be read
      */
     public static String calculateSHA1Hash(Path folder) throws IOException {
-        File[] files = folder.toFile().listFiles();
-        String md5 = "";
-        StringBuffer md5Buffer = new StringBuffer();
-        try {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    md5 += calculateSHA1Hash(file.toPath());
-                } else {
-                    md5 += getSH1OfFile(file);
+        return calculateSHA1Hash(folder, null);
+    }
+
+    /**
+     * Calculates the SHA-1 hash of a folder and reports the hashes of the
+     * single files, so they can be compared with an earlier run using
+     * {@link #getChangedFiles(Map, Map)}.
+     *
+     * @param folder
+     *            the folder of which the hash will be calculated
+     * @param fileHashes
+     *            receives the hash of every file, keyed by its path relative
+     *            to the folder with '/' as separator, may be null
+     * @return the hash in a string
+     * @throws IOException
+     *             if a file can not be read
+     */
+    public static String calculateSHA1Hash(Path folder,
+            Map<String, String> fileHashes) throws IOException {
+        return calculateSHA1Hash(folder, fileHashes, null);
+    }
+
+    /**
+     * Calculates the SHA-1 hash of a folder, reading only the files whose
+     * hash isn't known to the given cache.
+     *
+     * @param folder
+     *            the folder of which the hash will be calculated
+     * @param fileHashes
+     *            receives the hash of every file, see
+     *            {@link #calculateSHA1Hash(Path, Map)}, may be null
+     * @param hashCache
+     *            the hashes of unchanged files, may be null
+     * @return the hash in a string
+     * @throws IOException
+     *             if a file can not be read
+     */
+    public static String calculateSHA1Hash(Path folder,
+            Map<String, String> fileHashes, final FileHashCache hashCache)
+            throws IOException {
+        if (!Files.isDirectory(folder)) {
+            throw new IOException(folder + " is not a directory");
+        }
+        final Path root = folder;
+        final SortedMap<String, BasicFileAttributes> files = new TreeMap<>();
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.put(toRelativeName(root, file), attrs);
                 }
+                return FileVisitResult.CONTINUE;
             }
 
-            s_MessageDigest = MessageDigest.getInstance("SHA-1");
-            s_MessageDigest.update(md5.getBytes());
-            byte[] digest = s_MessageDigest.digest();
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e)
+                    throws IOException {
+                throw e;
+            }
+        });
+        return calculateSHA1Hash(folder, files, fileHashes, hashCache);
+    }
 
-            for (byte b : digest) {
-                md5Buffer.append(String.format("%02x", b & 0xff));
+    /**
+     * Calculates the SHA-1 hash of a folder whose files are already known,
+     * so the folder doesn't need to be walked again.
+     *
+     * @param folder
+     *            the folder of which the hash will be calculated
+     * @param files
+     *            the files of the folder with their attributes, keyed by
+     *            their path relative to the folder as returned by
+     *            {@link #toRelativeName(Path, Path)}
+     * @param fileHashes
+     *            receives the hash of every file, see
+     *            {@link #calculateSHA1Hash(Path, Map)}, may be null
+     * @param hashCache
+     *            the hashes of unchanged files, may be null
+     * @return the hash in a string
+     * @throws IOException
+     *             if a file can not be read
+     */
+    public static String calculateSHA1Hash(Path folder,
+            Map<String, BasicFileAttributes> files,
+            Map<String, String> fileHashes, final FileHashCache hashCache)
+            throws IOException {
+        Node root = new Node(null);
+        for (Map.Entry<String, BasicFileAttributes> file : files.entrySet()) {
+            // find the folder of the file, creating the missing nodes
+            Node parent = root;
+            String[] names = file.getKey().split("/");
+            for (int i = 0; i < (names.length - 1); i++) {
+                Node child = parent.m_children.get(names[i]);
+                if (child == null) {
+                    child = new Node(null);
+                    parent.m_children.put(names[i], child);
+                }
+                parent = child;
             }
+            parent.m_children.put(names[names.length - 1], new Node(
+                    startHashing(folder.resolve(file.getKey()),
+                            file.getValue(), hashCache)));
+        }
 
+        try {
+            return root.getHash("", fileHashes);
         } catch (NoSuchAlgorithmException e) {
-            LOGGER.severe("Could not find MD5 algorithm");
+            throw new IOException("SHA-1 is not available", e);
         }
-        return md5Buffer.toString();
     }
 
     /**
-     * Calculates the SHA-1 hash of a file.
-     * 
+     * Turns the path of a file into the name used for it in the file hashes.
+     *
+     * @param folder
+     *            the hashed folder
      * @param file
-     *            the file of which the hash will be calculated
-     * @return the hash in a string
-     * @throws NoSuchAlgorithmException
-     *             if the SHA-1 is not available
-     * @throws IOException
-     *             if a file can not be read
+     *            a file within the folder
+     * @return the path of the file relative to the folder, with '/' as
+     *         separator
      */
-    private static String getSH1OfFile(File file)
-            throws NoSuchAlgorithmException, IOException {
-        StringBuffer md5 = null;
-        try {
-            s_MessageDigest = MessageDigest.getInstance("SHA-1");
-            FileInputStream fileInput = new FileInputStream(file);
+    public static String toRelativeName(Path folder, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path part : folder.relativize(file)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(part.toString());
+        }
+        return name.toString();
+    }
 
-            byte[] dataBytes = new byte[1024];
+    /**
+     * Starts hashing a file unless its hash is known to the cache.
+     *
+     * @param file
+     *            the file to hash
+     * @param attrs
+     *            the attributes of the file
+     * @param hashCache
+     *            the hashes of unchanged files, may be null
+     * @return the pending hash
+     */
+    private static Future<String> startHashing(final Path file,
+            final BasicFileAttributes attrs, final FileHashCache hashCache) {
+        final String cachedHash =
+                (hashCache == null) ? null : hashCache.get(file, attrs);
+        if (cachedHash != null) {
+            FutureTask<String> known =
+                    new FutureTask<>(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return cachedHash;
+                        }
+                    });
+            known.run();
+            return known;
+        }
+        return s_hashingPool.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                String fileHash = hashFile(file);
+                if (hashCache != null) {
+                    hashCache.put(file, attrs, fileHash);
+                }
+                return fileHash;
+            }
+        });
+    }
 
-            int nread = 0;
-            while ((nread = fileInput.read(dataBytes)) != -1) {
-                s_MessageDigest.update(dataBytes, 0, nread);
+    /**
+     * Compares two sets of file hashes reported by
+     * {@link #calculateSHA1Hash(Path, Map)}.
+     *
+     * @param before
+     *            the file hashes of the earlier run
+     * @param after
+     *            the file hashes of the later run
+     * @return the relative paths of all files that were added, removed or
+     *         changed in between
+     */
+    public static SortedSet<String> getChangedFiles(
+            Map<String, String> before, Map<String, String> after) {
+        SortedSet<String> changed = new TreeSet<>();
+        for (Map.Entry<String, String> file : after.entrySet()) {
+            if (!file.getValue().equals(before.get(file.getKey()))) {
+                changed.add(file.getKey());
             }
-            byte[] mdbytes = s_MessageDigest.digest();
-            md5 = new StringBuffer();
-            for (byte mdbyte : mdbytes) {
-                md5.append(Integer.toString((mdbyte & 0xff) + 0x100, 16)
-                        .substring(1));
+        }
+        for (String file : before.keySet()) {
+            if (!after.containsKey(file)) {
+                changed.add(file);
             }
+        }
+        return changed;
+    }
+
+    /**
+     * Calculates the SHA-1 hash of a single file.
+     *
+     * @param file
+     *            the file of which the hash will be calculated
+     * @return the hash in a string
+     * @throws IOException
+     *             if the file can not be read or SHA-1 is not available
+     */
+    public static String calculateSHA1HashOfFile(Path file)
+            throws IOException {
+        return hashFile(file);
+    }
 
-            fileInput.close();
+    /**
+     * Calculates the SHA-1 hash of a string, e.g. a key combined from
+     * several other hashes.
+     *
+     * @param text
+     *            the string of which the hash will be calculated
+     * @return the hash in a string
+     */
+    public static String calculateSHA1Hash(String text) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            return toHex(messageDigest.digest(text
+                    .getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.severe("Could not find SHA-1 algorithm");
+            return "";
+        }
+    }
 
+    /**
+     * Calculates the SHA-1 hash of a file, which is read through a large
+     * buffer. Files aren't memory mapped: the mapping is only released by
+     * the garbage collector and keeps the file locked on Windows until then,
+     * so submissions couldn't be updated or deleted.
+     *
+     * @param file
+     *            the file of which the hash will be calculated
+     * @return the hash in a string
+     * @throws IOException
+     *             if the file can not be read or SHA-1 is not available
+     */
+    private static String hashFile(Path file) throws IOException {
+        try (FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ)) {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            long size = channel.size();
+            ByteBuffer buffer =
+                    ByteBuffer.allocate((int) Math.min(BUFFER_SIZE,
+                            Math.max(size, 1)));
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                messageDigest.update(buffer);
+                buffer.clear();
+            }
+            return toHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not available", e);
         } catch (IOException e) {
-            LOGGER.severe("Couldn't read from file: " + file.getAbsolutePath()
-                    + ". " + e.getMessage());
+            File ioFile = file.toFile();
+            LOGGER.severe("Couldn't read from file: "
+                    + ioFile.getAbsolutePath() + ". " + e.getMessage());
             throw e;
         }
+    }
+
+    /**
+     * Converts a digest to its hex representation.
+     *
+     * @param digest
+     *            the digest
+     * @return the digest as lower case hex string
+     */
+    private static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hex[(2 * i) + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * A file or folder in the hashed tree. Files carry the pending hash of
+     * their content, folders their entries sorted by name.
+     */
+    private static final class Node {
+        private final Future<String> m_fileHash;
+        private final Map<String, Node> m_children = new TreeMap<>();
+
+        /**
+         * Creates a node.
+         *
+         * @param fileHash
+         *            the pending hash of a file, null for folders
+         */
+        Node(Future<String> fileHash) {
+            m_fileHash = fileHash;
+        }
 
-        return md5.toString();
+        /**
+         * Gets the hash of this node, waiting for the file hashes below it.
+         *
+         * @param path
+         *            the path of this node relative to the hashed folder
+         * @param fileHashes
+         *            receives the hashes of the files, may be null
+         * @return the hash in a string
+         * @throws IOException
+         *             if a file can not be read
+         * @throws NoSuchAlgorithmException
+         *             if SHA-1 is not available
+         */
+        String getHash(String path, Map<String, String> fileHashes)
+                throws IOException, NoSuchAlgorithmException {
+            if (m_fileHash != null) {
+                String hash = awaitFileHash();
+                if (fileHashes != null) {
+                    fileHashes.put(path, hash);
+                }
+                return hash;
+            }
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            for (Map.Entry<String, Node> child : m_children.entrySet()) {
+                Node node = child.getValue();
+                String childPath =
+                        path.isEmpty() ? child.getKey() : path + "/"
+                                + child.getKey();
+                String entry =
+                        ((node.m_fileHash != null) ? "f " : "d ")
+                                + child.getKey() + '\u0000'
+                                + node.getHash(childPath, fileHashes) + '\n';
+                messageDigest.update(entry.getBytes(StandardCharsets.UTF_8));
+            }
+            return toHex(messageDigest.digest());
+        }
 
+        /**
+         * Waits for the hash of a file.
+         *
+         * @return the hash in a string
+         * @throws IOException
+         *             if the file can not be read
+         */
+        private String awaitFileHash() throws IOException {
+            try {
+                return m_fileHash.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while hashing", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
     }
 }
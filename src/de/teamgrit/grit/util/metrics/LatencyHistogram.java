@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations into fixed buckets. Recording is lock free and costs a
+ * binary search and two atomic additions, so it can be used on every
+ * processed submission.
+ */
+public class LatencyHistogram {
+
+    /** Upper bounds of the buckets in seconds, the last bucket is open. */
+    private static final double[] BOUNDS = { 0.005, 0.01, 0.025, 0.05, 0.1,
+            0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300 };
+
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS[i] * 1e9);
+        }
+    }
+
+    /* the counts of the single buckets, not accumulated */
+    private final AtomicLongArray m_buckets =
+            new AtomicLongArray(BOUNDS.length + 1);
+
+    private final AtomicLong m_sumNanos = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    public void observe(long nanos) {
+        int bucket = Arrays.binarySearch(BOUNDS_NANOS, nanos);
+        if (bucket < 0) {
+            bucket = -bucket - 1;
+        }
+        m_buckets.incrementAndGet(bucket);
+        m_sumNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Gets the upper bounds of the buckets, without the open last one.
+     *
+     * @return the bounds in seconds
+     */
+    public static double[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Gets the number of recorded durations up to each bound, the last
+     * element is the total number of recorded durations.
+     *
+     * @return the accumulated counts, one more than there are bounds
+     */
+    public long[] getCumulativeCounts() {
+        long[] counts = new long[m_buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += m_buckets.get(i);
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return the number of durations
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < m_buckets.length(); i++) {
+            count += m_buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Estimates a quantile of the recorded durations by the upper bound of
+     * the bucket it falls into.
+     *
+     * @param quantile
+     *            the quantile between 0 and 1
+     * @return the bound in seconds, infinity if the quantile falls into the
+     *         open last bucket and 0 if nothing was recorded
+     */
+    public double getQuantile(double quantile) {
+        long[] counts = getCumulativeCounts();
+        long total = counts[BOUNDS.length];
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (counts[i] >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Gets the sum of all recorded durations.
+     *
+     * @return the sum in seconds
+     */
+    public double getSum() {
+        return m_sumNanos.get() / 1e9;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.metrics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects how long the processing stages (fetch, tokenize, hash, compile,
+ * ...) take and how often they fail, once for all exercises together and
+ * once per exercise. The values are written in the Prometheus text format
+ * by {@link #write(PrintWriter)}.
+ */
+public final class Metrics {
+
+    private static final String STAGE_DURATION =
+            "grit_stage_duration_seconds";
+    private static final String EXERCISE_STAGE_DURATION =
+            "grit_exercise_stage_duration_seconds";
+    private static final String STAGE_FAILURES = "grit_stage_failures_total";
+    private static final String EXERCISE_STAGE_FAILURES =
+            "grit_exercise_stage_failures_total";
+
+    /* both keyed by the label set of the series, as written in the output */
+    private static final ConcurrentMap<String, LatencyHistogram> s_histograms =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> s_counters =
+            new ConcurrentHashMap<>();
+
+    /**
+     * This class only has static methods.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @return the start time to pass to
+     *         {@link #recordLatency(String, String, String, long)}
+     */
+    public static long startTimer() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time a stage took, up to now.
+     *
+     * @param stage
+     *            the name of the stage
+     * @param courseName
+     *            the course of the exercise
+     * @param exerciseName
+     *            the exercise
+     * @param startTime
+     *            the value {@link #startTimer()} returned
+     */
+    public static void recordLatency(String stage, String courseName,
+            String exerciseName, long startTime) {
+        long duration = System.nanoTime() - startTime;
+        histogram(STAGE_DURATION, labels(stage)).observe(duration);
+        histogram(EXERCISE_STAGE_DURATION,
+                labels(stage, courseName, exerciseName)).observe(duration);
+    }
+
+    /**
+     * Counts a failure of a stage.
+     *
+     * @param stage
+     *            the name of the stage
+     * @param courseName
+     *            the course of the exercise
+     * @param exerciseName
+     *            the exercise
+     */
+    public static void recordFailure(String stage, String courseName,
+            String exerciseName) {
+        counter(STAGE_FAILURES, labels(stage)).incrementAndGet();
+        counter(EXERCISE_STAGE_FAILURES,
+                labels(stage, courseName, exerciseName)).incrementAndGet();
+    }
+
+    /**
+     * Gets the durations of a stage, summed over all exercises.
+     *
+     * @param stage
+     *            the name of the stage
+     * @return the histogram or null if the stage never completed
+     */
+    public static LatencyHistogram getStageLatencies(String stage) {
+        return s_histograms.get(STAGE_DURATION + "{" + labels(stage) + "}");
+    }
+
+    /**
+     * Gets how often a stage failed, summed over all exercises.
+     *
+     * @param stage
+     *            the name of the stage
+     * @return the number of failures
+     */
+    public static long getStageFailures(String stage) {
+        AtomicLong counter =
+                s_counters.get(STAGE_FAILURES + "{" + labels(stage) + "}");
+        return (counter == null) ? 0 : counter.get();
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format.
+     *
+     * @param out
+     *            the writer to write to
+     */
+    public static void write(PrintWriter out) {
+        writeHistograms(out, STAGE_DURATION,
+                "Time spent in a processing stage.");
+        writeHistograms(out, EXERCISE_STAGE_DURATION,
+                "Time spent in a processing stage, per exercise.");
+        writeCounters(out, STAGE_FAILURES,
+                "Items a processing stage failed on.");
+        writeCounters(out, EXERCISE_STAGE_FAILURES,
+                "Items a processing stage failed on, per exercise.");
+    }
+
+    /**
+     * Writes a single value in the Prometheus text format.
+     *
+     * @param out
+     *            the writer to write to
+     * @param name
+     *            the name of the metric
+     * @param help
+     *            the description of the metric
+     * @param value
+     *            the current value
+     */
+    public static void writeGauge(PrintWriter out, String name, String help,
+            double value) {
+        out.print("# HELP " + name + " " + help + "\n");
+        out.print("# TYPE " + name + " gauge\n");
+        out.print(name + " " + value + "\n");
+    }
+
+    /**
+     * Writes all series of a histogram.
+     *
+     * @param out
+     *            the writer
+     * @param name
+     *            the name of the histogram
+     * @param help
+     *            the description of the histogram
+     */
+    private static void writeHistograms(PrintWriter out, String name,
+            String help) {
+        out.print("# HELP " + name + " " + help + "\n");
+        out.print("# TYPE " + name + " histogram\n");
+        double[] bounds = LatencyHistogram.getBounds();
+        for (Map.Entry<String, LatencyHistogram> series : select(
+                s_histograms, name).entrySet()) {
+            String labels = series.getKey();
+            long[] counts = series.getValue().getCumulativeCounts();
+            for (int i = 0; i < bounds.length; i++) {
+                out.print(name + "_bucket{" + labels + ",le=\"" + bounds[i]
+                        + "\"} " + counts[i] + "\n");
+            }
+            long total = counts[bounds.length];
+            out.print(name + "_bucket{" + labels + ",le=\"+Inf\"} " + total
+                    + "\n");
+            out.print(name + "_sum{" + labels + "} "
+                    + series.getValue().getSum() + "\n");
+            out.print(name + "_count{" + labels + "} " + total + "\n");
+        }
+    }
+
+    /**
+     * Writes all series of a counter.
+     *
+     * @param out
+     *            the writer
+     * @param name
+     *            the name of the counter
+     * @param help
+     *            the description of the counter
+     */
+    private static void writeCounters(PrintWriter out, String name,
+            String help) {
+        out.print("# HELP " + name + " " + help + "\n");
+        out.print("# TYPE " + name + " counter\n");
+        for (Map.Entry<String, AtomicLong> series : select(s_counters, name)
+                .entrySet()) {
+            out.print(name + "{" + series.getKey() + "} "
+                    + series.getValue().get() + "\n");
+        }
+    }
+
+    /**
+     * Picks the series of one metric, sorted by their labels.
+     *
+     * @param all
+     *            the series of all metrics
+     * @param name
+     *            the name of the metric
+     * @return the series keyed by their labels
+     */
+    private static <V> Map<String, V> select(Map<String, V> all, String name) {
+        String prefix = name + "{";
+        Map<String, V> selected = new TreeMap<>();
+        for (Map.Entry<String, V> series : all.entrySet()) {
+            if (series.getKey().startsWith(prefix)) {
+                String key = series.getKey();
+                selected.put(key.substring(prefix.length(), key.length() - 1),
+                        series.getValue());
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Gets the histogram of a series, creating it on first use.
+     *
+     * @param name
+     *            the name of the metric
+     * @param labels
+     *            the labels of the series
+     * @return the histogram
+     */
+    private static LatencyHistogram histogram(String name, String labels) {
+        String key = name + "{" + labels + "}";
+        LatencyHistogram histogram = s_histograms.get(key);
+        if (histogram == null) {
+            s_histograms.putIfAbsent(key, new LatencyHistogram());
+            histogram = s_histograms.get(key);
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets the counter of a series, creating it on first use.
+     *
+     * @param name
+     *            the name of the metric
+     * @param labels
+     *            the labels of the series
+     * @return the counter
+     */
+    private static AtomicLong counter(String name, String labels) {
+        String key = name + "{" + labels + "}";
+        AtomicLong counter = s_counters.get(key);
+        if (counter == null) {
+            s_counters.putIfAbsent(key, new AtomicLong());
+            counter = s_counters.get(key);
+        }
+        return counter;
+    }
+
+    /**
+     * Builds the labels of a series for all exercises.
+     *
+     * @param stage
+     *            the name of the stage
+     * @return the labels
+     */
+    private static String labels(String stage) {
+        return "stage=\"" + escape(stage) + "\"";
+    }
+
+    /**
+     * Builds the labels of a series for a single exercise.
+     *
+     * @param stage
+     *            the name of the stage
+     * @param courseName
+     *            the course of the exercise
+     * @param exerciseName
+     *            the exercise
+     * @return the labels
+     */
+    private static String labels(String stage, String courseName,
+            String exerciseName) {
+        return labels(stage) + ",course=\"" + escape(courseName)
+                + "\",exercise=\"" + escape(exerciseName) + "\"";
+    }
+
+    /**
+     * Escapes a label value as required by the text format.
+     *
+     * @param value
+     *            the value, may be null
+     * @return the escaped value
+     */
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A chain of {@link Stage}s connected by bounded queues. Every stage has its
+ * own workers, so an item is picked up by the next stage as soon as the
+ * previous one is done with it, while the previous stage already works on
+ * the next item. A full queue blocks the stage in front of it, so a slow
+ * stage holds back the ones before it instead of letting work pile up.
+ *
+ * <p>
+ * Items are fed with {@link #submit(Object)}, {@link #finish()} waits until
+ * all of them passed through. A pipeline is used only once.
+ * </p>
+ *
+ * @param <T>
+ *            the type of the items flowing through the pipeline
+ */
+public class Pipeline<T> {
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    /* marks the end of the input, passed on from stage to stage */
+    private static final Object END = new Object();
+
+    private final String m_name;
+    private final int m_capacity;
+    private final List<StageRunner> m_stages = new ArrayList<>();
+    private boolean m_started = false;
+
+    /**
+     * Creates an empty pipeline.
+     *
+     * @param name
+     *            the name of the pipeline, used for thread names and logging
+     * @param capacity
+     *            the number of items each queue between two stages holds
+     */
+    public Pipeline(String name, int capacity) {
+        m_name = name;
+        m_capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Appends a stage to the pipeline.
+     *
+     * @param name
+     *            the name of the stage
+     * @param workers
+     *            the number of items the stage processes at the same time
+     * @param stage
+     *            the stage
+     * @return this pipeline
+     */
+    public synchronized Pipeline<T> addStage(String name, int workers,
+            Stage<T> stage) {
+        if (m_started) {
+            throw new IllegalStateException("Pipeline " + m_name
+                    + " is already running.");
+        }
+        StageRunner runner =
+                new StageRunner(name, Math.max(1, workers), stage);
+        if (!m_stages.isEmpty()) {
+            m_stages.get(m_stages.size() - 1).m_next = runner;
+        }
+        m_stages.add(runner);
+        return this;
+    }
+
+    /**
+     * Feeds an item into the first stage, starting the workers on the first
+     * call. Blocks while the first queue is full.
+     *
+     * @param item
+     *            the item
+     * @throws InterruptedException
+     *             if interrupted while waiting for space in the queue
+     */
+    public void submit(T item) throws InterruptedException {
+        start();
+        if (!m_stages.isEmpty()) {
+            m_stages.get(0).m_queue.put(item);
+        }
+    }
+
+    /**
+     * Marks the end of the input and waits until all items passed through
+     * the pipeline. If interrupted, all workers are interrupted as well.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void finish() throws InterruptedException {
+        start();
+        if (m_stages.isEmpty()) {
+            return;
+        }
+        try {
+            m_stages.get(0).m_queue.put(END);
+            for (StageRunner stage : m_stages) {
+                stage.m_done.await();
+            }
+        } catch (InterruptedException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Interrupts all workers. Items still in the pipeline are dropped.
+     */
+    public synchronized void abort() {
+        for (StageRunner stage : m_stages) {
+            for (Thread worker : stage.m_workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts the workers of all stages unless they run already.
+     */
+    private synchronized void start() {
+        if (m_started) {
+            return;
+        }
+        m_started = true;
+        for (StageRunner stage : m_stages) {
+            for (Thread worker : stage.m_workers) {
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * The workers and the input queue of a single stage.
+     */
+    private final class StageRunner {
+
+        private final String m_stageName;
+        private final Stage<T> m_stage;
+        private final BlockingQueue<Object> m_queue;
+        private final List<Thread> m_workers = new ArrayList<>();
+        private final AtomicInteger m_running;
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private StageRunner m_next = null;
+
+        /**
+         * Creates the workers of a stage without starting them.
+         *
+         * @param name
+         *            the name of the stage
+         * @param workers
+         *            the number of workers
+         * @param stage
+         *            the stage
+         */
+        StageRunner(String name, int workers, Stage<T> stage) {
+            m_stageName = name;
+            m_stage = stage;
+            m_queue = new ArrayBlockingQueue<>(m_capacity);
+            m_running = new AtomicInteger(workers);
+            for (int i = 0; i < workers; i++) {
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                }, m_name + "-" + name + "-" + i);
+                worker.setDaemon(true);
+                m_workers.add(worker);
+            }
+        }
+
+        /**
+         * Takes items from the queue until the end of the input is reached
+         * and hands them to the next stage. The last worker to finish passes
+         * the end on. An item whose stage throws, even an {@link Error} from
+         * student code, is dropped without taking the worker down.
+         */
+        @SuppressWarnings("unchecked")
+        private void work() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    Object item = m_queue.take();
+                    if (item == END) {
+                        // let the other workers of this stage see it too
+                        m_queue.put(END);
+                        break;
+                    }
+                    boolean passOn = false;
+                    try {
+                        passOn = m_stage.process((T) item);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        LOGGER.severe("Stage " + m_stageName + " of "
+                                + m_name + " failed, the item was dropped: "
+                                + e);
+                    }
+                    if (passOn && (m_next != null)) {
+                        m_next.m_queue.put(item);
+                    }
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                LOGGER.warning("Stage " + m_stageName + " of " + m_name
+                        + " was interrupted.");
+            } finally {
+                int running = m_running.decrementAndGet();
+                if (interrupted) {
+                    m_done.countDown();
+                } else if (running == 0) {
+                    passEnd();
+                    m_done.countDown();
+                }
+            }
+        }
+
+        /**
+         * Passes the end of the input on to the next stage.
+         */
+        private void passEnd() {
+            if (m_next == null) {
+                return;
+            }
+            try {
+                m_next.m_queue.put(END);
+            } catch (InterruptedException e) {
+                LOGGER.warning("Stage " + m_stageName + " of " + m_name
+                        + " was interrupted.");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.pipeline;
+
+/**
+ * A single processing step of a {@link Pipeline}. Stages are called by
+ * several workers at once, so implementations must be thread safe.
+ *
+ * @param <T>
+ *            the type of the items flowing through the pipeline
+ */
+public interface Stage<T> {
+
+    /**
+     * Processes an item.
+     *
+     * @param item
+     *            the item to process
+     * @return true if the item is passed on to the next stage, false if it
+     *         leaves the pipeline here
+     * @throws Exception
+     *             if the item can't be processed, it is dropped then
+     */
+    boolean process(T item) throws Exception;
+}
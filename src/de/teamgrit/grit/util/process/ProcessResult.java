@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.process;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of an external program run by a {@link ProcessRunner}.
+ */
+public class ProcessResult {
+
+    private final int m_exitValue;
+    private final boolean m_timedOut;
+    private final List<String> m_outputLines;
+    private final List<String> m_errorLines;
+
+    /**
+     * Creates a result.
+     *
+     * @param exitValue
+     *            the exit value of the program
+     * @param timedOut
+     *            true if the program was killed because it took too long
+     * @param outputLines
+     *            the lines the program wrote to stdout
+     * @param errorLines
+     *            the lines the program wrote to stderr
+     */
+    ProcessResult(int exitValue, boolean timedOut, List<String> outputLines,
+            List<String> errorLines) {
+        m_exitValue = exitValue;
+        m_timedOut = timedOut;
+        m_outputLines = Collections.unmodifiableList(outputLines);
+        m_errorLines = Collections.unmodifiableList(errorLines);
+    }
+
+    /**
+     * @return the exit value of the program, meaningless if it timed out
+     */
+    public int getExitValue() {
+        return m_exitValue;
+    }
+
+    /**
+     * @return true if the program was killed because it took too long
+     */
+    public boolean isTimedOut() {
+        return m_timedOut;
+    }
+
+    /**
+     * Gets the lines the program wrote to stdout. If stderr was redirected
+     * into stdout, these are the lines of both.
+     *
+     * @return the lines, at most {@link ProcessRunner#MAX_LINES}
+     */
+    public List<String> getOutputLines() {
+        return m_outputLines;
+    }
+
+    /**
+     * @return the lines the program wrote to stderr, at most
+     *         {@link ProcessRunner#MAX_LINES}
+     */
+    public List<String> getErrorLines() {
+        return m_errorLines;
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.util.process;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs an external program and collects its output. Both output streams are
+ * drained by threads of their own while the program runs, so a program that
+ * writes a lot can't fill up a pipe and block forever. A program that takes
+ * longer than its timeout is killed together with all processes it started.
+ *
+ * <p>
+ * All external programs (svn, scp, the compilers, pdflatex) are run through
+ * this class. A runner is set up like a {@link ProcessBuilder} and may be
+ * run several times.
+ * </p>
+ */
+public class ProcessRunner {
+
+    /** The number of lines kept of each stream, the rest is discarded. */
+    public static final int MAX_LINES = 10000;
+
+    /** The timeout used if none is set, in milliseconds. */
+    public static final long DEFAULT_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    private static final Logger LOGGER = Logger.getLogger("systemlog");
+
+    /* how long the streams are drained after the program exited */
+    private static final long DRAIN_TIMEOUT = 1000;
+
+    /* the longest pause between two checks whether the program exited */
+    private static final long MAX_POLL_INTERVAL = 100;
+
+    private final ProcessBuilder m_builder;
+    private long m_timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Creates a runner for a program.
+     *
+     * @param command
+     *            the program and its arguments
+     */
+    public ProcessRunner(List<String> command) {
+        m_builder = new ProcessBuilder(command);
+    }
+
+    /**
+     * Sets the working directory of the program.
+     *
+     * @param directory
+     *            the working directory
+     * @return this runner
+     */
+    public ProcessRunner directory(Path directory) {
+        m_builder.directory(directory.toFile());
+        return this;
+    }
+
+    /**
+     * Sets an environment variable of the program.
+     *
+     * @param name
+     *            the name of the variable
+     * @param value
+     *            its value
+     * @return this runner
+     */
+    public ProcessRunner environment(String name, String value) {
+        m_builder.environment().put(name, value);
+        return this;
+    }
+
+    /**
+     * Merges stderr into stdout, so the lines of both are kept in the order
+     * they were written.
+     *
+     * @param redirectErrorStream
+     *            true to merge the streams
+     * @return this runner
+     */
+    public ProcessRunner redirectErrorStream(boolean redirectErrorStream) {
+        m_builder.redirectErrorStream(redirectErrorStream);
+        return this;
+    }
+
+    /**
+     * Sets how long the program may run before it is killed.
+     *
+     * @param timeout
+     *            the timeout in milliseconds
+     * @return this runner
+     */
+    public ProcessRunner timeout(long timeout) {
+        m_timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Runs the program and waits until it exits or times out.
+     *
+     * @return the exit value and output of the program
+     * @throws IOException
+     *             if the program can't be started
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting, the program is
+     *             killed then
+     */
+    public ProcessResult run() throws IOException, InterruptedException {
+        String program = m_builder.command().get(0);
+        Process process = m_builder.start();
+        process.getOutputStream().close();
+
+        StreamDrainer output =
+                new StreamDrainer(process.getInputStream(), program
+                        + "-stdout");
+        StreamDrainer error =
+                new StreamDrainer(process.getErrorStream(), program
+                        + "-stderr");
+        output.start();
+        error.start();
+
+        boolean timedOut = false;
+        try {
+            timedOut = !waitFor(process, m_timeout);
+            if (timedOut) {
+                LOGGER.warning(program + " didn't finish within " + m_timeout
+                        + " ms and was killed.");
+                killTree(process);
+            }
+        } catch (InterruptedException e) {
+            killTree(process);
+            throw e;
+        } finally {
+            // the streams end once the program and everything it started
+            // is gone
+            output.join(DRAIN_TIMEOUT);
+            error.join(DRAIN_TIMEOUT);
+            closeQuietly(process.getInputStream());
+            closeQuietly(process.getErrorStream());
+        }
+
+        int exitValue = timedOut ? -1 : process.exitValue();
+        return new ProcessResult(exitValue, timedOut, output.getLines(),
+                error.getLines());
+    }
+
+    /**
+     * Waits for a process to exit.
+     *
+     * @param process
+     *            the process
+     * @param timeout
+     *            the maximum time to wait in milliseconds
+     * @return true if the process exited, false if it is still running
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    private static boolean waitFor(Process process, long timeout)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS
+                .toNanos(timeout);
+        long interval = 1;
+        while (true) {
+            try {
+                process.exitValue();
+                return true;
+            } catch (IllegalThreadStateException e) {
+                // still running
+            }
+            long remaining =
+                    TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.min(interval, remaining));
+            interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Kills a process and all processes it started. The descendants are only
+     * found where the process id is accessible and pgrep is available,
+     * otherwise only the process itself is killed.
+     *
+     * @param process
+     *            the process
+     */
+    public static void killTree(Process process) {
+        long pid = getPid(process);
+        if (pid > 0) {
+            // collect the whole tree first, the children of a killed process
+            // can't be found anymore
+            List<String> command = new ArrayList<>();
+            command.add("kill");
+            command.add("-KILL");
+            command.add(Long.toString(pid));
+            collectDescendants(pid, command);
+            runQuietly(command);
+        }
+        process.destroy();
+    }
+
+    /**
+     * Adds the ids of all descendants of a process to a list.
+     *
+     * @param pid
+     *            the id of the process
+     * @param pids
+     *            the list to add to
+     */
+    private static void collectDescendants(long pid, List<String> pids) {
+        List<String> command = new ArrayList<>();
+        command.add("pgrep");
+        command.add("-P");
+        command.add(Long.toString(pid));
+        for (String child : runQuietly(command)) {
+            child = child.trim();
+            if (child.matches("\\d+") && !pids.contains(child)) {
+                pids.add(child);
+                collectDescendants(Long.parseLong(child), pids);
+            }
+        }
+    }
+
+    /**
+     * Runs a short helper program without a timeout or tree kill.
+     *
+     * @param command
+     *            the program and its arguments
+     * @return the output of the program, empty if it couldn't be run
+     */
+    private static List<String> runQuietly(List<String> command) {
+        List<String> lines = new ArrayList<>();
+        try {
+            Process process =
+                    new ProcessBuilder(command).redirectErrorStream(true)
+                            .start();
+            process.getOutputStream().close();
+            // reading to the end first can't block, the program only exits
+            // after writing everything
+            try (BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(
+                            process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            process.waitFor();
+        } catch (IOException e) {
+            LOGGER.fine("Could not run " + command.get(0) + ": "
+                    + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return lines;
+    }
+
+    /**
+     * Gets the operating system id of a process. Java 9 and later provide
+     * it directly, before the id is read from the Unix process
+     * implementation.
+     *
+     * @param process
+     *            the process
+     * @return the id or -1 if it isn't accessible
+     */
+    private static long getPid(Process process) {
+        try {
+            Object pid = Process.class.getMethod("pid").invoke(process);
+            return ((Number) pid).longValue();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // older Java
+        }
+        try {
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getLong(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Closes a stream and ignores errors.
+     *
+     * @param stream
+     *            the stream
+     */
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // nothing left to read anyway
+        }
+    }
+
+    /**
+     * Reads an output stream of a program line by line until it ends.
+     */
+    private static final class StreamDrainer extends Thread {
+
+        private final InputStream m_stream;
+        private final List<String> m_lines = new ArrayList<>();
+
+        /**
+         * Creates a drainer.
+         *
+         * @param stream
+         *            the stream to read
+         * @param name
+         *            the name of the thread
+         */
+        StreamDrainer(InputStream stream, String name) {
+            super(name);
+            m_stream = stream;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(m_stream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    synchronized (m_lines) {
+                        if (m_lines.size() < MAX_LINES) {
+                            m_lines.add(line);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // the stream was closed because the program was killed
+            }
+        }
+
+        /**
+         * Gets the lines read so far.
+         *
+         * @return a copy of the lines
+         */
+        List<String> getLines() {
+            synchronized (m_lines) {
+                return new ArrayList<>(m_lines);
+            }
+        }
+    }
+}
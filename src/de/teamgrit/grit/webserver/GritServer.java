@@ -84,13 +84,18 @@ public class GritServer extends Server {
         ContextHandler xmlHandler = new ContextHandler("/xml");
         xmlHandler.setHandler(new XmlHandler());
 
+        /* Set the MetricsHandler up to handle all requests to "/metrics". */
+        ContextHandler metricsHandler = new ContextHandler("/metrics");
+        metricsHandler.setHandler(new MetricsHandler());
+
         /*
          * Use a context handler collection to aggregate the context handlers.
          * The handler collection will be wrapped in a security handler.
          */
         ContextHandlerCollection contexts = new ContextHandlerCollection();
         contexts.setHandlers(new ContextHandler[] { overviewHandler,
-                courseHandler, exerciseHandler, connectionHandler, xmlHandler });
+                courseHandler, exerciseHandler, connectionHandler, xmlHandler,
+                metricsHandler });
 
         /* Get the user name and passsword for the web UI from the config. */
 
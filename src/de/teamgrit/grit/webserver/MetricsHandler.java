@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 Team GRIT
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.teamgrit.grit.webserver;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import de.teamgrit.grit.entities.Controller;
+import de.teamgrit.grit.util.metrics.Metrics;
+
+/**
+ * Serves the processing metrics collected by {@link Metrics} in the
+ * Prometheus text format, so a monitoring server can scrape them.
+ */
+public class MetricsHandler extends AbstractHandler {
+
+    /**
+     * The controller instance will be referenced here.
+     */
+    private Controller m_controller;
+
+    /**
+     * Constructor for {@link MetricsHandler}. It calls the constructor of
+     * {@link AbstractHandler} and gets the controller instance.
+     */
+    public MetricsHandler() {
+        super();
+        m_controller = Controller.getController();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.eclipse.jetty.server.Handler#handle(java.lang.String,
+     * org.eclipse.jetty.server.Request, javax.servlet.http.HttpServletRequest,
+     * javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public void handle(String target, Request baseRequest,
+            HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("text/plain;version=0.0.4;charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        PrintWriter out = response.getWriter();
+        Metrics.write(out);
+        Metrics.writeGauge(out, "grit_scheduler_queued_tasks",
+                "Exercise tasks waiting for a scheduler worker.",
+                m_controller.getScheduler().getQueuedTaskCount());
+
+        /* Tell JETTY that the request has been handled. */
+        baseRequest.setHandled(true);
+    }
+}